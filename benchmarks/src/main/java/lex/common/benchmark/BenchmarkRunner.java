@@ -0,0 +1,25 @@
+package lex.common.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the gc profiler attached, so every result reports
+ * the allocation rate next to throughput and latency percentiles. Accepts the
+ * usual JMH command line, e.g. {@code java -jar target/benchmarks.jar
+ * FindLeaf -p levels=3}.
+ *
+ * Build with {@code mvn install} in the project root, then {@code mvn package}
+ * in the benchmarks directory.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder().parent(commandLineOptions).addProfiler(GCProfiler.class).build()).run();
+    }
+}
@@ -0,0 +1,88 @@
+package lex.common.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import lex.common.consistent.hashing.ConsistentHash;
+import lex.common.consistent.hashing.HashingAlgorithm;
+
+/**
+ * Shared fixtures of the benchmarks.
+ */
+final class Benchmarks {
+
+    /**
+     * Number of pre-generated keys, a power of two so that a key is picked with
+     * a mask.
+     */
+    static final int KEYS = 1 << 14;
+
+    private Benchmarks() {
+    }
+
+    static HashingAlgorithm hashingAlgorithm(String name) {
+        switch (name) {
+        case "md5":
+            return ConsistentHash.initMd5Hashing();
+        case "xxhash64":
+            return ConsistentHash.initXxHash64Hashing();
+        case "murmur3":
+            return ConsistentHash.initMurmur3Hashing();
+        case "fnv1a64":
+            return ConsistentHash.initFnv1a64Hashing();
+        default:
+            throw new IllegalArgumentException("Unknown hashing algorithm " + name);
+        }
+    }
+
+    /**
+     * @param length
+     * @return {@link #KEYS} random alphanumeric keys
+     */
+    static String[] keys(int length) {
+        String alphabet = "abcdefghijklmnopqrstuvwxyz0123456789";
+        SplittableRandom random = new SplittableRandom(42L);
+        String[] keys = new String[KEYS];
+        char[] chars = new char[length];
+        for (int index = 0; index < keys.length; index++) {
+            for (int position = 0; position < length; position++) {
+                chars[position] = alphabet.charAt(random.nextInt(alphabet.length()));
+            }
+            keys[index] = new String(chars);
+        }
+        return keys;
+    }
+
+    /**
+     * @param levels,
+     *            depth of the tree
+     * @param fanOut,
+     *            children of every parent
+     * @return every leaf path of the tree, e.g. "D0-T1-S0"
+     */
+    static List<String> leaves(int levels, int fanOut) {
+        String[] prefixes = { "D", "T", "S", "P" };
+        List<String> leaves = new ArrayList<>();
+        leaves.add("");
+        for (int level = 0; level < levels; level++) {
+            List<String> next = new ArrayList<>();
+            for (String parent : leaves) {
+                for (int child = 0; child < fanOut; child++) {
+                    next.add(parent.isEmpty() ? prefixes[level] + child : parent + "-" + prefixes[level] + child);
+                }
+            }
+            leaves = next;
+        }
+        return leaves;
+    }
+
+    /**
+     * @return a data source which is never connected during the benchmarks
+     */
+    static Object dataSource(String name) {
+        return new DriverManagerDataSource("jdbc:benchmark:" + name);
+    }
+}
@@ -0,0 +1,66 @@
+package lex.common.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import lex.common.constant.TreeConstant;
+import lex.common.dynamic.routing.tree.DynamicHashingTree;
+import lex.common.dynamic.routing.tree.HashingEngine;
+import lex.common.dynamic.routing.tree.LookupMode;
+
+/**
+ * {@link DynamicHashingTree#findLeaf(String)} over 2 to 4 level trees.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FindLeafBenchmark {
+
+    @Param({ "2", "3", "4" })
+    private int levels;
+
+    @Param({ "4" })
+    private int fanOut;
+
+    @Param({ "PER_LEVEL_HASH", "SINGLE_HASH" })
+    private LookupMode lookupMode;
+
+    @Param({ "RING", "RENDEZVOUS", "MAGLEV" })
+    private HashingEngine engine;
+
+    @Param({ "md5", "xxhash64" })
+    private String algorithm;
+
+    private DynamicHashingTree tree;
+    private String[] keys;
+
+    @Setup
+    public void setUp() {
+        tree = new DynamicHashingTree(Benchmarks.hashingAlgorithm(algorithm), TreeConstant.DEFAULT_PATH_SEPARATOR, 67,
+                lookupMode);
+        tree.setDefaultHashingEngine(engine);
+        for (String leaf : Benchmarks.leaves(levels, fanOut)) {
+            tree.addLeaf(leaf);
+        }
+        keys = Benchmarks.keys(16);
+    }
+
+    @Benchmark
+    public String findLeaf(ThreadCursor cursor) {
+        return tree.findLeaf(keys[cursor.next()]);
+    }
+}
@@ -0,0 +1,69 @@
+package lex.common.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import lex.common.constant.TreeConstant;
+import lex.common.dynamic.routing.tree.DynamicHashingTree;
+import lex.common.dynamic.routing.tree.LookupMode;
+import lex.common.dynamic.routing.tree.TreeNode;
+
+/**
+ * {@link DynamicHashingTree#findLeafNodes(String[])} against a
+ * {@link DynamicHashingTree#findLeafNode(String)} loop over the same keys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FindLeavesBenchmark {
+
+    @Param({ "200" })
+    private int fanOut;
+
+    @Param({ "PER_LEVEL_HASH", "SINGLE_HASH" })
+    private LookupMode lookupMode;
+
+    @Param({ "md5", "xxhash64" })
+    private String algorithm;
+
+    private DynamicHashingTree tree;
+    private String[] keys;
+
+    @Setup
+    public void setUp() {
+        tree = new DynamicHashingTree(Benchmarks.hashingAlgorithm(algorithm), TreeConstant.DEFAULT_PATH_SEPARATOR, 67,
+                lookupMode);
+        for (String leaf : Benchmarks.leaves(2, fanOut)) {
+            tree.addLeaf(leaf);
+        }
+        keys = Benchmarks.keys(16);
+    }
+
+    @Benchmark
+    public TreeNode[] findLeafNodes() {
+        return tree.findLeafNodes(keys);
+    }
+
+    @Benchmark
+    public TreeNode[] findLeafNodeLoop() {
+        TreeNode[] leaves = new TreeNode[keys.length];
+        for (int index = 0; index < keys.length; index++) {
+            leaves[index] = tree.findLeafNode(keys[index]);
+        }
+        return leaves;
+    }
+}
@@ -0,0 +1,59 @@
+package lex.common.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import lex.common.consistent.hashing.HashingAlgorithm;
+
+/**
+ * Cost of hashing one routing key with every hashing algorithm.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashingAlgorithmBenchmark {
+
+    @Param({ "md5", "xxhash64", "murmur3", "fnv1a64" })
+    private String algorithm;
+
+    @Param({ "8", "36" })
+    private int keyLength;
+
+    private HashingAlgorithm hashingAlgorithm;
+    private String[] keys;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        hashingAlgorithm = Benchmarks.hashingAlgorithm(algorithm);
+        keys = Benchmarks.keys(keyLength);
+    }
+
+    @Benchmark
+    public long hashAsLong() {
+        return hashingAlgorithm.hashAsLong(nextKey());
+    }
+
+    @Benchmark
+    public Long hash() {
+        return hashingAlgorithm.hash(nextKey());
+    }
+
+    private String nextKey() {
+        return keys[next++ & (keys.length - 1)];
+    }
+}
@@ -0,0 +1,65 @@
+package lex.common.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import lex.common.consistent.hashing.ConsistentHash;
+import lex.common.consistent.hashing.HashRing;
+import lex.common.consistent.hashing.HashingAlgorithm;
+
+/**
+ * {@link ConsistentHash#getHitHashNode(HashRing, String, HashingAlgorithm)} at
+ * growing ring sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RingLookupBenchmark {
+
+    @Param({ "4", "16", "64", "256" })
+    private int nodes;
+
+    @Param({ "13", "67", "160" })
+    private int numberOfReplicas;
+
+    @Param({ "xxhash64" })
+    private String algorithm;
+
+    private HashingAlgorithm hashingAlgorithm;
+    private HashRing<String> hashRing;
+    private String[] keys;
+
+    @Setup
+    public void setUp() {
+        hashingAlgorithm = Benchmarks.hashingAlgorithm(algorithm);
+        hashRing = new HashRing<>();
+        for (int node = 0; node < nodes; node++) {
+            ConsistentHash.addNodeIntoHashRing("N" + node, hashRing, numberOfReplicas, hashingAlgorithm);
+        }
+        keys = Benchmarks.keys(16);
+    }
+
+    @Benchmark
+    public String getHitHashNode(ThreadCursor cursor) {
+        return ConsistentHash.getHitHashNode(hashRing, keys[cursor.next()], hashingAlgorithm);
+    }
+
+    @Benchmark
+    public String getByHash(ThreadCursor cursor) {
+        return hashRing.get(hashingAlgorithm.hashAsLong(keys[cursor.next()]));
+    }
+}
@@ -0,0 +1,111 @@
+package lex.common.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import lex.common.dynamic.routing.datasource.DynamicRoutingDataSource;
+
+/**
+ * End-to-end routing, {@link DynamicRoutingDataSource#setKey(String, boolean)}
+ * followed by removeKey, from 1 to 64 threads, with and without routing
+ * metrics.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SetKeyBenchmark {
+
+    @Param({ "3" })
+    private int levels;
+
+    @Param({ "4" })
+    private int fanOut;
+
+    @Param({ "0" })
+    private double boundedLoadEpsilon;
+
+    @Param({ "0", "65536" })
+    private int routingCacheCapacity;
+
+    @Param({ "false", "true" })
+    private boolean metrics;
+
+    private DynamicRoutingDataSource dataSource;
+    private String[] keys;
+
+    @Setup
+    public void setUp() {
+        Map<String, List<Object>> routes = new HashMap<>();
+        for (String leaf : Benchmarks.leaves(levels, fanOut)) {
+            List<Object> dataSources = new ArrayList<>();
+            dataSources.add(Benchmarks.dataSource(leaf + "-master"));
+            dataSources.add(Benchmarks.dataSource(leaf + "-slave"));
+            routes.put(leaf, dataSources);
+        }
+
+        DynamicRoutingDataSource.Builder builder = new DynamicRoutingDataSource.Builder();
+        routes.forEach(builder::addDataSource);
+        if (boundedLoadEpsilon > 0) {
+            builder.enableBoundedLoads(boundedLoadEpsilon);
+        }
+        if (routingCacheCapacity > 0) {
+            builder.enableRoutingCache(routingCacheCapacity);
+        }
+        if (metrics) {
+            builder.enableMetrics();
+        }
+        dataSource = builder.build();
+        keys = Benchmarks.keys(16);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String setKey1(ThreadCursor cursor) {
+        return route(cursor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String setKey4(ThreadCursor cursor) {
+        return route(cursor);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public String setKey16(ThreadCursor cursor) {
+        return route(cursor);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public String setKey64(ThreadCursor cursor) {
+        return route(cursor);
+    }
+
+    private String route(ThreadCursor cursor) {
+        String key = keys[cursor.next()];
+        dataSource.setKey(key, (key.charAt(0) & 1) == 0);
+        String routed = dataSource.getKey();
+        dataSource.removeKey(key);
+        return routed;
+    }
+}
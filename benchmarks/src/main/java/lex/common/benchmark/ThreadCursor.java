@@ -0,0 +1,16 @@
+package lex.common.benchmark;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-thread position in the pre-generated keys.
+ */
+@State(Scope.Thread)
+public class ThreadCursor {
+    private int next;
+
+    int next() {
+        return next++ & (Benchmarks.KEYS - 1);
+    }
+}
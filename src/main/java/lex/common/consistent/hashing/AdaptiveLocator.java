@@ -0,0 +1,159 @@
+package lex.common.consistent.hashing;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Uses one locator for small fan-outs and another one above a member count
+ * threshold. Crossing the threshold rebuilds the locator from all members.
+ * With a pair placing keys alike, e.g. a bucketed {@link RendezvousHash} and a
+ * {@link RendezvousTable} with the same settings, that moves no key beyond the
+ * keys moved by the membership change itself; with unrelated locators, e.g.
+ * rendezvous hashing and a ring, nearly every key moves.
+ *
+ * @param <T>
+ *            Type of Node
+ */
+public class AdaptiveLocator<T> implements NodeLocator<T> {
+    private static final Object[] NO_NODES = new Object[0];
+    private static final String[] NO_KEYS = new String[0];
+
+    private final int threshold;
+    private final Supplier<NodeLocator<T>> small;
+    private final Supplier<NodeLocator<T>> large;
+
+    private volatile NodeLocator<T> delegate;
+    private Object[] nodes = NO_NODES;
+    private String[] keys = NO_KEYS;
+
+    /**
+     * @param threshold,
+     *            largest member count served by the small locator
+     * @param small
+     * @param large
+     */
+    public AdaptiveLocator(int threshold, Supplier<NodeLocator<T>> small, Supplier<NodeLocator<T>> large) {
+        this.threshold = threshold;
+        this.small = small;
+        this.large = large;
+        this.delegate = small.get();
+    }
+
+    private AdaptiveLocator(AdaptiveLocator<T> adaptiveLocator) {
+        synchronized (adaptiveLocator) {
+            this.threshold = adaptiveLocator.threshold;
+            this.small = adaptiveLocator.small;
+            this.large = adaptiveLocator.large;
+            this.delegate = adaptiveLocator.delegate.copy();
+            this.nodes = adaptiveLocator.nodes;
+            this.keys = adaptiveLocator.keys;
+        }
+    }
+
+    @Override
+    public T get(long hash) {
+        return delegate.get(hash);
+    }
+
+    @Override
+    public T get(long hash, ToLongFunction<? super T> load, long totalLoad, double epsilon) {
+        return delegate.get(hash, load, totalLoad, epsilon);
+    }
+
+    @Override
+    public synchronized void add(String nodeKey, T node) {
+        if (indexOf(node) >= 0) {
+            return;
+        }
+
+        int length = nodes.length;
+        nodes = Arrays.copyOf(nodes, length + 1);
+        keys = Arrays.copyOf(keys, length + 1);
+        nodes[length] = node;
+        keys[length] = nodeKey;
+
+        if (length == threshold) {
+            delegate = rebuild(large);
+        } else {
+            delegate.add(nodeKey, node);
+        }
+    }
+
+    @Override
+    public synchronized void remove(T node) {
+        int index = indexOf(node);
+        if (index < 0) {
+            return;
+        }
+
+        int length = nodes.length - 1;
+        Object[] nextNodes = new Object[length];
+        String[] nextKeys = new String[length];
+        System.arraycopy(nodes, 0, nextNodes, 0, index);
+        System.arraycopy(nodes, index + 1, nextNodes, index, length - index);
+        System.arraycopy(keys, 0, nextKeys, 0, index);
+        System.arraycopy(keys, index + 1, nextKeys, index, length - index);
+        nodes = nextNodes;
+        keys = nextKeys;
+
+        if (length == threshold) {
+            delegate = rebuild(small);
+        } else {
+            delegate.remove(node);
+        }
+    }
+
+    @Override
+    public synchronized void replace(T node, T replacement) {
+        int index = indexOf(node);
+        if (index < 0) {
+            return;
+        }
+
+        nodes = nodes.clone();
+        nodes[index] = replacement;
+        delegate.replace(node, replacement);
+    }
+
+    @Override
+    public AdaptiveLocator<T> copy() {
+        return new AdaptiveLocator<>(this);
+    }
+
+    @Override
+    public int memberCount() {
+        return delegate.memberCount();
+    }
+
+    @Override
+    public long footprint() {
+        return Footprints.object(5 * Footprints.REFERENCE + 4) + Footprints.array(nodes.length, Footprints.REFERENCE)
+                + Footprints.array(keys.length, Footprints.REFERENCE) + delegate.footprint();
+    }
+
+    /**
+     * @return the locator currently in use
+     */
+    public NodeLocator<T> getDelegate() {
+        return delegate;
+    }
+
+    @SuppressWarnings("unchecked")
+    private NodeLocator<T> rebuild(Supplier<NodeLocator<T>> supplier) {
+        NodeLocator<T> locator = supplier.get();
+        for (int index = 0; index < nodes.length; index++) {
+            locator.add(keys[index], (T) nodes[index]);
+        }
+        return locator;
+    }
+
+    private int indexOf(Object node) {
+        for (int index = 0; index < nodes.length; index++) {
+            if (nodes[index].equals(node)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+}
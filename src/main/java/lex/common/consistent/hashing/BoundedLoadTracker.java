@@ -0,0 +1,79 @@
+package lex.common.consistent.hashing;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts in-flight assignments per node for consistent hashing with bounded
+ * loads. A node is full once its load reaches (1 + epsilon) times the average
+ * load of its ring.
+ *
+ * @param <K>
+ *            Type of node identity
+ */
+public class BoundedLoadTracker<K> {
+    private final ConcurrentHashMap<K, AtomicLong> loads = new ConcurrentHashMap<>();
+    private final double epsilon;
+
+    /**
+     * @param epsilon,
+     *            how far above the average load a node may go, e.g. 0.25
+     */
+    public BoundedLoadTracker(double epsilon) {
+        if (!(epsilon > 0)) {
+            throw new IllegalArgumentException("Epsilon must be positive: " + epsilon);
+        }
+        this.epsilon = epsilon;
+    }
+
+    public double getEpsilon() {
+        return epsilon;
+    }
+
+    public long load(K node) {
+        AtomicLong load = loads.get(node);
+        return load == null ? 0L : load.get();
+    }
+
+    public void acquire(K node) {
+        loads.computeIfAbsent(node, key -> new AtomicLong()).incrementAndGet();
+    }
+
+    public void release(K node) {
+        AtomicLong load = loads.get(node);
+        if (load != null) {
+            load.decrementAndGet();
+        }
+    }
+
+    /**
+     * Stops tracking a node, e.g. once it is removed from its ring. Releases of
+     * assignments still in flight on it are ignored.
+     * 
+     * @param node
+     */
+    public void remove(K node) {
+        loads.remove(node);
+    }
+
+    /**
+     * @return number of tracked nodes
+     */
+    public int size() {
+        return loads.size();
+    }
+
+    /**
+     * Maximum load of a node once one more assignment is added.
+     * 
+     * @param totalLoad,
+     *            current load of all members
+     * @param members,
+     *            number of members of the ring
+     * @param epsilon
+     * @return
+     */
+    public static long capacity(long totalLoad, int members, double epsilon) {
+        return (long) Math.ceil((1 + epsilon) * (totalLoad + 1) / members);
+    }
+}
@@ -5,6 +5,7 @@ import java.util.SortedMap;
 import lex.common.constant.HashConstant;
 
 public class ConsistentHash {
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
 
     /**
      * Add new node key into hash ring.
@@ -54,6 +55,109 @@ public class ConsistentHash {
             }
         }
     }
+
+    /**
+     * Computes the virtual node positions of node key.
+     * 
+     * @param nodeValue
+     * @param numberOfReplicas
+     * @param hashingAlgorithm
+     * @return positions, one per replica
+     */
+    public static long[] virtualNodePositions(String nodeValue, int numberOfReplicas,
+            HashingAlgorithm hashingAlgorithm) {
+        return virtualNodePositions(nodeValue, 0, numberOfReplicas, hashingAlgorithm);
+    }
+
+    /**
+     * Computes the virtual node positions of a range of replicas of node key,
+     * e.g. the replicas added or removed by a weight change.
+     * 
+     * @param nodeValue
+     * @param from,
+     *            first replica, inclusive
+     * @param to,
+     *            last replica, exclusive
+     * @param hashingAlgorithm
+     * @return positions, one per replica in the range
+     */
+    public static long[] virtualNodePositions(String nodeValue, int from, int to, HashingAlgorithm hashingAlgorithm) {
+        long[] positions = new long[to - from];
+        StringBuilder virtualNode = new StringBuilder(nodeValue).append(HashConstant.VIRTUAL_NODE_LINKER);
+        int prefixLength = virtualNode.length();
+        for (int i = from; i < to; i++) {
+            virtualNode.setLength(prefixLength);
+            positions[i - from] = hashingAlgorithm.hashAsLong(virtualNode.append(i));
+        }
+        return positions;
+    }
+
+    /**
+     * Add new node key into copy-on-write hash ring.
+     * 
+     * @param nodeValue
+     * @param ring
+     * @param numberOfReplicas
+     * @param hashingAlgorithm
+     */
+    public static void addNodeIntoHashRing(String nodeValue, HashRing<String> ring, int numberOfReplicas,
+            HashingAlgorithm hashingAlgorithm) {
+        ring.add(nodeValue, virtualNodePositions(nodeValue, numberOfReplicas, hashingAlgorithm));
+    }
+
+    /**
+     * Gets hit hash node by input key, lock free.
+     * 
+     * @param hashRing
+     * @param key
+     * @param hashingAlgorithm
+     * @return
+     */
+    public static String getHitHashNode(HashRing<String> hashRing, String key, HashingAlgorithm hashingAlgorithm) {
+        return hashRing.get(hashingAlgorithm.hashAsLong(key));
+    }
+
+    /**
+     * Add new node into copy-on-write hash ring, positioned by its key.
+     * 
+     * @param nodeValue
+     * @param node
+     * @param ring
+     * @param numberOfReplicas
+     * @param hashingAlgorithm
+     */
+    public static <T> void addNodeIntoHashRing(String nodeValue, T node, HashRing<T> ring, int numberOfReplicas,
+            HashingAlgorithm hashingAlgorithm) {
+        ring.add(node, virtualNodePositions(nodeValue, numberOfReplicas, hashingAlgorithm));
+    }
+
+    public static <T> void remove(T node, HashRing<T> hashRing) {
+        hashRing.remove(node);
+    }
+
+    /**
+     * Spreads a hash over the full 64-bit range (SplitMix64 finalizer).
+     * 
+     * @param hash
+     * @return
+     */
+    public static long mix(long hash) {
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        return hash ^ (hash >>> 31);
+    }
+
+    /**
+     * Derives an independent position for each seed from one hash.
+     * 
+     * @param hash
+     * @param seed,
+     *            e.g. the tree level
+     * @return
+     */
+    public static long mix(long hash, int seed) {
+        return mix(hash + (seed + 1) * GOLDEN_GAMMA);
+    }
     
     /**
      * Default hashing algorithm.
@@ -61,12 +165,27 @@ public class ConsistentHash {
      * @return MD5 Hash
      */
     public static HashingAlgorithm initMd5Hashing() {
-        return new HashingAlgorithm() {
+        return new Md5HashingAlgorithm();
+    }
 
-            @Override
-            public Long hash(Object key) {
-                return md5HashingAlgorithm(key.toString());
-            }
-        };
+    /**
+     * @return xxHash64
+     */
+    public static HashingAlgorithm initXxHash64Hashing() {
+        return new XxHash64HashingAlgorithm();
+    }
+
+    /**
+     * @return MurmurHash3 x64 128, first 64 bits
+     */
+    public static HashingAlgorithm initMurmur3Hashing() {
+        return new Murmur3HashingAlgorithm();
+    }
+
+    /**
+     * @return 64-bit FNV-1a
+     */
+    public static HashingAlgorithm initFnv1a64Hashing() {
+        return new Fnv1a64HashingAlgorithm();
     }
 }
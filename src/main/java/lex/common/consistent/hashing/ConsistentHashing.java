@@ -40,6 +40,11 @@ public class ConsistentHashing<T> {
             public Long hash(Object key) {
                 return md5HashingAlgorithm(key.toString());
             }
+
+            @Override
+            public int hashBits() {
+                return 32;
+            }
         };
 
         for (T node : nodes) {
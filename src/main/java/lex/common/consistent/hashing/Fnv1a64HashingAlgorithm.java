@@ -0,0 +1,28 @@
+package lex.common.consistent.hashing;
+
+/**
+ * 64-bit FNV-1a over the UTF-16 code units of the key, low byte first.
+ */
+public class Fnv1a64HashingAlgorithm implements HashingAlgorithm {
+    private static final long OFFSET_BASIS = 0xCBF29CE484222325L;
+    private static final long PRIME = 0x100000001B3L;
+
+    @Override
+    public Long hash(Object key) {
+        return hashAsLong(key.toString());
+    }
+
+    @Override
+    public long hashAsLong(CharSequence key) {
+        long hash = OFFSET_BASIS;
+        int length = key.length();
+        for (int index = 0; index < length; index++) {
+            char c = key.charAt(index);
+            hash ^= c & 0xFF;
+            hash *= PRIME;
+            hash ^= c >>> 8;
+            hash *= PRIME;
+        }
+        return hash;
+    }
+}
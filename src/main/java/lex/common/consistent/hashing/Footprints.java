@@ -0,0 +1,34 @@
+package lex.common.consistent.hashing;
+
+/**
+ * Rough heap size estimates, assuming a 64-bit JVM with compressed oops.
+ */
+final class Footprints {
+    static final int OBJECT_HEADER = 12;
+    static final int REFERENCE = 4;
+
+    private Footprints() {
+    }
+
+    /**
+     * @param length
+     * @param elementBytes
+     * @return bytes of an array, aligned to 8 bytes
+     */
+    static long array(int length, int elementBytes) {
+        return align(OBJECT_HEADER + 4 + (long) length * elementBytes);
+    }
+
+    /**
+     * @param fields,
+     *            bytes of the fields
+     * @return bytes of an object, aligned to 8 bytes
+     */
+    static long object(int fields) {
+        return align(OBJECT_HEADER + fields);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
@@ -0,0 +1,675 @@
+package lex.common.consistent.hashing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Copy-on-write hash ring. Lookups read the published snapshot through a
+ * volatile reference without any lock, writers build a new snapshot and swap it
+ * in.
+ *
+ * The snapshot is a sorted {@code long[]} of virtual node positions with a
+ * parallel {@code int[]} of owner indices into the member table, so a lookup is
+ * a single binary search with no boxing and no view allocation.
+ *
+ * @param <T>
+ *            Type of Node
+ */
+public class HashRing<T> implements NodeLocator<T> {
+
+    /**
+     * Smallest number of nodes whose virtual nodes are hashed in parallel by
+     * {@link #addAll(List, List)}.
+     */
+    private static final int PARALLEL_THRESHOLD = 64;
+
+    /**
+     * Published, immutable snapshot of the ring.
+     */
+    private volatile Ring ring = Ring.EMPTY;
+
+    /**
+     * Virtual node positions of a node key, used by
+     * {@link #add(String, Object)}.
+     */
+    private final Function<String, long[]> virtualNodes;
+
+    /**
+     * Virtual node positions by replica index, null if the ring does not
+     * support weights.
+     */
+    private final VirtualNodes replicas;
+    private final int numberOfReplicas;
+
+    /**
+     * Number of virtual nodes of every member not having the default number,
+     * replaced on change.
+     */
+    private volatile Map<Object, Integer> replicaCounts = Collections.emptyMap();
+
+    public HashRing() {
+        this.virtualNodes = null;
+        this.replicas = null;
+        this.numberOfReplicas = 0;
+    }
+
+    /**
+     * @param virtualNodes,
+     *            computes the virtual node positions of a node key
+     */
+    public HashRing(Function<String, long[]> virtualNodes) {
+        this.virtualNodes = virtualNodes;
+        this.replicas = null;
+        this.numberOfReplicas = 0;
+    }
+
+    /**
+     * Ring supporting weights, a node of weight w gets round(w *
+     * numberOfReplicas) virtual nodes.
+     * 
+     * @param numberOfReplicas,
+     *            virtual nodes of a node of weight 1
+     * @param replicas,
+     *            computes the virtual node positions of a node key by replica
+     *            index
+     */
+    public HashRing(int numberOfReplicas, VirtualNodes replicas) {
+        this.virtualNodes = nodeKey -> replicas.positions(nodeKey, 0, numberOfReplicas);
+        this.replicas = replicas;
+        this.numberOfReplicas = numberOfReplicas;
+    }
+
+    /**
+     * @param numberOfReplicas
+     * @param hashingAlgorithm
+     */
+    public HashRing(int numberOfReplicas, HashingAlgorithm hashingAlgorithm) {
+        this(numberOfReplicas,
+                (nodeKey, from, to) -> ConsistentHash.virtualNodePositions(nodeKey, from, to, hashingAlgorithm));
+    }
+
+    /**
+     * Copies the ring. The copy shares the current snapshot until either side
+     * changes.
+     *
+     * @param hashRing
+     */
+    public HashRing(HashRing<T> hashRing) {
+        synchronized (hashRing) {
+            this.ring = hashRing.ring;
+            this.replicaCounts = hashRing.replicaCounts;
+        }
+        this.virtualNodes = hashRing.virtualNodes;
+        this.replicas = hashRing.replicas;
+        this.numberOfReplicas = hashRing.numberOfReplicas;
+    }
+
+    /**
+     * Gets the node owning the first position at or after the hash, wrapping
+     * around to the first position of the ring.
+     *
+     * @param hash
+     * @return node, or null if the ring is empty
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(long hash) {
+        Ring current = ring;
+        if (current.positions.length == 0) {
+            return null;
+        }
+
+        return (T) get(current, hash);
+    }
+
+    /**
+     * Bounded-load lookup. Walks the ring from the hash and returns the first
+     * node whose load is below the capacity of
+     * {@link BoundedLoadTracker#capacity(long, int, double)}.
+     *
+     * @param hash
+     * @param load,
+     *            current load of a node
+     * @param totalLoad,
+     *            current load of all members
+     * @param epsilon
+     * @return node, or null if the ring is empty
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(long hash, ToLongFunction<? super T> load, long totalLoad, double epsilon) {
+        Ring current = ring;
+        long[] positions = current.positions;
+        int length = positions.length;
+        if (length == 0) {
+            return null;
+        }
+
+        int index = Arrays.binarySearch(positions, hash);
+        if (index < 0) {
+            index = -index - 1;
+            if (index == length) {
+                index = 0;
+            }
+        }
+
+        long capacity = BoundedLoadTracker.capacity(totalLoad, current.members.length, epsilon);
+        int owner = current.owners[index];
+        int checked = -1;
+        for (int step = 0; step < length; step++) {
+            int candidate = current.owners[index];
+            if (candidate != checked) {
+                if (load.applyAsLong((T) current.members[candidate]) < capacity) {
+                    return (T) current.members[candidate];
+                }
+                checked = candidate;
+            }
+            if (++index == length) {
+                index = 0;
+            }
+        }
+
+        // Every member is full, which only happens under concurrent updates.
+        return (T) current.members[owner];
+    }
+
+    /**
+     * Walks the ring forward along the hashes from the previous hit, and
+     * binary searches wherever a hash is below the previous one, so nearly
+     * sorted hashes are located correctly. Binary searches every hash when
+     * there are few hashes for the ring size.
+     */
+    @Override
+    public void getSorted(long[] hashes, int from, int to, Object[] nodes) {
+        Ring current = ring;
+        long[] positions = current.positions;
+        int length = positions.length;
+        if (length == 0 || (to - from) * 32L < length) {
+            for (int index = from; index < to; index++) {
+                nodes[index] = length == 0 ? null : get(current, hashes[index]);
+            }
+            return;
+        }
+
+        int position = 0;
+        long previous = Long.MIN_VALUE;
+        for (int index = from; index < to; index++) {
+            long hash = hashes[index];
+            if (hash < previous) {
+                position = Arrays.binarySearch(positions, hash);
+                if (position < 0) {
+                    position = -position - 1;
+                }
+            } else {
+                while (position < length && positions[position] < hash) {
+                    position++;
+                }
+            }
+            previous = hash;
+            nodes[index] = current.members[current.owners[position == length ? 0 : position]];
+        }
+    }
+
+    private static Object get(Ring current, long hash) {
+        int index = Arrays.binarySearch(current.positions, hash);
+        if (index < 0) {
+            index = -index - 1;
+            if (index == current.positions.length) {
+                index = 0;
+            }
+        }
+        return current.members[current.owners[index]];
+    }
+
+    @Override
+    public void add(String nodeKey, T node) {
+        if (virtualNodes == null) {
+            throw new IllegalStateException("Virtual node positions are not configured");
+        }
+        add(node, virtualNodes.apply(nodeKey));
+    }
+
+    /**
+     * Adds node with round(weight * numberOfReplicas) virtual nodes, at least
+     * one. Sets the weight if node is already a member.
+     */
+    @Override
+    public synchronized void add(String nodeKey, T node, double weight) {
+        int count = replicaCount(weight);
+        if (ring.indexOf(node) >= 0) {
+            setWeight(nodeKey, node, weight);
+            return;
+        }
+
+        add(node, replicas.positions(nodeKey, 0, count));
+        putReplicaCount(node, count);
+    }
+
+    /**
+     * Adds or removes only the virtual nodes between the current and the new
+     * number of replicas of node, so only hashes between node and its ring
+     * neighbours move.
+     */
+    @Override
+    public synchronized void setWeight(String nodeKey, T node, double weight) {
+        int count = replicaCount(weight);
+        if (ring.indexOf(node) < 0) {
+            throw new IllegalArgumentException("Node [" + nodeKey + "] is not a member");
+        }
+
+        int current = replicaCounts.getOrDefault(node, numberOfReplicas);
+        if (count > current) {
+            add(node, replicas.positions(nodeKey, current, count));
+        } else if (count < current) {
+            removePositions(node, replicas.positions(nodeKey, count, current));
+        }
+        putReplicaCount(node, count);
+    }
+
+    @Override
+    public double getWeight(T node) {
+        if (replicas == null) {
+            return 1.0;
+        }
+        return replicaCounts.getOrDefault(node, numberOfReplicas) / (double) numberOfReplicas;
+    }
+
+    private int replicaCount(double weight) {
+        if (replicas == null) {
+            throw new IllegalStateException("Virtual node positions by replica are not configured");
+        }
+        if (!(weight > 0) || Double.isInfinite(weight)) {
+            throw new IllegalArgumentException("Weight must be positive: " + weight);
+        }
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.round(weight * numberOfReplicas)));
+    }
+
+    private void putReplicaCount(Object node, Integer count) {
+        Map<Object, Integer> counts = new HashMap<>(replicaCounts);
+        if (count == null || count == numberOfReplicas) {
+            counts.remove(node);
+        } else {
+            counts.put(node, count);
+        }
+        replicaCounts = counts.isEmpty() ? Collections.emptyMap() : counts;
+    }
+
+    /**
+     * Removes the given positions where owned by node.
+     */
+    private void removePositions(T node, long[] removed) {
+        Ring current = ring;
+        int member = current.indexOf(node);
+        long[] sorted = removed.clone();
+        Arrays.sort(sorted);
+
+        long[] oldPositions = current.positions;
+        int[] oldOwners = current.owners;
+        long[] nextPositions = new long[oldPositions.length];
+        int[] nextOwners = new int[oldOwners.length];
+        int k = 0;
+        for (int i = 0; i < oldPositions.length; i++) {
+            if (oldOwners[i] != member || Arrays.binarySearch(sorted, oldPositions[i]) < 0) {
+                nextPositions[k] = oldPositions[i];
+                nextOwners[k++] = oldOwners[i];
+            }
+        }
+
+        ring = new Ring(Arrays.copyOf(nextPositions, k), Arrays.copyOf(nextOwners, k), current.members).compact();
+    }
+
+    /**
+     * Adds node into the ring at the given virtual node positions. A position
+     * already taken is handed over to the node.
+     *
+     * @param node
+     * @param positions
+     */
+    public synchronized void add(T node, long[] positions) {
+        Ring current = ring;
+        int member = current.indexOf(node);
+        Object[] members = current.members;
+        if (member < 0) {
+            member = members.length;
+            members = Arrays.copyOf(members, member + 1);
+            members[member] = node;
+        }
+
+        long[] added = positions.clone();
+        Arrays.sort(added);
+
+        long[] oldPositions = current.positions;
+        int[] oldOwners = current.owners;
+        long[] nextPositions = new long[oldPositions.length + added.length];
+        int[] nextOwners = new int[nextPositions.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < oldPositions.length || j < added.length) {
+            if (j == added.length || (i < oldPositions.length && oldPositions[i] < added[j])) {
+                nextPositions[k] = oldPositions[i];
+                nextOwners[k++] = oldOwners[i++];
+            } else {
+                if (i < oldPositions.length && oldPositions[i] == added[j]) {
+                    i++;
+                }
+                if (k == 0 || nextPositions[k - 1] != added[j] || nextOwners[k - 1] != member) {
+                    nextPositions[k] = added[j];
+                    nextOwners[k++] = member;
+                }
+                j++;
+            }
+        }
+
+        ring = new Ring(Arrays.copyOf(nextPositions, k), Arrays.copyOf(nextOwners, k), members).compact();
+    }
+
+    /**
+     * Hashes the virtual nodes of all nodes in parallel, then builds the ring
+     * with a single sort. Same result as adding the nodes one by one in order.
+     */
+    @Override
+    public void addAll(List<String> nodeKeys, List<? extends T> nodes) {
+        if (virtualNodes == null) {
+            throw new IllegalStateException("Virtual node positions are not configured");
+        }
+        Stream<String> keys = nodeKeys.size() < PARALLEL_THRESHOLD ? nodeKeys.stream() : nodeKeys.parallelStream();
+        addAllAt(nodes, keys.map(virtualNodes).collect(Collectors.toList()));
+    }
+
+    /**
+     * Adds the nodes at their virtual node positions with a single sort. A
+     * position taken more than once goes to the node added last, like adding
+     * the nodes one by one in order.
+     * 
+     * @param nodes
+     * @param positionsOfNodes,
+     *            virtual node positions of every node
+     */
+    public synchronized void addAllAt(List<? extends T> nodes, List<long[]> positionsOfNodes) {
+        Ring current = ring;
+        List<Object> members = new ArrayList<>(Arrays.asList(current.members));
+        Map<Object, Integer> memberIndices = new HashMap<>();
+        for (int member = 0; member < members.size(); member++) {
+            memberIndices.put(members.get(member), member);
+        }
+        int total = current.positions.length;
+        int[] memberOfNode = new int[nodes.size()];
+        for (int index = 0; index < nodes.size(); index++) {
+            T node = nodes.get(index);
+            Integer member = memberIndices.get(node);
+            if (member == null) {
+                member = members.size();
+                members.add(node);
+                memberIndices.put(node, member);
+            }
+            memberOfNode[index] = member;
+            total += positionsOfNodes.get(index).length;
+        }
+
+        long[] positions = Arrays.copyOf(current.positions, total);
+        int[] owners = Arrays.copyOf(current.owners, total);
+        int next = current.positions.length;
+        for (int index = 0; index < nodes.size(); index++) {
+            for (long position : positionsOfNodes.get(index)) {
+                positions[next] = position;
+                owners[next++] = memberOfNode[index];
+            }
+        }
+        sort(positions, owners);
+
+        // Stable sort, the last of equal positions was added last.
+        int k = 0;
+        for (int i = 0; i < total; i++) {
+            if (i + 1 < total && positions[i + 1] == positions[i]) {
+                continue;
+            }
+            positions[k] = positions[i];
+            owners[k++] = owners[i];
+        }
+
+        ring = new Ring(Arrays.copyOf(positions, k), Arrays.copyOf(owners, k), members.toArray()).compact();
+    }
+
+    /**
+     * Stable LSD radix sort of positions, signed, carrying owners along.
+     */
+    private static void sort(long[] positions, int[] owners) {
+        int length = positions.length;
+        long[] positionBuffer = new long[length];
+        int[] ownerBuffer = new int[length];
+        int[] counts = new int[257];
+        for (int shift = 0; shift < 64; shift += 8) {
+            Arrays.fill(counts, 0);
+            for (long position : positions) {
+                counts[digit(position, shift) + 1]++;
+            }
+            if (length == 0 || counts[digit(positions[0], shift) + 1] == length) {
+                continue;
+            }
+            for (int digit = 1; digit < counts.length; digit++) {
+                counts[digit] += counts[digit - 1];
+            }
+            for (int index = 0; index < length; index++) {
+                int target = counts[digit(positions[index], shift)]++;
+                positionBuffer[target] = positions[index];
+                ownerBuffer[target] = owners[index];
+            }
+            System.arraycopy(positionBuffer, 0, positions, 0, length);
+            System.arraycopy(ownerBuffer, 0, owners, 0, length);
+        }
+    }
+
+    private static int digit(long position, int shift) {
+        return (int) (((position ^ Long.MIN_VALUE) >>> shift) & 0xFF);
+    }
+
+    /**
+     * Removes all virtual node positions owned by node.
+     *
+     * @param node
+     */
+    @Override
+    public synchronized void remove(T node) {
+        Ring current = ring;
+        int member = current.indexOf(node);
+        if (member < 0) {
+            return;
+        }
+        if (replicaCounts.containsKey(node)) {
+            putReplicaCount(node, null);
+        }
+
+        long[] oldPositions = current.positions;
+        int[] oldOwners = current.owners;
+        long[] nextPositions = new long[oldPositions.length];
+        int[] nextOwners = new int[oldOwners.length];
+        int k = 0;
+        for (int i = 0; i < oldPositions.length; i++) {
+            if (oldOwners[i] != member) {
+                nextPositions[k] = oldPositions[i];
+                nextOwners[k++] = oldOwners[i];
+            }
+        }
+
+        ring = new Ring(Arrays.copyOf(nextPositions, k), Arrays.copyOf(nextOwners, k), current.members).compact();
+    }
+
+    /**
+     * Hands every virtual node position of node over to replacement.
+     *
+     * @param node
+     * @param replacement
+     */
+    @Override
+    public synchronized void replace(T node, T replacement) {
+        Ring current = ring;
+        int member = current.indexOf(node);
+        if (member < 0) {
+            return;
+        }
+
+        Object[] members = current.members.clone();
+        members[member] = replacement;
+        Integer count = replicaCounts.get(node);
+        if (count != null) {
+            putReplicaCount(node, null);
+            putReplicaCount(replacement, count);
+        }
+        ring = new Ring(current.positions, current.owners, members);
+    }
+
+    @Override
+    public HashRing<T> copy() {
+        return new HashRing<>(this);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return ring.positions.length == 0;
+    }
+
+    @Override
+    public int memberCount() {
+        return ring.members.length;
+    }
+
+    @Override
+    public long footprint() {
+        Ring current = ring;
+        return Footprints.object(4 * Footprints.REFERENCE + 4) + Footprints.object(3 * Footprints.REFERENCE)
+                + Footprints.array(current.positions.length, 8) + Footprints.array(current.owners.length, 4)
+                + Footprints.array(current.members.length, Footprints.REFERENCE);
+    }
+
+    /**
+     * Replaces the content of the ring with ready-made arrays, e.g. read from a
+     * snapshot, without hashing anything.
+     * 
+     * @param members
+     * @param positions,
+     *            sorted in ascending order
+     * @param owners,
+     *            index into members of the owner of every position
+     */
+    public synchronized void restore(List<? extends T> members, long[] positions, int[] owners) {
+        if (positions.length != owners.length) {
+            throw new IllegalArgumentException("Positions and owners differ in length");
+        }
+        for (int index = 1; index < positions.length; index++) {
+            if (positions[index - 1] >= positions[index]) {
+                throw new IllegalArgumentException("Positions are not sorted at " + index);
+            }
+        }
+        for (int owner : owners) {
+            if (owner < 0 || owner >= members.size()) {
+                throw new IllegalArgumentException("Owner out of range: " + owner);
+            }
+        }
+
+        ring = new Ring(positions.clone(), owners.clone(), members.toArray()).compact();
+
+        // Weights are not stored, the owned positions tell the replica counts.
+        Map<Object, Integer> counts = new HashMap<>();
+        if (replicas != null) {
+            int[] owned = new int[members.size()];
+            for (int owner : owners) {
+                owned[owner]++;
+            }
+            for (int member = 0; member < owned.length; member++) {
+                if (owned[member] > 0 && owned[member] != numberOfReplicas) {
+                    counts.put(members.get(member), owned[member]);
+                }
+            }
+        }
+        replicaCounts = counts.isEmpty() ? Collections.emptyMap() : counts;
+    }
+
+    /**
+     * @return virtual node positions in ascending order, a copy
+     */
+    public long[] positions() {
+        return ring.positions.clone();
+    }
+
+    /**
+     * @param index
+     * @return node owning the position at index of {@link #positions()}
+     */
+    @SuppressWarnings("unchecked")
+    public T ownerAt(int index) {
+        Ring current = ring;
+        return (T) current.members[current.owners[index]];
+    }
+
+    /**
+     * @return number of virtual node positions in the ring
+     */
+    public int size() {
+        return ring.positions.length;
+    }
+
+    /**
+     * Immutable ring snapshot.
+     */
+    private static final class Ring {
+        static final Ring EMPTY = new Ring(new long[0], new int[0], new Object[0]);
+
+        final long[] positions;
+        final int[] owners;
+        final Object[] members;
+
+        Ring(long[] positions, int[] owners, Object[] members) {
+            this.positions = positions;
+            this.owners = owners;
+            this.members = members;
+        }
+
+        int indexOf(Object node) {
+            for (int index = 0; index < members.length; index++) {
+                if (members[index].equals(node)) {
+                    return index;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Drops members which no longer own any position.
+         */
+        Ring compact() {
+            int[] remap = new int[members.length];
+            for (int owner : owners) {
+                remap[owner] = 1;
+            }
+
+            int used = 0;
+            for (int index = 0; index < remap.length; index++) {
+                remap[index] = remap[index] == 0 ? -1 : used++;
+            }
+            if (used == members.length) {
+                return this;
+            }
+
+            Object[] nextMembers = new Object[used];
+            for (int index = 0; index < remap.length; index++) {
+                if (remap[index] >= 0) {
+                    nextMembers[remap[index]] = members[index];
+                }
+            }
+            int[] nextOwners = new int[owners.length];
+            for (int index = 0; index < owners.length; index++) {
+                nextOwners[index] = remap[owners[index]];
+            }
+            return new Ring(positions, nextOwners, nextMembers);
+        }
+    }
+}
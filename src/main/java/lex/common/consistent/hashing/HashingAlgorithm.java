@@ -1,32 +1,38 @@
 package lex.common.consistent.hashing;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-
 public interface HashingAlgorithm {
 
     Long hash(Object key);
 
     /**
-     * MD5 hashing algorithm
+     * Primitive entry point used by ring construction and lookups. Built-in
+     * algorithms override it to hash the chars directly without allocating.
+     *
+     * @param key
+     * @return
+     */
+    default long hashAsLong(CharSequence key) {
+        return hash(key.toString());
+    }
+
+    /**
+     * Width of the hashes. Hashes narrower than 64 bits are non-negative and
+     * below 2^hashBits, 64-bit hashes take any long value.
+     *
+     * @return number of hash bits, 64 unless overridden
+     */
+    default int hashBits() {
+        return 64;
+    }
+
+    /**
+     * MD5 hashing algorithm, using a thread-local cached digest.
      *
      * @param key
      * @return
      */
     default long md5HashingAlgorithm(String key) {
-        MessageDigest md5 = null;
-        try {
-            md5 = MessageDigest.getInstance("MD5");
-            md5.reset();
-            md5.update(key.getBytes());
-            byte[] bKey = md5.digest();
-            long res = ((long) (bKey[3] & 0xFF) << 24) | ((long) (bKey[2] & 0xFF) << 16)
-                    | ((long) (bKey[1] & 0xFF) << 8) | (long) (bKey[0] & 0xFF);
-            return res;
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-        }
-        return 0l;
+        return Md5HashingAlgorithm.md5(key);
     }
 
     /**
@@ -0,0 +1,225 @@
+package lex.common.consistent.hashing;
+
+import java.util.function.ToLongFunction;
+
+/**
+ * Jump Consistent Hash (Lamping and Veach). Needs no memory beyond the member
+ * table and suits numbered, append-only node sets.
+ *
+ * Buckets are ordered by node key, numeric suffixes by value ("S2" before
+ * "S10"), so the same members give the same buckets whatever order they were
+ * added in. Adding or removing the highest key moves only the keys of that
+ * node; adding or removing any other key shifts the buckets above it as well.
+ *
+ * @param <T>
+ *            Type of Node
+ */
+public class JumpHash<T> implements NodeLocator<T> {
+    private static final Object[] EMPTY = new Object[0];
+
+    /**
+     * Published, immutable member table, index is the bucket.
+     */
+    private volatile Object[] buckets = EMPTY;
+    /**
+     * Node key of every bucket, only accessed while holding the lock.
+     */
+    private String[] keys = new String[0];
+    private final int seed;
+
+    public JumpHash() {
+        this(0);
+    }
+
+    /**
+     * @param seed,
+     *            mixed into the hash so that levels sharing a hash pick buckets
+     *            independently
+     */
+    public JumpHash(int seed) {
+        this.seed = seed;
+    }
+
+    private JumpHash(JumpHash<T> jumpHash) {
+        synchronized (jumpHash) {
+            this.buckets = jumpHash.buckets;
+            this.keys = jumpHash.keys;
+        }
+        this.seed = jumpHash.seed;
+    }
+
+    /**
+     * Maps a key onto a bucket in [0, numberOfBuckets).
+     * 
+     * @param key
+     * @param numberOfBuckets
+     * @return bucket
+     */
+    public static int jump(long key, int numberOfBuckets) {
+        long bucket = -1;
+        long next = 0;
+        while (next < numberOfBuckets) {
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(long hash) {
+        Object[] current = buckets;
+        if (current.length == 0) {
+            return null;
+        }
+        return (T) current[jump(ConsistentHash.mix(hash, seed), current.length)];
+    }
+
+    /**
+     * Re-jumps with a new seed for every attempt until a bucket below capacity
+     * is found.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(long hash, ToLongFunction<? super T> load, long totalLoad, double epsilon) {
+        Object[] current = buckets;
+        int length = current.length;
+        if (length == 0) {
+            return null;
+        }
+
+        long capacity = BoundedLoadTracker.capacity(totalLoad, length, epsilon);
+        long mixed = ConsistentHash.mix(hash, seed);
+        T first = (T) current[jump(mixed, length)];
+        T candidate = first;
+        for (int attempt = 1; load.applyAsLong(candidate) >= capacity; attempt++) {
+            if (attempt > length << 2) {
+                return first;
+            }
+            candidate = (T) current[jump(ConsistentHash.mix(mixed, attempt), length)];
+        }
+        return candidate;
+    }
+
+    /**
+     * Inserts node at the bucket of its key in key order, the last bucket for
+     * the highest key.
+     */
+    @Override
+    public synchronized void add(String nodeKey, T node) {
+        Object[] current = buckets;
+        int index = current.length;
+        while (index > 0 && compareNodeKeys(keys[index - 1], nodeKey) > 0) {
+            index--;
+        }
+
+        Object[] next = new Object[current.length + 1];
+        System.arraycopy(current, 0, next, 0, index);
+        System.arraycopy(current, index, next, index + 1, current.length - index);
+        next[index] = node;
+        String[] nextKeys = new String[keys.length + 1];
+        System.arraycopy(keys, 0, nextKeys, 0, index);
+        System.arraycopy(keys, index, nextKeys, index + 1, keys.length - index);
+        nextKeys[index] = nodeKey;
+        keys = nextKeys;
+        buckets = next;
+    }
+
+    @Override
+    public synchronized void remove(T node) {
+        Object[] current = buckets;
+        int index = indexOf(current, node);
+        if (index < 0) {
+            return;
+        }
+
+        Object[] next = new Object[current.length - 1];
+        System.arraycopy(current, 0, next, 0, index);
+        System.arraycopy(current, index + 1, next, index, next.length - index);
+        String[] nextKeys = new String[next.length];
+        System.arraycopy(keys, 0, nextKeys, 0, index);
+        System.arraycopy(keys, index + 1, nextKeys, index, nextKeys.length - index);
+        keys = nextKeys;
+        buckets = next;
+    }
+
+    @Override
+    public synchronized void replace(T node, T replacement) {
+        Object[] current = buckets;
+        int index = indexOf(current, node);
+        if (index < 0) {
+            return;
+        }
+
+        Object[] next = current.clone();
+        next[index] = replacement;
+        buckets = next;
+    }
+
+    @Override
+    public JumpHash<T> copy() {
+        return new JumpHash<>(this);
+    }
+
+    @Override
+    public int memberCount() {
+        return buckets.length;
+    }
+
+    @Override
+    public long footprint() {
+        return Footprints.object(Footprints.REFERENCE * 2 + 4)
+                + Footprints.array(buckets.length, Footprints.REFERENCE) * 2;
+    }
+
+    /**
+     * Orders node keys by string, except that keys differing only in their
+     * numeric suffix are ordered by its value.
+     * 
+     * @param left
+     * @param right
+     * @return
+     */
+    static int compareNodeKeys(String left, String right) {
+        int leftDigits = suffixStart(left);
+        int rightDigits = suffixStart(right);
+        if (leftDigits == rightDigits && leftDigits < left.length() && rightDigits < right.length()
+                && left.regionMatches(0, right, 0, leftDigits)) {
+            int leftStart = skipZeros(left, leftDigits);
+            int rightStart = skipZeros(right, rightDigits);
+            int order = Integer.compare(left.length() - leftStart, right.length() - rightStart);
+            if (order == 0) {
+                order = left.substring(leftStart).compareTo(right.substring(rightStart));
+            }
+            if (order != 0) {
+                return order;
+            }
+        }
+        return left.compareTo(right);
+    }
+
+    private static int suffixStart(String key) {
+        int index = key.length();
+        while (index > 0 && key.charAt(index - 1) >= '0' && key.charAt(index - 1) <= '9') {
+            index--;
+        }
+        return index;
+    }
+
+    private static int skipZeros(String key, int index) {
+        while (index < key.length() - 1 && key.charAt(index) == '0') {
+            index++;
+        }
+        return index;
+    }
+
+    private static int indexOf(Object[] members, Object node) {
+        for (int index = 0; index < members.length; index++) {
+            if (members[index].equals(node)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,250 @@
+package lex.common.consistent.hashing;
+
+import java.util.Arrays;
+import java.util.function.ToLongFunction;
+
+/**
+ * Maglev lookup table (Eisenbud et al.). Each node fills the table along its
+ * own permutation, which gives O(1) lookups, near-perfect balance and little
+ * disruption on membership change. The table is rebuilt on every change.
+ *
+ * @param <T>
+ *            Type of Node
+ */
+public class MaglevTable<T> implements NodeLocator<T> {
+
+    /**
+     * Default table size, a prime well above 100 times a typical fan-out.
+     */
+    public static final int DEFAULT_TABLE_SIZE = 65537;
+
+    private volatile Table table = Table.EMPTY;
+    private final int tableSize;
+    private final ToLongFunction<String> nodeHash;
+    private final int seed;
+
+    /**
+     * @param tableSize,
+     *            must be a prime, larger than the number of nodes
+     * @param nodeHash,
+     *            hash of a node key, gives the permutation of the node
+     * @param seed,
+     *            mixed into the hash so that levels sharing a hash pick
+     *            independently
+     */
+    public MaglevTable(int tableSize, ToLongFunction<String> nodeHash, int seed) {
+        if (!isPrime(tableSize)) {
+            throw new IllegalArgumentException("Table size must be a prime: " + tableSize);
+        }
+        this.tableSize = tableSize;
+        this.nodeHash = nodeHash;
+        this.seed = seed;
+    }
+
+    public MaglevTable(HashingAlgorithm hashingAlgorithm) {
+        this(DEFAULT_TABLE_SIZE, hashingAlgorithm::hashAsLong, 0);
+    }
+
+    private MaglevTable(MaglevTable<T> maglevTable) {
+        this.table = maglevTable.table;
+        this.tableSize = maglevTable.tableSize;
+        this.nodeHash = maglevTable.nodeHash;
+        this.seed = maglevTable.seed;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(long hash) {
+        Table current = table;
+        if (current.members.length == 0) {
+            return null;
+        }
+        return (T) current.members[current.entries[slot(hash)]];
+    }
+
+    /**
+     * Walks the table forward from the slot of the hash.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(long hash, ToLongFunction<? super T> load, long totalLoad, double epsilon) {
+        Table current = table;
+        int members = current.members.length;
+        if (members == 0) {
+            return null;
+        }
+
+        long capacity = BoundedLoadTracker.capacity(totalLoad, members, epsilon);
+        int slot = slot(hash);
+        int checked = -1;
+        for (int step = 0; step < tableSize; step++) {
+            int candidate = current.entries[slot];
+            if (candidate != checked) {
+                if (load.applyAsLong((T) current.members[candidate]) < capacity) {
+                    return (T) current.members[candidate];
+                }
+                checked = candidate;
+            }
+            if (++slot == tableSize) {
+                slot = 0;
+            }
+        }
+        return (T) current.members[current.entries[slot(hash)]];
+    }
+
+    private int slot(long hash) {
+        return (int) Long.remainderUnsigned(ConsistentHash.mix(hash, seed), tableSize);
+    }
+
+    @Override
+    public synchronized void add(String nodeKey, T node) {
+        Table current = table;
+        if (current.indexOf(node) >= 0) {
+            return;
+        }
+        if (current.members.length + 1 > tableSize) {
+            throw new IllegalStateException("Table size " + tableSize + " is too small for more nodes");
+        }
+
+        int length = current.members.length;
+        Object[] members = Arrays.copyOf(current.members, length + 1);
+        String[] keys = Arrays.copyOf(current.keys, length + 1);
+        members[length] = node;
+        keys[length] = nodeKey;
+        table = build(members, keys);
+    }
+
+    @Override
+    public synchronized void remove(T node) {
+        Table current = table;
+        int index = current.indexOf(node);
+        if (index < 0) {
+            return;
+        }
+
+        int length = current.members.length - 1;
+        Object[] members = new Object[length];
+        String[] keys = new String[length];
+        System.arraycopy(current.members, 0, members, 0, index);
+        System.arraycopy(current.members, index + 1, members, index, length - index);
+        System.arraycopy(current.keys, 0, keys, 0, index);
+        System.arraycopy(current.keys, index + 1, keys, index, length - index);
+        table = build(members, keys);
+    }
+
+    @Override
+    public synchronized void replace(T node, T replacement) {
+        Table current = table;
+        int index = current.indexOf(node);
+        if (index < 0) {
+            return;
+        }
+
+        Object[] members = current.members.clone();
+        members[index] = replacement;
+        table = new Table(members, current.keys, current.entries);
+    }
+
+    @Override
+    public MaglevTable<T> copy() {
+        return new MaglevTable<>(this);
+    }
+
+    @Override
+    public int memberCount() {
+        return table.members.length;
+    }
+
+    @Override
+    public long footprint() {
+        Table current = table;
+        return Footprints.object(2 * Footprints.REFERENCE + 8) + Footprints.object(3 * Footprints.REFERENCE)
+                + Footprints.array(current.members.length, Footprints.REFERENCE)
+                + Footprints.array(current.keys.length, Footprints.REFERENCE)
+                + Footprints.array(current.entries.length, 4);
+    }
+
+    /**
+     * Fills the table, nodes take turns claiming the next free slot of their
+     * permutation. Nodes take turns in key order, so the table only depends on
+     * membership.
+     */
+    private Table build(Object[] members, String[] keys) {
+        int length = members.length;
+        if (length == 0) {
+            return Table.EMPTY;
+        }
+
+        Integer[] order = new Integer[length];
+        for (int index = 0; index < length; index++) {
+            order[index] = index;
+        }
+        Arrays.sort(order, (left, right) -> keys[left].compareTo(keys[right]));
+
+        long[] offsets = new long[length];
+        long[] skips = new long[length];
+        long[] next = new long[length];
+        for (int index = 0; index < length; index++) {
+            long hash = nodeHash.applyAsLong(keys[index]);
+            offsets[index] = Long.remainderUnsigned(ConsistentHash.mix(hash, 0), tableSize);
+            skips[index] = Long.remainderUnsigned(ConsistentHash.mix(hash, 1), tableSize - 1) + 1;
+        }
+
+        int[] entries = new int[tableSize];
+        Arrays.fill(entries, -1);
+        int filled = 0;
+        while (true) {
+            for (int turn = 0; turn < length; turn++) {
+                int index = order[turn];
+                int slot = (int) ((offsets[index] + next[index] * skips[index]) % tableSize);
+                while (entries[slot] >= 0) {
+                    next[index]++;
+                    slot = (int) ((offsets[index] + next[index] * skips[index]) % tableSize);
+                }
+                entries[slot] = index;
+                next[index]++;
+                if (++filled == tableSize) {
+                    return new Table(members, keys, entries);
+                }
+            }
+        }
+    }
+
+    private static boolean isPrime(int number) {
+        if (number < 2) {
+            return false;
+        }
+        for (int divisor = 2; (long) divisor * divisor <= number; divisor++) {
+            if (number % divisor == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Immutable table snapshot.
+     */
+    private static final class Table {
+        static final Table EMPTY = new Table(new Object[0], new String[0], new int[0]);
+
+        final Object[] members;
+        final String[] keys;
+        final int[] entries;
+
+        Table(Object[] members, String[] keys, int[] entries) {
+            this.members = members;
+            this.keys = keys;
+            this.entries = entries;
+        }
+
+        int indexOf(Object node) {
+            for (int index = 0; index < members.length; index++) {
+                if (members[index].equals(node)) {
+                    return index;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package lex.common.consistent.hashing;
+
+import java.nio.charset.Charset;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * MD5 hashing algorithm with a thread-local cached {@code MessageDigest}.
+ *
+ * Gives exactly the same values as
+ * {@link HashingAlgorithm#md5HashingAlgorithm(String)}, so rings built with
+ * either keep their placements. ASCII keys are encoded into a reused buffer
+ * instead of calling {@code String.getBytes()}.
+ */
+public class Md5HashingAlgorithm implements HashingAlgorithm {
+    private static final boolean ASCII_COMPATIBLE_CHARSET = isAsciiCompatible(Charset.defaultCharset());
+
+    private static final ThreadLocal<Md5> MD5 = new ThreadLocal<Md5>() {
+        @Override
+        protected Md5 initialValue() {
+            return new Md5();
+        }
+    };
+
+    @Override
+    public Long hash(Object key) {
+        return md5(key.toString());
+    }
+
+    @Override
+    public long hashAsLong(CharSequence key) {
+        return md5(key);
+    }
+
+    /**
+     * @return 32, MD5 is folded to its low 32 bits
+     */
+    @Override
+    public int hashBits() {
+        return 32;
+    }
+
+    /**
+     * MD5 of the key bytes in platform default charset, folded to the low 32
+     * bits.
+     *
+     * @param key
+     * @return
+     */
+    static long md5(CharSequence key) {
+        Md5 md5 = MD5.get();
+        MessageDigest digest = md5.digest;
+        digest.reset();
+
+        int length = key.length();
+        if (ASCII_COMPATIBLE_CHARSET && md5.fillAscii(key, length)) {
+            digest.update(md5.input, 0, length);
+        } else {
+            digest.update(key.toString().getBytes());
+        }
+
+        byte[] bKey = md5.output;
+        try {
+            digest.digest(bKey, 0, bKey.length);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return ((long) (bKey[3] & 0xFF) << 24) | ((long) (bKey[2] & 0xFF) << 16) | ((long) (bKey[1] & 0xFF) << 8)
+                | (long) (bKey[0] & 0xFF);
+    }
+
+    private static boolean isAsciiCompatible(Charset charset) {
+        char[] chars = new char[128];
+        byte[] expected = new byte[128];
+        for (int index = 0; index < 128; index++) {
+            chars[index] = (char) index;
+            expected[index] = (byte) index;
+        }
+        return Arrays.equals(expected, new String(chars).getBytes(charset));
+    }
+
+    private static final class Md5 {
+        final MessageDigest digest;
+        final byte[] output = new byte[16];
+        byte[] input = new byte[64];
+
+        Md5() {
+            try {
+                digest = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * Copies an all-ASCII key into the input buffer.
+         *
+         * @return false if the key holds any non-ASCII char
+         */
+        boolean fillAscii(CharSequence key, int length) {
+            if (input.length < length) {
+                input = new byte[Math.max(length, input.length << 1)];
+            }
+            for (int index = 0; index < length; index++) {
+                char c = key.charAt(index);
+                if (c >= 0x80) {
+                    return false;
+                }
+                input[index] = (byte) c;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package lex.common.consistent.hashing;
+
+/**
+ * MurmurHash3 x64 128-bit over the UTF-16 code units of the key, read
+ * little-endian. Returns the first 64 bits of the digest.
+ */
+public class Murmur3HashingAlgorithm implements HashingAlgorithm {
+    private static final long C1 = 0x87C37B91114253D5L;
+    private static final long C2 = 0x4CF5AD432745937FL;
+
+    private final long seed;
+
+    public Murmur3HashingAlgorithm() {
+        this(0L);
+    }
+
+    public Murmur3HashingAlgorithm(long seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public Long hash(Object key) {
+        return hashAsLong(key.toString());
+    }
+
+    @Override
+    public long hashAsLong(CharSequence key) {
+        int length = key.length();
+        long h1 = seed;
+        long h2 = seed;
+        int index = 0;
+
+        for (int limit = length - 8; index <= limit; index += 8) {
+            long k1 = longAt(key, index, 4);
+            long k2 = longAt(key, index + 4, 4);
+
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52DCE729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495AB5;
+        }
+
+        int remaining = length - index;
+        if (remaining > 4) {
+            h2 ^= mixK2(longAt(key, index + 4, remaining - 4));
+        }
+        if (remaining > 0) {
+            h1 ^= mixK1(longAt(key, index, Math.min(remaining, 4)));
+        }
+
+        h1 ^= length * 2L;
+        h2 ^= length * 2L;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        return h1;
+    }
+
+    private static long longAt(CharSequence key, int index, int chars) {
+        long value = 0;
+        for (int offset = 0; offset < chars; offset++) {
+            value |= (long) key.charAt(index + offset) << (offset << 4);
+        }
+        return value;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xFF51AFD7ED558CCDL;
+        k ^= k >>> 33;
+        k *= 0xC4CEB9FE1A85EC53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -0,0 +1,144 @@
+package lex.common.consistent.hashing;
+
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * Maps a hash onto one of its nodes. Implementations are copy-on-write:
+ * lookups never lock and see either the old or the new membership.
+ *
+ * @param <T>
+ *            Type of Node
+ */
+public interface NodeLocator<T> {
+
+    /**
+     * Gets the node hit by hash.
+     * 
+     * @param hash
+     * @return node, or null if there is no node
+     */
+    T get(long hash);
+
+    /**
+     * Bounded-load lookup, returns the first node along the probe sequence of
+     * the hash whose load is below
+     * {@link BoundedLoadTracker#capacity(long, int, double)}.
+     * 
+     * @param hash
+     * @param load,
+     *            current load of a node
+     * @param totalLoad,
+     *            current load of all members
+     * @param epsilon
+     * @return node, or null if there is no node
+     */
+    T get(long hash, ToLongFunction<? super T> load, long totalLoad, double epsilon);
+
+    /**
+     * Batch lookup, nodes[i] is set to the node hit by hashes[i] for i in [from,
+     * to).
+     * 
+     * @param hashes,
+     *            best sorted in ascending order within the range, a nearly
+     *            sorted range is still located correctly
+     * @param from
+     * @param to
+     * @param nodes
+     */
+    default void getSorted(long[] hashes, int from, int to, Object[] nodes) {
+        for (int index = from; index < to; index++) {
+            nodes[index] = get(hashes[index]);
+        }
+    }
+
+    /**
+     * Adds node, placed by its key.
+     * 
+     * @param nodeKey
+     * @param node
+     */
+    void add(String nodeKey, T node);
+
+    /**
+     * Adds node with a share of the hashes proportional to its weight.
+     * 
+     * @param nodeKey
+     * @param node
+     * @param weight,
+     *            1 for the share of a node added by {@link #add(String, Object)}
+     * @throws IllegalStateException
+     *             if the locator does not support weights other than 1
+     */
+    default void add(String nodeKey, T node, double weight) {
+        if (weight != 1.0) {
+            throw new IllegalStateException(getClass().getSimpleName() + " does not support weights");
+        }
+        add(nodeKey, node);
+    }
+
+    /**
+     * Changes the weight of a member, moving only hashes between it and the
+     * other members.
+     * 
+     * @param nodeKey
+     * @param node
+     * @param weight
+     * @throws IllegalStateException
+     *             if the locator does not support weights other than 1
+     */
+    default void setWeight(String nodeKey, T node, double weight) {
+        if (weight != 1.0) {
+            throw new IllegalStateException(getClass().getSimpleName() + " does not support weights");
+        }
+    }
+
+    /**
+     * @param node
+     * @return weight of node, 1 unless set
+     */
+    default double getWeight(T node) {
+        return 1.0;
+    }
+
+    /**
+     * Adds many nodes, same as adding them one by one in order.
+     * 
+     * @param nodeKeys
+     * @param nodes
+     */
+    default void addAll(List<String> nodeKeys, List<? extends T> nodes) {
+        for (int index = 0; index < nodes.size(); index++) {
+            add(nodeKeys.get(index), nodes.get(index));
+        }
+    }
+
+    void remove(T node);
+
+    /**
+     * Hands the place of node over to replacement without moving any hash.
+     * 
+     * @param node
+     * @param replacement
+     */
+    void replace(T node, T replacement);
+
+    /**
+     * @return a copy sharing the current snapshot until either side changes
+     */
+    NodeLocator<T> copy();
+
+    /**
+     * @return number of distinct nodes
+     */
+    int memberCount();
+
+    /**
+     * @return approximate heap bytes held by the locator, excluding the nodes
+     */
+    long footprint();
+
+    default boolean isEmpty() {
+        return memberCount() == 0;
+    }
+}
@@ -0,0 +1,209 @@
+package lex.common.consistent.hashing;
+
+import java.util.Arrays;
+import java.util.function.ToLongFunction;
+
+/**
+ * Rendezvous (highest random weight) hashing. Every node is scored from the
+ * hash and its precomputed seed, the highest score wins. No ring is kept, a
+ * lookup is one tight loop over a {@code long[]} of seeds, which beats a ring
+ * for small fan-outs. Removing a node only moves the keys it owned.
+ *
+ * With bucket bits set, nodes are scored per bucket of the mixed hash instead
+ * of per hash, which places keys exactly like a {@link RendezvousTable} with
+ * the same settings.
+ *
+ * @param <T>
+ *            Type of Node
+ */
+public class RendezvousHash<T> implements NodeLocator<T> {
+    private volatile Members members = Members.EMPTY;
+    private final ToLongFunction<String> nodeHash;
+    private final int seed;
+    private final int bucketBits;
+
+    /**
+     * @param nodeHash,
+     *            hash of a node key, gives the seed of the node
+     * @param seed,
+     *            mixed into the hash so that levels sharing a hash pick
+     *            independently
+     */
+    public RendezvousHash(ToLongFunction<String> nodeHash, int seed) {
+        this(nodeHash, seed, 0);
+    }
+
+    /**
+     * @param nodeHash
+     * @param seed
+     * @param bucketBits,
+     *            scores 2^bucketBits buckets of the hash space, 0 scores every
+     *            hash
+     */
+    public RendezvousHash(ToLongFunction<String> nodeHash, int seed, int bucketBits) {
+        if (bucketBits < 0 || bucketBits > RendezvousTable.MAX_BUCKET_BITS) {
+            throw new IllegalArgumentException("Bucket bits out of range: " + bucketBits);
+        }
+        this.nodeHash = nodeHash;
+        this.seed = seed;
+        this.bucketBits = bucketBits;
+    }
+
+    public RendezvousHash(HashingAlgorithm hashingAlgorithm) {
+        this(hashingAlgorithm::hashAsLong, 0);
+    }
+
+    private RendezvousHash(RendezvousHash<T> rendezvousHash) {
+        this.members = rendezvousHash.members;
+        this.nodeHash = rendezvousHash.nodeHash;
+        this.seed = rendezvousHash.seed;
+        this.bucketBits = rendezvousHash.bucketBits;
+    }
+
+    /**
+     * @param hash
+     * @param seed
+     * @param bucketBits
+     * @return value the nodes are scored on
+     */
+    static long point(long hash, int seed, int bucketBits) {
+        long mixed = ConsistentHash.mix(hash, seed);
+        return bucketBits == 0 ? mixed : mixed >>> (Long.SIZE - bucketBits);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(long hash) {
+        Members current = members;
+        long[] seeds = current.seeds;
+        if (seeds.length == 0) {
+            return null;
+        }
+
+        long mixed = point(hash, seed, bucketBits);
+        int best = 0;
+        long bestScore = ConsistentHash.mix(mixed ^ seeds[0]);
+        for (int index = 1; index < seeds.length; index++) {
+            long score = ConsistentHash.mix(mixed ^ seeds[index]);
+            if (score > bestScore) {
+                bestScore = score;
+                best = index;
+            }
+        }
+        return (T) current.nodes[best];
+    }
+
+    /**
+     * Picks the highest scored node below capacity.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(long hash, ToLongFunction<? super T> load, long totalLoad, double epsilon) {
+        Members current = members;
+        long[] seeds = current.seeds;
+        if (seeds.length == 0) {
+            return null;
+        }
+
+        long capacity = BoundedLoadTracker.capacity(totalLoad, seeds.length, epsilon);
+        long mixed = point(hash, seed, bucketBits);
+        int best = -1;
+        long bestScore = Long.MIN_VALUE;
+        for (int index = 0; index < seeds.length; index++) {
+            long score = ConsistentHash.mix(mixed ^ seeds[index]);
+            if ((best < 0 || score > bestScore) && load.applyAsLong((T) current.nodes[index]) < capacity) {
+                bestScore = score;
+                best = index;
+            }
+        }
+        return best < 0 ? get(hash) : (T) current.nodes[best];
+    }
+
+    @Override
+    public synchronized void add(String nodeKey, T node) {
+        Members current = members;
+        if (current.indexOf(node) >= 0) {
+            return;
+        }
+
+        int length = current.nodes.length;
+        Object[] nodes = Arrays.copyOf(current.nodes, length + 1);
+        long[] seeds = Arrays.copyOf(current.seeds, length + 1);
+        nodes[length] = node;
+        seeds[length] = ConsistentHash.mix(nodeHash.applyAsLong(nodeKey));
+        members = new Members(nodes, seeds);
+    }
+
+    @Override
+    public synchronized void remove(T node) {
+        Members current = members;
+        int index = current.indexOf(node);
+        if (index < 0) {
+            return;
+        }
+
+        int length = current.nodes.length - 1;
+        Object[] nodes = new Object[length];
+        long[] seeds = new long[length];
+        System.arraycopy(current.nodes, 0, nodes, 0, index);
+        System.arraycopy(current.nodes, index + 1, nodes, index, length - index);
+        System.arraycopy(current.seeds, 0, seeds, 0, index);
+        System.arraycopy(current.seeds, index + 1, seeds, index, length - index);
+        members = new Members(nodes, seeds);
+    }
+
+    @Override
+    public synchronized void replace(T node, T replacement) {
+        Members current = members;
+        int index = current.indexOf(node);
+        if (index < 0) {
+            return;
+        }
+
+        Object[] nodes = current.nodes.clone();
+        nodes[index] = replacement;
+        members = new Members(nodes, current.seeds);
+    }
+
+    @Override
+    public RendezvousHash<T> copy() {
+        return new RendezvousHash<>(this);
+    }
+
+    @Override
+    public int memberCount() {
+        return members.nodes.length;
+    }
+
+    @Override
+    public long footprint() {
+        Members current = members;
+        return Footprints.object(2 * Footprints.REFERENCE + 8) + Footprints.object(2 * Footprints.REFERENCE)
+                + Footprints.array(current.nodes.length, Footprints.REFERENCE)
+                + Footprints.array(current.seeds.length, 8);
+    }
+
+    /**
+     * Immutable member snapshot.
+     */
+    private static final class Members {
+        static final Members EMPTY = new Members(new Object[0], new long[0]);
+
+        final Object[] nodes;
+        final long[] seeds;
+
+        Members(Object[] nodes, long[] seeds) {
+            this.nodes = nodes;
+            this.seeds = seeds;
+        }
+
+        int indexOf(Object node) {
+            for (int index = 0; index < nodes.length; index++) {
+                if (nodes[index].equals(node)) {
+                    return index;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package lex.common.consistent.hashing;
+
+import java.util.Arrays;
+import java.util.function.ToLongFunction;
+
+/**
+ * Rendezvous hashing precomputed into a lookup table: the hash space is split
+ * into 2^bucketBits buckets, each owned by its highest scored node. A lookup
+ * is one table read whatever the member count, and keys are placed exactly
+ * like a {@link RendezvousHash} with the same node hash, seed and bucket bits,
+ * so switching between both moves no key. Adding or removing a node only moves
+ * the buckets it wins or owned.
+ *
+ * @param <T>
+ *            Type of Node
+ */
+public class RendezvousTable<T> implements NodeLocator<T> {
+    public static final int DEFAULT_BUCKET_BITS = 13;
+    static final int MAX_BUCKET_BITS = 24;
+
+    private volatile Table table;
+    private final ToLongFunction<String> nodeHash;
+    private final int seed;
+    private final int bucketBits;
+
+    /**
+     * @param nodeHash,
+     *            hash of a node key, gives the seed of the node
+     * @param seed,
+     *            mixed into the hash so that levels sharing a hash pick
+     *            independently
+     * @param bucketBits,
+     *            the table holds 2^bucketBits buckets
+     */
+    public RendezvousTable(ToLongFunction<String> nodeHash, int seed, int bucketBits) {
+        if (bucketBits <= 0 || bucketBits > MAX_BUCKET_BITS) {
+            throw new IllegalArgumentException("Bucket bits out of range: " + bucketBits);
+        }
+        this.nodeHash = nodeHash;
+        this.seed = seed;
+        this.bucketBits = bucketBits;
+        this.table = new Table(new Object[0], new long[0], new int[1 << bucketBits]);
+    }
+
+    private RendezvousTable(RendezvousTable<T> rendezvousTable) {
+        this.table = rendezvousTable.table;
+        this.nodeHash = rendezvousTable.nodeHash;
+        this.seed = rendezvousTable.seed;
+        this.bucketBits = rendezvousTable.bucketBits;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(long hash) {
+        Table current = table;
+        if (current.nodes.length == 0) {
+            return null;
+        }
+        return (T) current.nodes[current.owners[(int) RendezvousHash.point(hash, seed, bucketBits)]];
+    }
+
+    /**
+     * Picks the highest scored node of the bucket below capacity.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(long hash, ToLongFunction<? super T> load, long totalLoad, double epsilon) {
+        Table current = table;
+        long[] seeds = current.seeds;
+        if (seeds.length == 0) {
+            return null;
+        }
+
+        long capacity = BoundedLoadTracker.capacity(totalLoad, seeds.length, epsilon);
+        long bucket = RendezvousHash.point(hash, seed, bucketBits);
+        int best = -1;
+        long bestScore = Long.MIN_VALUE;
+        for (int index = 0; index < seeds.length; index++) {
+            long score = ConsistentHash.mix(bucket ^ seeds[index]);
+            if ((best < 0 || score > bestScore) && load.applyAsLong((T) current.nodes[index]) < capacity) {
+                bestScore = score;
+                best = index;
+            }
+        }
+        return best < 0 ? get(hash) : (T) current.nodes[best];
+    }
+
+    /**
+     * Hands every bucket the new node outscores over to it.
+     */
+    @Override
+    public synchronized void add(String nodeKey, T node) {
+        Table current = table;
+        if (current.indexOf(node) >= 0) {
+            return;
+        }
+
+        int length = current.nodes.length;
+        Object[] nodes = Arrays.copyOf(current.nodes, length + 1);
+        long[] seeds = Arrays.copyOf(current.seeds, length + 1);
+        nodes[length] = node;
+        long nodeSeed = ConsistentHash.mix(nodeHash.applyAsLong(nodeKey));
+        seeds[length] = nodeSeed;
+
+        int[] owners = current.owners.clone();
+        if (length == 0) {
+            Arrays.fill(owners, 0);
+        } else {
+            for (int bucket = 0; bucket < owners.length; bucket++) {
+                if (ConsistentHash.mix(bucket ^ nodeSeed) > ConsistentHash.mix(bucket ^ seeds[owners[bucket]])) {
+                    owners[bucket] = length;
+                }
+            }
+        }
+        table = new Table(nodes, seeds, owners);
+    }
+
+    /**
+     * Hands the buckets of node over to their next highest scored node.
+     */
+    @Override
+    public synchronized void remove(T node) {
+        Table current = table;
+        int index = current.indexOf(node);
+        if (index < 0) {
+            return;
+        }
+
+        int length = current.nodes.length - 1;
+        Object[] nodes = new Object[length];
+        long[] seeds = new long[length];
+        System.arraycopy(current.nodes, 0, nodes, 0, index);
+        System.arraycopy(current.nodes, index + 1, nodes, index, length - index);
+        System.arraycopy(current.seeds, 0, seeds, 0, index);
+        System.arraycopy(current.seeds, index + 1, seeds, index, length - index);
+
+        int[] owners = current.owners.clone();
+        for (int bucket = 0; length > 0 && bucket < owners.length; bucket++) {
+            int owner = owners[bucket];
+            if (owner == index) {
+                owners[bucket] = best(bucket, seeds);
+            } else if (owner > index) {
+                owners[bucket] = owner - 1;
+            }
+        }
+        table = new Table(nodes, seeds, owners);
+    }
+
+    @Override
+    public synchronized void replace(T node, T replacement) {
+        Table current = table;
+        int index = current.indexOf(node);
+        if (index < 0) {
+            return;
+        }
+
+        Object[] nodes = current.nodes.clone();
+        nodes[index] = replacement;
+        table = new Table(nodes, current.seeds, current.owners);
+    }
+
+    @Override
+    public RendezvousTable<T> copy() {
+        return new RendezvousTable<>(this);
+    }
+
+    @Override
+    public int memberCount() {
+        return table.nodes.length;
+    }
+
+    @Override
+    public long footprint() {
+        Table current = table;
+        return Footprints.object(2 * Footprints.REFERENCE + 8) + Footprints.object(3 * Footprints.REFERENCE)
+                + Footprints.array(current.nodes.length, Footprints.REFERENCE)
+                + Footprints.array(current.seeds.length, 8) + Footprints.array(current.owners.length, 4);
+    }
+
+    /**
+     * @return index of the highest scored seed, the first one on ties like
+     *         {@link RendezvousHash}
+     */
+    private static int best(long bucket, long[] seeds) {
+        int best = 0;
+        long bestScore = ConsistentHash.mix(bucket ^ seeds[0]);
+        for (int index = 1; index < seeds.length; index++) {
+            long score = ConsistentHash.mix(bucket ^ seeds[index]);
+            if (score > bestScore) {
+                bestScore = score;
+                best = index;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Immutable member snapshot with the owner of every bucket.
+     */
+    private static final class Table {
+        final Object[] nodes;
+        final long[] seeds;
+        final int[] owners;
+
+        Table(Object[] nodes, long[] seeds, int[] owners) {
+            this.nodes = nodes;
+            this.seeds = seeds;
+            this.owners = owners;
+        }
+
+        int indexOf(Object node) {
+            for (int index = 0; index < nodes.length; index++) {
+                if (nodes[index].equals(node)) {
+                    return index;
+                }
+            }
+            return -1;
+        }
+    }
+}
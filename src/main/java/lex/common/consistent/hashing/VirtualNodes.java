@@ -0,0 +1,19 @@
+package lex.common.consistent.hashing;
+
+/**
+ * Virtual node positions of a node key by replica index, so that a weight
+ * change only hashes the replicas it adds or removes.
+ */
+@FunctionalInterface
+public interface VirtualNodes {
+
+    /**
+     * @param nodeKey
+     * @param from,
+     *            first replica, inclusive
+     * @param to,
+     *            last replica, exclusive
+     * @return ring positions of the replicas
+     */
+    long[] positions(String nodeKey, int from, int to);
+}
@@ -0,0 +1,102 @@
+package lex.common.consistent.hashing;
+
+/**
+ * xxHash64 over the UTF-16 code units of the key, read little-endian, computed
+ * without copying the chars into a byte array.
+ */
+public class XxHash64HashingAlgorithm implements HashingAlgorithm {
+    private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME64_3 = 0x165667B19E3779F9L;
+    private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+    private final long seed;
+
+    public XxHash64HashingAlgorithm() {
+        this(0L);
+    }
+
+    public XxHash64HashingAlgorithm(long seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public Long hash(Object key) {
+        return hashAsLong(key.toString());
+    }
+
+    @Override
+    public long hashAsLong(CharSequence key) {
+        int length = key.length();
+        int index = 0;
+        long hash;
+
+        if (length >= 16) {
+            long v1 = seed + PRIME64_1 + PRIME64_2;
+            long v2 = seed + PRIME64_2;
+            long v3 = seed;
+            long v4 = seed - PRIME64_1;
+            int limit = length - 16;
+            do {
+                v1 = round(v1, longAt(key, index));
+                v2 = round(v2, longAt(key, index + 4));
+                v3 = round(v3, longAt(key, index + 8));
+                v4 = round(v4, longAt(key, index + 12));
+                index += 16;
+            } while (index <= limit);
+
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12)
+                    + Long.rotateLeft(v4, 18);
+            hash = merge(hash, v1);
+            hash = merge(hash, v2);
+            hash = merge(hash, v3);
+            hash = merge(hash, v4);
+        } else {
+            hash = seed + PRIME64_5;
+        }
+
+        hash += length * 2L;
+
+        while (index + 4 <= length) {
+            hash ^= round(0, longAt(key, index));
+            hash = Long.rotateLeft(hash, 27) * PRIME64_1 + PRIME64_4;
+            index += 4;
+        }
+        if (index + 2 <= length) {
+            hash ^= (key.charAt(index) | (long) key.charAt(index + 1) << 16) * PRIME64_1;
+            hash = Long.rotateLeft(hash, 23) * PRIME64_2 + PRIME64_3;
+            index += 2;
+        }
+        if (index < length) {
+            char c = key.charAt(index);
+            hash ^= (c & 0xFF) * PRIME64_5;
+            hash = Long.rotateLeft(hash, 11) * PRIME64_1;
+            hash ^= (c >>> 8) * PRIME64_5;
+            hash = Long.rotateLeft(hash, 11) * PRIME64_1;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= PRIME64_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME64_3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    private static long longAt(CharSequence key, int index) {
+        return key.charAt(index) | (long) key.charAt(index + 1) << 16 | (long) key.charAt(index + 2) << 32
+                | (long) key.charAt(index + 3) << 48;
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME64_2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME64_1;
+    }
+
+    private static long merge(long acc, long value) {
+        acc ^= round(0, value);
+        return acc * PRIME64_1 + PRIME64_4;
+    }
+}
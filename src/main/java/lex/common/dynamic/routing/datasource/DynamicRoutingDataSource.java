@@ -1,10 +1,21 @@
 package lex.common.dynamic.routing.datasource;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sql.DataSource;
 
 import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
 
@@ -12,16 +23,29 @@ import lex.common.consistent.hashing.ConsistentHash;
 import lex.common.consistent.hashing.HashingAlgorithm;
 import lex.common.constant.DataSourceConstant;
 import lex.common.constant.TreeConstant;
+import lex.common.dynamic.routing.datasource.replica.ReplicaSelector;
+import lex.common.dynamic.routing.datasource.replica.ReplicaSet;
+import lex.common.dynamic.routing.key.HotKeySampler;
 import lex.common.dynamic.routing.key.KeyHolder;
+import lex.common.dynamic.routing.key.RoutingContext;
 import lex.common.dynamic.routing.tree.DynamicHashingTree;
+import lex.common.dynamic.routing.tree.MigrationPlanner;
+import lex.common.dynamic.routing.tree.RoutingCache;
+import lex.common.dynamic.routing.tree.RoutingMetrics;
+import lex.common.dynamic.routing.tree.TopologyChangeset;
+import lex.common.dynamic.routing.tree.TopologySnapshot;
+import lex.common.dynamic.routing.tree.TreeNode;
 
 public final class DynamicRoutingDataSource extends AbstractRoutingDataSource implements KeyHolder {
     private final DynamicHashingTree theTree;
-    private final ThreadLocal<String> KEY_HOLDER = new ThreadLocal<String>() {
-        public String initialValue() {
-            return TreeConstant.UNDEFINED_KEY;
-        }
-    };
+    private final ReplicaSelector replicaSelector;
+    private final Map<Object, DataSource> resolvedDataSources = new ConcurrentHashMap<>();
+    private volatile DataSource resolvedDefaultDataSource;
+    private volatile boolean lenientFallback = true;
+    private final boolean boundedLoads;
+    private final HotKeySampler hotKeySampler;
+    private final ThreadLocal<TreeNode> ACQUIRED_LEAF = new ThreadLocal<>();
+    private final ThreadLocal<String> KEY_HOLDER = new ThreadLocal<>();
 
     private DynamicRoutingDataSource(Builder builder) {
         if (null == builder.hashingAlgorithm) {
@@ -30,16 +54,162 @@ public final class DynamicRoutingDataSource extends AbstractRoutingDataSource im
             theTree = new DynamicHashingTree(builder.hashingAlgorithm, 67);
         }
 
-        activeTargetDataSources(buildDataSourceMap(builder.dataSourceMap));
-    }
+        boundedLoads = builder.boundedLoadEpsilon > 0;
+        if (boundedLoads) {
+            theTree.enableBoundedLoads(builder.boundedLoadEpsilon);
+        }
+        if (builder.routingCacheCapacity > 0) {
+            theTree.enableRoutingCache(builder.routingCacheCapacity);
+        }
+        if (builder.metrics) {
+            theTree.enableMetrics();
+        }
+        hotKeySampler = builder.hotKeySampler;
+        replicaSelector = null == builder.replicaSelector ? ReplicaSelector.roundRobin() : builder.replicaSelector;
 
-    private synchronized void activeTargetDataSources(Map<Object, Object> targetDataSources) {
-        setTargetDataSources(targetDataSources);
+        // Spring's own target map stays empty, lookups go to resolvedDataSources.
+        setTargetDataSources(new HashMap<>());
         afterPropertiesSet();
+
+        registerDataSources(builder.dataSourceMap);
+        TopologyChangeset changeset = theTree.newChangeset();
+        if (builder.topologySnapshot != null && Files.exists(builder.topologySnapshot)) {
+            loadTopology(builder.topologySnapshot, builder.dataSourceMap, changeset);
+        }
+        stageRouts(builder.dataSourceMap, builder.weights, changeset);
+        if (!changeset.isEmpty()) {
+            changeset.publish();
+        }
+    }
+
+    /**
+     * Stages the routs missing from the tree with their weights, and the new
+     * weights of the routs already in it. Weights are compared by their virtual
+     * node counts, a restored weight being rounded to them.
+     */
+    private void stageRouts(Map<Object, List<Object>> dataSourceMap, Map<Object, Double> weights,
+            TopologyChangeset changeset) {
+        Set<String> existing = new HashSet<>(getRouts());
+        List<String> added = new ArrayList<>();
+        for (Object rout : dataSourceMap.keySet()) {
+            double weight = weights.getOrDefault(rout, 1.0);
+            if (!existing.contains(rout)) {
+                added.add((String) rout);
+            } else if (replicaCount(theTree.getWeight((String) rout)) != replicaCount(weight)) {
+                changeset.setWeight((String) rout, weight);
+            }
+        }
+        // Additions last, so that they are built with one ring build per parent.
+        for (String rout : added) {
+            double weight = weights.getOrDefault(rout, 1.0);
+            if (weight == 1.0) {
+                changeset.addLeaf(rout);
+            } else {
+                changeset.addLeaf(rout, weight);
+            }
+        }
+    }
+
+    /**
+     * @param weight
+     * @return virtual nodes of a leaf of the weight, rounded like the rings do
+     */
+    private long replicaCount(double weight) {
+        return Math.max(1, Math.round(weight * theTree.numberOfReplications()));
+    }
+
+    /**
+     * Restores the hash tree from a snapshot instead of hashing every route,
+     * then drops the leaves which are no longer routes. Routes missing from the
+     * snapshot are added afterwards as usual. A snapshot taken with another
+     * hashing algorithm, number of replications or engine is only a stale
+     * cache: it is skipped with a warning and every route is added.
+     * 
+     * @param snapshot
+     * @param dataSourceMap
+     * @param changeset,
+     *            takes the removal of the leaves which are no longer routes
+     */
+    private void loadTopology(Path snapshot, Map<Object, List<Object>> dataSourceMap, TopologyChangeset changeset) {
+        try {
+            TopologySnapshot.restore(TopologySnapshot.map(snapshot, theTree.getAlgorithm()), theTree);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot load topology snapshot " + snapshot, e);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Ignoring topology snapshot " + snapshot + ": " + e.getMessage());
+            return;
+        }
+
+        for (TreeNode leaf : theTree.leaves()) {
+            String rout = rout(leaf);
+            if (!dataSourceMap.containsKey(rout)) {
+                changeset.removeLeaf(rout);
+            }
+        }
+    }
+
+    private static String rout(TreeNode leaf) {
+        String path = leaf.getPath();
+        return path.substring(0, path.length() - TreeConstant.DEFAULT_PATH_SEPARATOR.length());
+    }
+
+    /**
+     * @return routs of the currently published hash tree, e.g. "D1-T1-S1", in
+     *         tree order
+     */
+    public List<String> getRouts() {
+        List<TreeNode> leaves = theTree.leaves();
+        List<String> routs = new ArrayList<>(leaves.size());
+        for (TreeNode leaf : leaves) {
+            routs.add(rout(leaf));
+        }
+        return routs;
+    }
+
+    /**
+     * @param rout
+     * @param usePrime,
+     *            prime or slave data source
+     * @return the data source registered for the rout
+     * @throws IllegalStateException
+     *             if none is registered
+     */
+    public DataSource getDataSource(String rout, boolean usePrime) {
+        String lookupKey = rout.concat(usePrime ? DataSourceConstant.MASTER_SUFFIX : DataSourceConstant.SLAVE_SUFFIX);
+        DataSource dataSource = resolvedDataSources.get(lookupKey);
+        if (dataSource == null) {
+            throw new IllegalStateException("Cannot determine target DataSource for lookup key [" + lookupKey + "]");
+        }
+        return dataSource;
+    }
+
+    /**
+     * Writes the current hash tree to a snapshot, loaded on the next start by
+     * {@link Builder#loadTopology(Path)}.
+     * 
+     * @param snapshot
+     * @throws IOException
+     */
+    public void saveTopology(Path snapshot) throws IOException {
+        TopologySnapshot.write(theTree, snapshot);
     }
 
     /**
-     * Maps source map (Map<Object, List<Object>>) to target map
+     * Publishes the routes into the hash tree. Called after their data sources
+     * are registered, so a routed key never hits a route without data source.
+     * 
+     * @param dataSourceMap
+     */
+    private void addLeaves(Map<Object, List<Object>> dataSourceMap) {
+        List<String> routs = new ArrayList<>(dataSourceMap.size());
+        for (Object rout : dataSourceMap.keySet()) {
+            routs.add((String) rout);
+        }
+        theTree.addLeaves(routs);
+    }
+
+    /**
+     * Registers the data sources of every route.
      * 
      * @param dataSourceMap,
      *            The key of this map is used to identify a list of data source. The
@@ -47,37 +217,120 @@ public final class DynamicRoutingDataSource extends AbstractRoutingDataSource im
      *            designed to support the scenario in which case one key is bound
      *            with prime/slave(s) data sources. By design, the first item of the
      *            list is known as prime data source and the rest is(are) slave(s).
+     *            Several slaves of a key form a {@link ReplicaSet}, which spreads
+     *            connections over them with the replica selector.
      * 
      *            For example: key: "D1-T1-S1", value: [DataSourcePrime,
      *            DataSourceSlave, ...]
-     * @return
      */
-    private Map<Object, Object> buildDataSourceMap(Map<Object, List<Object>> dataSourceMap) {
-        Map<Object, Object> dynamicDataSourceMap = new HashMap<>();
+    private void registerDataSources(Map<Object, List<Object>> dataSourceMap) {
         Iterator<Map.Entry<Object, List<Object>>> iterator = dataSourceMap.entrySet().iterator();
         while (iterator.hasNext()) {
             Entry<Object, List<Object>> entry = iterator.next();
             String key = (String) entry.getKey();
-            synchronized (this) {
-                theTree.addLeaf(key);
-            }
 
-            List<Object> values = (List<Object>) entry.getValue();
+            List<Object> values = entry.getValue();
             int size = values.size();
-            for (int index = 0; index < size; index++) {
-                // String dataSourceKey = buildKey(key, index == 0);
-                String dataSourceKey = (index == 0) ? key.concat(DataSourceConstant.MASTER_SUFFIX)
-                        : key.concat(DataSourceConstant.SLAVE_SUFFIX);
-
-                if (dataSourceKey == null) {
-                    // TODO: throw exception? should not happen...
+            if (size > 0) {
+                registerDataSource(key.concat(DataSourceConstant.MASTER_SUFFIX), values.get(0));
+            }
+            if (size == 2) {
+                registerDataSource(key.concat(DataSourceConstant.SLAVE_SUFFIX), values.get(1));
+            } else if (size > 2) {
+                DataSource[] replicas = new DataSource[size - 1];
+                for (int index = 1; index < size; index++) {
+                    replicas[index - 1] = resolveSpecifiedDataSource(values.get(index));
                 }
-
-                System.out.println(dataSourceKey);
-                dynamicDataSourceMap.put(dataSourceKey, values.get(index));
+                registerDataSource(key.concat(DataSourceConstant.SLAVE_SUFFIX),
+                        new ReplicaSet(replicas, replicaSelector));
             }
         }
-        return dynamicDataSourceMap;
+    }
+
+    /**
+     * Sets the weights of the slaves of rout, read by the weighted replica
+     * selector.
+     * 
+     * @param rout
+     * @param weights,
+     *            one per slave in registration order
+     */
+    public void setReplicaWeights(String rout, int... weights) {
+        DataSource slave = resolvedDataSources.get(rout.concat(DataSourceConstant.SLAVE_SUFFIX));
+        if (!(slave instanceof ReplicaSet)) {
+            throw new IllegalArgumentException("Rout [" + rout + "] has no replica set");
+        }
+        ((ReplicaSet) slave).setWeights(weights);
+    }
+
+    /**
+     * Resolves and registers a single data source, leaving every other
+     * registered data source untouched.
+     * 
+     * @param lookupKey,
+     *            e.g. "D1-T1-S1-master"
+     * @param dataSource,
+     *            a {@code DataSource} or a name resolved by the
+     *            {@code DataSourceLookup}
+     */
+    public void registerDataSource(String lookupKey, Object dataSource) {
+        resolvedDataSources.put(resolveSpecifiedLookupKey(lookupKey), resolveSpecifiedDataSource(dataSource));
+    }
+
+    /**
+     * Unregisters a single data source.
+     * 
+     * @param lookupKey
+     * @return the unregistered data source, or null if none
+     */
+    public DataSource unregisterDataSource(String lookupKey) {
+        return resolvedDataSources.remove(resolveSpecifiedLookupKey(lookupKey));
+    }
+
+    /**
+     * @return every registered data source by lookup key, a read-only live
+     *         view
+     */
+    public Map<Object, DataSource> getResolvedDataSources() {
+        return Collections.unmodifiableMap(resolvedDataSources);
+    }
+
+    /**
+     * @return the resolved default data source, or null if none
+     */
+    public DataSource getResolvedDefaultDataSource() {
+        return resolvedDefaultDataSource;
+    }
+
+    /**
+     * Sets the data source used when no key is set, or, with lenient
+     * fallback, when no data source is registered for the key. Resolved right
+     * away since the registry is already live.
+     */
+    @Override
+    public void setDefaultTargetDataSource(Object defaultTargetDataSource) {
+        super.setDefaultTargetDataSource(defaultTargetDataSource);
+        resolvedDefaultDataSource = defaultTargetDataSource == null ? null
+                : resolveSpecifiedDataSource(defaultTargetDataSource);
+    }
+
+    @Override
+    public void setLenientFallback(boolean lenientFallback) {
+        super.setLenientFallback(lenientFallback);
+        this.lenientFallback = lenientFallback;
+    }
+
+    @Override
+    protected DataSource determineTargetDataSource() {
+        Object lookupKey = determineCurrentLookupKey();
+        DataSource dataSource = resolvedDataSources.get(lookupKey);
+        if (dataSource == null && (lenientFallback || TreeConstant.UNDEFINED_KEY.equals(lookupKey))) {
+            dataSource = resolvedDefaultDataSource;
+        }
+        if (dataSource == null) {
+            throw new IllegalStateException("Cannot determine target DataSource for lookup key [" + lookupKey + "]");
+        }
+        return dataSource;
     }
 
     @Override
@@ -85,23 +338,101 @@ public final class DynamicRoutingDataSource extends AbstractRoutingDataSource im
         return getKey();
     }
 
+    /**
+     * @return the lookup key bound by {@link #runWithKey(String, boolean, Runnable)}
+     *         or {@link #callWithKey(String, boolean, Callable)}, else the one set
+     *         by {@link #setKey(String, boolean)}, else
+     *         {@link TreeConstant#UNDEFINED_KEY}
+     */
     @Override
     public String getKey() {
-        return KEY_HOLDER.get();
+        String key = RoutingContext.lookupKey(this);
+        if (key == null) {
+            key = KEY_HOLDER.get();
+        }
+        return key == null ? TreeConstant.UNDEFINED_KEY : key;
+    }
+
+    /**
+     * Runs the task with the key routed and bound in a {@link RoutingContext}.
+     * Nothing is left on the thread afterwards, and tasks wrapped by
+     * {@link RoutingContext#wrap(Runnable)} or run by
+     * {@link RoutingContext#propagating(java.util.concurrent.Executor)} within
+     * the task are routed the same way on any thread. Under bounded loads the
+     * leaf counts as in use until the task returns.
+     * 
+     * @param key
+     * @param usePrime
+     * @param task
+     */
+    public void runWithKey(String key, boolean usePrime, Runnable task) {
+        TreeNode leaf = boundedLoads ? theTree.acquireLeaf(key) : theTree.findLeafNode(key);
+        try {
+            new RoutingContext(this, key, lookupKey(key, leaf, usePrime)).run(task);
+        } finally {
+            if (boundedLoads) {
+                theTree.releaseLeaf(leaf);
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #runWithKey(String, boolean, Runnable)} for tasks with a
+     * result.
+     * 
+     * @param key
+     * @param usePrime
+     * @param task
+     * @return result of the task
+     * @throws Exception
+     *             thrown by the task
+     */
+    public <V> V callWithKey(String key, boolean usePrime, Callable<V> task) throws Exception {
+        TreeNode leaf = boundedLoads ? theTree.acquireLeaf(key) : theTree.findLeafNode(key);
+        try {
+            return new RoutingContext(this, key, lookupKey(key, leaf, usePrime)).call(task);
+        } finally {
+            if (boundedLoads) {
+                theTree.releaseLeaf(leaf);
+            }
+        }
     }
 
     @Override
     public void setKey(String key, boolean usePrime) {
-        KEY_HOLDER.set(buildKey(key, usePrime));
+        if (boundedLoads) {
+            setBoundedKey(key, usePrime);
+        } else {
+            KEY_HOLDER.set(buildKey(key, usePrime));
+        }
     }
 
     @Override
     public void removeKey(String key) {
+        if (boundedLoads) {
+            theTree.releaseLeaf(ACQUIRED_LEAF.get());
+            ACQUIRED_LEAF.remove();
+        }
         KEY_HOLDER.remove();
     }
 
     /**
-     * Dynamically build the key for prime/slave data source.
+     * Routes under bounded loads, the leaf counts as in use until the key is
+     * removed or replaced.
+     * 
+     * @param key
+     * @param usePrime
+     */
+    private void setBoundedKey(String key, boolean usePrime) {
+        theTree.releaseLeaf(ACQUIRED_LEAF.get());
+        TreeNode leaf = theTree.acquireLeaf(key);
+        ACQUIRED_LEAF.set(leaf);
+        KEY_HOLDER.set(lookupKey(key, leaf, usePrime));
+    }
+
+    /**
+     * Dynamically build the key for prime/slave data source. Lock free, reads
+     * the currently published version of the hash tree.
      * 
      * @param keyPath,
      *            the key retrieved from hash tree
@@ -109,21 +440,102 @@ public final class DynamicRoutingDataSource extends AbstractRoutingDataSource im
      *            prime or not
      * @return
      */
-    synchronized String buildKey(String keyPath, boolean usePrime) {
-        return usePrime ? theTree.findLeaf(keyPath).concat(DataSourceConstant.MASTER)
-                : theTree.findLeaf(keyPath).concat(DataSourceConstant.SLAVE);
+    String buildKey(String keyPath, boolean usePrime) {
+        return lookupKey(keyPath, theTree.findLeafNode(keyPath), usePrime);
+    }
+
+    private String lookupKey(String key, TreeNode leaf, boolean usePrime) {
+        if (leaf == null) {
+            return usePrime ? DataSourceConstant.MASTER : DataSourceConstant.SLAVE;
+        }
+
+        record(key, leaf, usePrime);
+        return usePrime ? leaf.getMasterKey() : leaf.getSlaveKey();
+    }
+
+    private void record(String key, TreeNode leaf, boolean usePrime) {
+        RoutingMetrics metrics = theTree.getMetrics();
+        if (metrics != null) {
+            metrics.recordChoice(leaf, usePrime);
+        }
+        if (hotKeySampler != null) {
+            hotKeySampler.record(key, leaf.getPath());
+        }
     }
 
     /**
-     * Appends data source,
-     * 
+     * @return the sampler of hot routing keys, or null if not enabled
+     */
+    public HotKeySampler getHotKeySampler() {
+        return hotKeySampler;
+    }
+
+    /**
+     * @return the routing metrics, or null if not enabled
+     */
+    public RoutingMetrics getMetrics() {
+        return theTree.getMetrics();
+    }
+
+    /**
+     * @return the routing cache with its hit and miss counts, or null if not
+     *         enabled
+     */
+    public RoutingCache getRoutingCache() {
+        return theTree.getRoutingCache();
+    }
+
+    /**
+     * Copies the current routing topology, e.g. before
+     * {@link #appendDataSource(String, List)} to plan the data migration with
+     * {@link MigrationPlanner#plan(DynamicHashingTree, DynamicHashingTree)}.
+     *
+     * @return copy of the hash tree, unaffected by later changes
+     */
+    public DynamicHashingTree copyTopology() {
+        return theTree.copy();
+    }
+
+    /**
+     * Appends data source. Only the data sources of the rout are resolved and
+     * registered, previously registered routes are kept as they are.
+     *
      * @param rout
      * @param dataSources
      */
     public void appendDataSource(String rout, List<Object> dataSources) {
         Map<Object, List<Object>> dataSourceMap = new HashMap<>();
         dataSourceMap.put(rout, dataSources);
-        activeTargetDataSources(buildDataSourceMap(dataSourceMap));
+        registerDataSources(dataSourceMap);
+        addLeaves(dataSourceMap);
+    }
+
+    /**
+     * Same as {@link #appendDataSource(String, List)}, the rout taking a share
+     * of its siblings' keys proportional to its weight.
+     * 
+     * @param rout
+     * @param dataSources
+     * @param weight,
+     *            e.g. relative capacity of the data source, 1 by default
+     */
+    public void appendDataSource(String rout, List<Object> dataSources, double weight) {
+        Map<Object, List<Object>> dataSourceMap = new HashMap<>();
+        dataSourceMap.put(rout, dataSources);
+        registerDataSources(dataSourceMap);
+        theTree.addLeaf(rout, weight);
+    }
+
+    /**
+     * Changes the weight of a rout at runtime. Only the virtual nodes making
+     * the difference are added or removed, so keys move only between the rout
+     * and its siblings.
+     * 
+     * @param rout
+     * @param weight
+     */
+    public void setDataSourceWeight(String rout, double weight) {
+        theTree.setWeight(rout, weight);
     }
 
     /**
@@ -137,8 +549,8 @@ public final class DynamicRoutingDataSource extends AbstractRoutingDataSource im
      * 
      * @param rout
      */
-    public synchronized boolean eraseDataSourceKey(String rout) {
-        if (KEY_HOLDER.get().startsWith(rout)) {
+    public boolean eraseDataSourceKey(String rout) {
+        if (getKey().startsWith(rout)) {
             // The key is in use.
             return false;
         } else {
@@ -148,20 +560,141 @@ public final class DynamicRoutingDataSource extends AbstractRoutingDataSource im
         }
     }
 
+    /**
+     * Erases the rout key out of hash tree, then unregisters its data sources.
+     * Same as {@link #eraseDataSourceKey(String)}, the method returns False if
+     * the rout is in use.
+     * 
+     * @param rout
+     */
+    public boolean removeDataSource(String rout) {
+        if (!eraseDataSourceKey(rout)) {
+            return false;
+        }
+
+        unregisterDataSource(rout.concat(DataSourceConstant.MASTER_SUFFIX));
+        unregisterDataSource(rout.concat(DataSourceConstant.SLAVE_SUFFIX));
+        return true;
+    }
+
     public static class Builder {
         private Map<Object, List<Object>> dataSourceMap = new HashMap<>();
         private HashingAlgorithm hashingAlgorithm = null;
+        private ReplicaSelector replicaSelector = null;
+        private double boundedLoadEpsilon = 0;
+        private int routingCacheCapacity = 0;
+        private Path topologySnapshot = null;
+        private Map<Object, Double> weights = new HashMap<>();
+        private boolean metrics = false;
+        private HotKeySampler hotKeySampler = null;
 
         public Builder addDataSource(String rout, List<Object> dataSources) {
             dataSourceMap.put(rout, dataSources);
             return this;
         }
 
+        /**
+         * Adds a rout whose share of keys is proportional to its weight among
+         * its siblings, e.g. 4 for a shard with four times the capacity.
+         * 
+         * @param rout
+         * @param dataSources
+         * @param weight,
+         *            1 by default
+         * @return
+         */
+        public Builder addDataSource(String rout, List<Object> dataSources, double weight) {
+            dataSourceMap.put(rout, dataSources);
+            weights.put(rout, weight);
+            return this;
+        }
+
         public Builder addHashingAlgorithm(HashingAlgorithm hashingAlgorithm) {
             this.hashingAlgorithm = hashingAlgorithm;
             return this;
         }
 
+        /**
+         * Strategy spreading connections over the slaves of a rout, round robin by
+         * default.
+         * 
+         * @param replicaSelector
+         * @return
+         */
+        public Builder addReplicaSelector(ReplicaSelector replicaSelector) {
+            this.replicaSelector = replicaSelector;
+            return this;
+        }
+
+        /**
+         * Routes with consistent hashing with bounded loads on every level. A
+         * leaf keeps counting as in use from setKey until removeKey.
+         * 
+         * @param epsilon,
+         *            how far above the average load a node may go, e.g. 0.25
+         * @return
+         * @throws IllegalArgumentException
+         *             if epsilon is not positive
+         */
+        public Builder enableBoundedLoads(double epsilon) {
+            if (!(epsilon > 0)) {
+                throw new IllegalArgumentException("Epsilon must be positive: " + epsilon);
+            }
+            this.boundedLoadEpsilon = epsilon;
+            return this;
+        }
+
+        /**
+         * Caches routed keys until the next topology change, for keys which
+         * repeat, e.g. tenant ids. Not used under bounded loads.
+         * 
+         * @param capacity,
+         *            number of cached keys
+         * @return
+         */
+        public Builder enableRoutingCache(int capacity) {
+            this.routingCacheCapacity = capacity;
+            return this;
+        }
+
+        /**
+         * Counts the lookups and master/slave choices per rout, the lookup
+         * latency and the topology changes, see
+         * {@link DynamicRoutingDataSource#getMetrics()}.
+         * 
+         * @return
+         */
+        public Builder enableMetrics() {
+            this.metrics = true;
+            return this;
+        }
+
+        /**
+         * Samples every routed key into the sampler, which reports the hottest
+         * keys and routes over its sliding window.
+         * 
+         * @param hotKeySampler,
+         *            e.g. {@code new HotKeySampler(0.01, 20, 10_000, 6)}
+         * @return
+         */
+        public Builder enableHotKeySampling(HotKeySampler hotKeySampler) {
+            this.hotKeySampler = hotKeySampler;
+            return this;
+        }
+
+        /**
+         * Starts from a snapshot written by
+         * {@link DynamicRoutingDataSource#saveTopology(Path)} if the file
+         * exists, which skips hashing the virtual nodes of every route.
+         * 
+         * @param snapshot
+         * @return
+         */
+        public Builder loadTopology(Path snapshot) {
+            this.topologySnapshot = snapshot;
+            return this;
+        }
+
         public DynamicRoutingDataSource build() {
             return new DynamicRoutingDataSource(this);
         }
@@ -0,0 +1,30 @@
+package lex.common.dynamic.routing.datasource.replica;
+
+/**
+ * Picks the replica with the fewest outstanding connections. Scans from a
+ * rotating start so ties are spread.
+ */
+public class LeastOutstandingReplicaSelector implements ReplicaSelector {
+
+    @Override
+    public int select(ReplicaSet replicaSet) {
+        int size = replicaSet.size();
+        int start = (int) Long.remainderUnsigned(replicaSet.nextSequence(), size);
+        int selected = start;
+        int least = replicaSet.outstanding(start);
+        for (int offset = 1; offset < size && least > 0; offset++) {
+            int index = start + offset < size ? start + offset : start + offset - size;
+            int outstanding = replicaSet.outstanding(index);
+            if (outstanding < least) {
+                least = outstanding;
+                selected = index;
+            }
+        }
+        return selected;
+    }
+
+    @Override
+    public boolean tracksOutstanding() {
+        return true;
+    }
+}
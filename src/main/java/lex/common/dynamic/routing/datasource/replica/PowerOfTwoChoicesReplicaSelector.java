@@ -0,0 +1,31 @@
+package lex.common.dynamic.routing.datasource.replica;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Samples two distinct replicas at random and picks the one with fewer
+ * outstanding connections.
+ */
+public class PowerOfTwoChoicesReplicaSelector implements ReplicaSelector {
+
+    @Override
+    public int select(ReplicaSet replicaSet) {
+        int size = replicaSet.size();
+        if (size == 1) {
+            return 0;
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        return replicaSet.outstanding(second) < replicaSet.outstanding(first) ? second : first;
+    }
+
+    @Override
+    public boolean tracksOutstanding() {
+        return true;
+    }
+}
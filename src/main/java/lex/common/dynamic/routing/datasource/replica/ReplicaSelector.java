@@ -0,0 +1,42 @@
+package lex.common.dynamic.routing.datasource.replica;
+
+/**
+ * Picks the replica serving the next connection of a replica set. Selection
+ * must not lock, it runs on every connection checkout.
+ */
+public interface ReplicaSelector {
+
+    /**
+     * Selects a replica.
+     * 
+     * @param replicaSet
+     * @return index of the selected replica
+     */
+    int select(ReplicaSet replicaSet);
+
+    /**
+     * Optional, overrides this method when the selector reads the outstanding
+     * connections of replicas, so the replica set counts them.
+     * 
+     * @return
+     */
+    default boolean tracksOutstanding() {
+        return false;
+    }
+
+    static ReplicaSelector roundRobin() {
+        return new RoundRobinReplicaSelector();
+    }
+
+    static ReplicaSelector weighted() {
+        return new WeightedReplicaSelector();
+    }
+
+    static ReplicaSelector leastOutstanding() {
+        return new LeastOutstandingReplicaSelector();
+    }
+
+    static ReplicaSelector powerOfTwoChoices() {
+        return new PowerOfTwoChoicesReplicaSelector();
+    }
+}
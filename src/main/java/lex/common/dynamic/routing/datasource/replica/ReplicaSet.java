@@ -0,0 +1,149 @@
+package lex.common.dynamic.routing.datasource.replica;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+/**
+ * Read replicas of one route, exposed as a single data source. Every connection
+ * checkout is handed to the replica picked by the {@link ReplicaSelector}.
+ */
+public class ReplicaSet extends AbstractDataSource {
+    private final DataSource[] replicas;
+    private final ReplicaSelector selector;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicIntegerArray outstanding;
+    private volatile long[] cumulativeWeights;
+
+    public ReplicaSet(DataSource[] replicas, ReplicaSelector selector) {
+        if (replicas.length == 0) {
+            throw new IllegalArgumentException("Replica set requires at least one replica");
+        }
+
+        this.replicas = replicas.clone();
+        this.selector = selector;
+        this.outstanding = new AtomicIntegerArray(replicas.length);
+        int[] weights = new int[replicas.length];
+        Arrays.fill(weights, 1);
+        setWeights(weights);
+    }
+
+    /**
+     * Sets the weights read by {@link WeightedReplicaSelector}, one per replica.
+     * 
+     * @param weights
+     */
+    public void setWeights(int... weights) {
+        if (weights.length != replicas.length) {
+            throw new IllegalArgumentException(
+                    "Expected " + replicas.length + " weights, but got " + weights.length);
+        }
+
+        long[] cumulative = new long[weights.length];
+        long total = 0;
+        for (int index = 0; index < weights.length; index++) {
+            if (weights[index] < 0) {
+                throw new IllegalArgumentException("Weight must not be negative: " + weights[index]);
+            }
+            total += weights[index];
+            cumulative[index] = total;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("At least one weight must be positive");
+        }
+        cumulativeWeights = cumulative;
+    }
+
+    public int size() {
+        return replicas.length;
+    }
+
+    public DataSource getReplica(int index) {
+        return replicas[index];
+    }
+
+    /**
+     * @param index
+     * @return connections checked out from the replica and not closed yet, only
+     *         counted when the selector tracks them
+     */
+    public int outstanding(int index) {
+        return outstanding.get(index);
+    }
+
+    long nextSequence() {
+        return sequence.getAndIncrement();
+    }
+
+    long[] cumulativeWeights() {
+        return cumulativeWeights;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        int index = selector.select(this);
+        if (!selector.tracksOutstanding()) {
+            return replicas[index].getConnection();
+        }
+
+        outstanding.incrementAndGet(index);
+        try {
+            return track(replicas[index].getConnection(), index);
+        } catch (SQLException | RuntimeException e) {
+            outstanding.decrementAndGet(index);
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        int index = selector.select(this);
+        if (!selector.tracksOutstanding()) {
+            return replicas[index].getConnection(username, password);
+        }
+
+        outstanding.incrementAndGet(index);
+        try {
+            return track(replicas[index].getConnection(username, password), index);
+        } catch (SQLException | RuntimeException e) {
+            outstanding.decrementAndGet(index);
+            throw e;
+        }
+    }
+
+    /**
+     * Wraps the connection so that closing it releases the outstanding count of
+     * the replica once.
+     */
+    private Connection track(Connection connection, int index) {
+        AtomicBoolean closed = new AtomicBoolean();
+        InvocationHandler handler = new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("close".equals(method.getName()) && method.getParameterCount() == 0
+                        && closed.compareAndSet(false, true)) {
+                    outstanding.decrementAndGet(index);
+                }
+                try {
+                    return method.invoke(connection, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getTargetException();
+                }
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, handler);
+    }
+}
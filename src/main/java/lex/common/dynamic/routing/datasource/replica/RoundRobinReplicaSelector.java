@@ -0,0 +1,12 @@
+package lex.common.dynamic.routing.datasource.replica;
+
+/**
+ * Hands connections to replicas in turn.
+ */
+public class RoundRobinReplicaSelector implements ReplicaSelector {
+
+    @Override
+    public int select(ReplicaSet replicaSet) {
+        return (int) Long.remainderUnsigned(replicaSet.nextSequence(), replicaSet.size());
+    }
+}
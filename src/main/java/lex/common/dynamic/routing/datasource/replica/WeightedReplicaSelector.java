@@ -0,0 +1,25 @@
+package lex.common.dynamic.routing.datasource.replica;
+
+import java.util.Arrays;
+
+/**
+ * Hands connections to replicas in proportion to their weights, walking the
+ * cumulative weights with a shared sequence.
+ */
+public class WeightedReplicaSelector implements ReplicaSelector {
+
+    @Override
+    public int select(ReplicaSet replicaSet) {
+        long[] cumulativeWeights = replicaSet.cumulativeWeights();
+        long totalWeight = cumulativeWeights[cumulativeWeights.length - 1];
+        long ticket = Long.remainderUnsigned(replicaSet.nextSequence(), totalWeight);
+
+        int index = Arrays.binarySearch(cumulativeWeights, ticket);
+        index = index < 0 ? -index - 1 : index + 1;
+        // Skips replicas of zero weight.
+        while (cumulativeWeights[index] <= ticket) {
+            index++;
+        }
+        return index;
+    }
+}
@@ -0,0 +1,21 @@
+package lex.common.dynamic.routing.datasource.scatter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Appends the rows of the shards in answer order.
+ */
+public class ConcatMerger<T> implements ResultMerger<T> {
+    private final List<T> rows = new ArrayList<>();
+
+    @Override
+    public void accept(String rout, List<T> shardRows) {
+        rows.addAll(shardRows);
+    }
+
+    @Override
+    public List<T> result() {
+        return rows;
+    }
+}
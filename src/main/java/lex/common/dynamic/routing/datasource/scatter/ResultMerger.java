@@ -0,0 +1,51 @@
+package lex.common.dynamic.routing.datasource.scatter;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Merges the rows of the shards one shard at a time, in the order the shards
+ * answer. A merger is used by a single query, on the gathering thread.
+ *
+ * @param <T>
+ *            Type of Row
+ */
+public interface ResultMerger<T> {
+
+    /**
+     * Takes the rows of one shard.
+     * 
+     * @param rout
+     * @param rows
+     */
+    void accept(String rout, List<T> rows);
+
+    /**
+     * @return the merged rows
+     */
+    List<T> result();
+
+    /**
+     * @return merger appending the rows of the shards in answer order
+     */
+    static <T> ResultMerger<T> concat() {
+        return new ConcatMerger<>();
+    }
+
+    /**
+     * @param comparator
+     * @return merger of rows sorted by every shard into one sorted list
+     */
+    static <T> ResultMerger<T> sorted(Comparator<? super T> comparator) {
+        return new SortedMerger<>(comparator);
+    }
+
+    /**
+     * @param comparator
+     * @param n
+     * @return merger keeping the first n rows by the comparator, sorted
+     */
+    static <T> ResultMerger<T> topN(Comparator<? super T> comparator, int n) {
+        return new TopNMerger<>(comparator, n);
+    }
+}
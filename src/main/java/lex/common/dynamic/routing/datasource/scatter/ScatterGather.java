@@ -0,0 +1,158 @@
+package lex.common.dynamic.routing.datasource.scatter;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+import javax.sql.DataSource;
+
+import lex.common.constant.DataSourceConstant;
+import lex.common.dynamic.routing.datasource.DynamicRoutingDataSource;
+import lex.common.dynamic.routing.key.RoutingContext;
+
+/**
+ * Runs a query on the data source of every rout, or of the routs selected by
+ * a predicate, concurrently with bounded parallelism, and hands the rows of
+ * every shard to the gathering thread as soon as the shard answers. A cross
+ * shard query takes as long as the slowest shard, not the sum of all.
+ *
+ * Shard queries run on the given executor, within a {@link RoutingContext}
+ * of their rout, so code routing through the {@link DynamicRoutingDataSource}
+ * itself reaches the same shard.
+ */
+public class ScatterGather {
+    private final DynamicRoutingDataSource dataSource;
+    private final ExecutorService executor;
+    private final int parallelism;
+
+    /**
+     * @param dataSource
+     * @param executor,
+     *            runs the shard queries, owned by the caller
+     * @param parallelism,
+     *            largest number of shards queried at once by one call
+     */
+    public ScatterGather(DynamicRoutingDataSource dataSource, ExecutorService executor, int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.dataSource = dataSource;
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Queries the selected routs and merges their rows.
+     *
+     * @param routs,
+     *            selects the routs to query
+     * @param usePrime,
+     *            prime or slave data sources
+     * @param query
+     * @param merger,
+     *            e.g. {@link ResultMerger#sorted(java.util.Comparator)}
+     * @return the merged rows
+     * @throws SQLException
+     *             the first failure of a shard, the other shards are
+     *             cancelled
+     * @throws InterruptedException
+     */
+    public <T> List<T> gather(Predicate<? super String> routs, boolean usePrime, ShardQuery<T> query,
+            ResultMerger<T> merger) throws SQLException, InterruptedException {
+        scatter(routs, usePrime, query, merger::accept);
+        return merger.result();
+    }
+
+    /**
+     * Same as {@link #gather(Predicate, boolean, ShardQuery, ResultMerger)} on
+     * every rout.
+     */
+    public <T> List<T> gatherAll(boolean usePrime, ShardQuery<T> query, ResultMerger<T> merger)
+            throws SQLException, InterruptedException {
+        return gather(rout -> true, usePrime, query, merger);
+    }
+
+    /**
+     * Queries the selected routs, at most parallelism at once, and passes the
+     * rows of every shard to the consumer on the calling thread in answer
+     * order.
+     *
+     * @param routs,
+     *            selects the routs to query
+     * @param usePrime
+     * @param query
+     * @param consumer,
+     *            takes the rout and its rows
+     * @throws SQLException
+     *             the first failure of a shard, the other shards are
+     *             cancelled
+     * @throws InterruptedException
+     */
+    public <T> void scatter(Predicate<? super String> routs, boolean usePrime, ShardQuery<T> query,
+            BiConsumer<String, List<T>> consumer) throws SQLException, InterruptedException {
+        List<String> selected = new ArrayList<>();
+        for (String rout : dataSource.getRouts()) {
+            if (routs.test(rout)) {
+                selected.add(rout);
+            }
+        }
+
+        CompletionService<ShardResult<T>> completion = new ExecutorCompletionService<>(executor);
+        List<Future<ShardResult<T>>> futures = new ArrayList<>(selected.size());
+        int submitted = 0;
+        try {
+            while (submitted < selected.size() && submitted < parallelism) {
+                futures.add(completion.submit(task(selected.get(submitted++), usePrime, query)));
+            }
+            for (int answered = 0; answered < selected.size(); answered++) {
+                ShardResult<T> result = completion.take().get();
+                if (submitted < selected.size()) {
+                    futures.add(completion.submit(task(selected.get(submitted++), usePrime, query)));
+                }
+                consumer.accept(result.rout, result.rows);
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Shard query failed", cause);
+        } finally {
+            for (Future<ShardResult<T>> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private <T> Callable<ShardResult<T>> task(String rout, boolean usePrime,
+            ShardQuery<T> query) {
+        DataSource target = dataSource.getDataSource(rout, usePrime);
+        String lookupKey = rout.concat(usePrime ? DataSourceConstant.MASTER_SUFFIX : DataSourceConstant.SLAVE_SUFFIX);
+        return () -> new RoutingContext(dataSource, rout, lookupKey)
+                .call(() -> new ShardResult<>(rout, query.query(rout, target)));
+    }
+
+    private static final class ShardResult<T> {
+        final String rout;
+        final List<T> rows;
+
+        ShardResult(String rout, List<T> rows) {
+            this.rout = rout;
+            this.rows = rows;
+        }
+    }
+}
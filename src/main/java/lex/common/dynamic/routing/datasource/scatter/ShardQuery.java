@@ -0,0 +1,27 @@
+package lex.common.dynamic.routing.datasource.scatter;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+/**
+ * Query run on the data source of one rout by {@link ScatterGather}.
+ *
+ * @param <T>
+ *            Type of Row
+ */
+@FunctionalInterface
+public interface ShardQuery<T> {
+
+    /**
+     * @param rout,
+     *            e.g. "D1-T1-S1"
+     * @param dataSource,
+     *            master or slave data source of the rout
+     * @return rows of the shard, sorted when merged by
+     *         {@link ResultMerger#sorted(java.util.Comparator)}
+     * @throws SQLException
+     */
+    List<T> query(String rout, DataSource dataSource) throws SQLException;
+}
@@ -0,0 +1,67 @@
+package lex.common.dynamic.routing.datasource.scatter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the sorted rows of every shard as answered and merges them once, with
+ * a heap over the head row of each shard, so a query over k shards and n rows
+ * costs O(n log k). Stable, rows of earlier answers come first among equal
+ * rows.
+ */
+public class SortedMerger<T> implements ResultMerger<T> {
+    private final Comparator<? super T> comparator;
+    private final List<List<T>> shards = new ArrayList<>();
+    private int size;
+
+    public SortedMerger(Comparator<? super T> comparator) {
+        this.comparator = comparator;
+    }
+
+    @Override
+    public void accept(String rout, List<T> shardRows) {
+        if (!shardRows.isEmpty()) {
+            shards.add(shardRows);
+            size += shardRows.size();
+        }
+    }
+
+    @Override
+    public List<T> result() {
+        List<T> rows = new ArrayList<>(size);
+        PriorityQueue<Cursor<T>> heap = new PriorityQueue<>(Math.max(1, shards.size()), (left, right) -> {
+            int order = comparator.compare(left.row, right.row);
+            return order != 0 ? order : Integer.compare(left.shard, right.shard);
+        });
+        for (int shard = 0; shard < shards.size(); shard++) {
+            heap.add(new Cursor<>(shard, shards.get(shard).get(0)));
+        }
+
+        while (!heap.isEmpty()) {
+            Cursor<T> cursor = heap.poll();
+            rows.add(cursor.row);
+            List<T> shardRows = shards.get(cursor.shard);
+            if (++cursor.index < shardRows.size()) {
+                cursor.row = shardRows.get(cursor.index);
+                heap.add(cursor);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Next row of a shard, the shard index breaks ties in answer order.
+     */
+    private static final class Cursor<T> {
+        final int shard;
+        int index;
+        T row;
+
+        Cursor(int shard, T row) {
+            this.shard = shard;
+            this.row = row;
+        }
+    }
+}
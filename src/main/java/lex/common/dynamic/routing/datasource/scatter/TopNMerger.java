@@ -0,0 +1,51 @@
+package lex.common.dynamic.routing.datasource.scatter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the first n rows by the comparator in a bounded heap, whatever the
+ * order of the shard rows.
+ */
+public class TopNMerger<T> implements ResultMerger<T> {
+    private final Comparator<? super T> comparator;
+    private final int n;
+    private final PriorityQueue<T> heap;
+
+    /**
+     * @param comparator
+     * @param n,
+     *            number of rows kept
+     */
+    public TopNMerger(Comparator<? super T> comparator, int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("N must be positive: " + n);
+        }
+        this.comparator = comparator;
+        this.n = n;
+        // Largest kept row on top, replaced by any smaller row.
+        this.heap = new PriorityQueue<>(n, Collections.reverseOrder(comparator));
+    }
+
+    @Override
+    public void accept(String rout, List<T> shardRows) {
+        for (T row : shardRows) {
+            if (heap.size() < n) {
+                heap.add(row);
+            } else if (comparator.compare(row, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(row);
+            }
+        }
+    }
+
+    @Override
+    public List<T> result() {
+        List<T> rows = new ArrayList<>(heap);
+        rows.sort(comparator);
+        return rows;
+    }
+}
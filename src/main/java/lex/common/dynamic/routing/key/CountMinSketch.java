@@ -0,0 +1,64 @@
+package lex.common.dynamic.routing.key;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import lex.common.consistent.hashing.ConsistentHash;
+
+/**
+ * Lock-free count-min sketch over 64-bit key hashes. An estimate never
+ * undercounts and overcounts by at most e / width of the total with
+ * probability 1 - exp(-depth).
+ */
+final class CountMinSketch {
+    private final AtomicLongArray counts;
+    private final int depth;
+    private final int widthMask;
+    private final int widthBits;
+
+    /**
+     * @param depth,
+     *            number of rows
+     * @param width,
+     *            counters per row, rounded up to a power of two
+     */
+    CountMinSketch(int depth, int width) {
+        if (depth <= 0 || width <= 0) {
+            throw new IllegalArgumentException("Depth and width must be positive");
+        }
+        int rounded = width == 1 ? 1 : Integer.highestOneBit(width - 1) << 1;
+        this.depth = depth;
+        this.widthMask = rounded - 1;
+        this.widthBits = Integer.numberOfTrailingZeros(rounded);
+        this.counts = new AtomicLongArray(depth << widthBits);
+    }
+
+    /**
+     * Counts the hash once.
+     *
+     * @param hash
+     * @return estimate including this count
+     */
+    long addAndEstimate(long hash) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counts.incrementAndGet(index(hash, row)));
+        }
+        return estimate;
+    }
+
+    /**
+     * @param hash
+     * @return estimated count of the hash
+     */
+    long estimate(long hash) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counts.get(index(hash, row)));
+        }
+        return estimate;
+    }
+
+    private int index(long hash, int row) {
+        return (row << widthBits) | ((int) ConsistentHash.mix(hash, row) & widthMask);
+    }
+}
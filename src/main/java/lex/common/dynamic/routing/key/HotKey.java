@@ -0,0 +1,49 @@
+package lex.common.dynamic.routing.key;
+
+/**
+ * Routing key reported by {@link HotKeySampler}, with its estimated number of
+ * routings over the sliding window.
+ */
+public class HotKey {
+    private final String key;
+    private final String leaf;
+    private final long count;
+    private final double share;
+
+    /**
+     * @param key
+     * @param leaf,
+     *            leaf path the key was last sampled on
+     * @param count,
+     *            estimated routings, scaled by the sampling rate
+     * @param share,
+     *            of all routings in the window
+     */
+    public HotKey(String key, String leaf, long count, double share) {
+        this.key = key;
+        this.leaf = leaf;
+        this.count = count;
+        this.share = share;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getLeaf() {
+        return leaf;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getShare() {
+        return share;
+    }
+
+    @Override
+    public String toString() {
+        return key + " -> " + leaf + ": " + count + " (" + share + ")";
+    }
+}
@@ -0,0 +1,272 @@
+package lex.common.dynamic.routing.key;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import lex.common.consistent.hashing.ConsistentHash;
+
+/**
+ * Samples routed keys into fixed-size streaming sketches to report the hottest
+ * keys and leaves over a sliding window.
+ *
+ * Time is split into {@link #getWindows()} slots of a fixed length, each with
+ * a count-min sketch, a table of heavy-hitter candidates and per-leaf counts.
+ * A key is counted in the sketch, then replaces the candidate of its table
+ * slot if its estimate is larger. Reports merge the slots of the window.
+ * Recording never locks; a slot is recycled by a compare-and-set when its time
+ * is over.
+ */
+public class HotKeySampler {
+    private static final long ALWAYS = 1L << 32;
+    private static final int DEPTH = 4;
+
+    private final long threshold;
+    private final double samplingRate;
+    private final int topK;
+    private final long windowMillis;
+    private final int width;
+    private final int candidateMask;
+    private final LongSupplier clock;
+    private final AtomicReferenceArray<Window> windows;
+
+    /**
+     * @param samplingRate,
+     *            share of the routed keys sampled, in (0, 1]
+     * @param topK,
+     *            number of hot keys reported
+     * @param windowMillis,
+     *            length of one slot
+     * @param windows,
+     *            slots in the sliding window
+     */
+    public HotKeySampler(double samplingRate, int topK, long windowMillis, int windows) {
+        this(samplingRate, topK, windowMillis, windows, System::currentTimeMillis);
+    }
+
+    HotKeySampler(double samplingRate, int topK, long windowMillis, int windows, LongSupplier clock) {
+        if (!(samplingRate > 0) || samplingRate > 1) {
+            throw new IllegalArgumentException("Sampling rate must be in (0, 1]: " + samplingRate);
+        }
+        if (topK <= 0 || windowMillis <= 0 || windows <= 0) {
+            throw new IllegalArgumentException("Top K, window length and windows must be positive");
+        }
+        this.samplingRate = samplingRate;
+        this.threshold = (long) Math.ceil(samplingRate * ALWAYS);
+        this.topK = topK;
+        this.windowMillis = windowMillis;
+        this.width = Math.max(1024, topK * 64);
+        this.candidateMask = Integer.highestOneBit(topK * 8 - 1) * 2 - 1;
+        this.clock = clock;
+        this.windows = new AtomicReferenceArray<>(windows);
+    }
+
+    /**
+     * Samples a routed key.
+     *
+     * @param key
+     * @param leaf,
+     *            leaf path the key was routed to
+     */
+    public void record(String key, String leaf) {
+        if (threshold < ALWAYS && (ThreadLocalRandom.current().nextInt() & 0xFFFFFFFFL) >= threshold) {
+            return;
+        }
+
+        Window window = window(clock.getAsLong() / windowMillis);
+        long hash = hash(key);
+        long estimate = window.sketch.addAndEstimate(hash);
+        window.total.increment();
+        LongAdder leafCount = window.leaves.get(leaf);
+        if (leafCount == null) {
+            leafCount = window.leaves.computeIfAbsent(leaf, path -> new LongAdder());
+        }
+        leafCount.increment();
+
+        int slot = (int) (hash >>> 32) & candidateMask;
+        Candidate candidate = window.candidates.get(slot);
+        if (candidate != null && candidate.key.equals(key)) {
+            if (!leaf.equals(candidate.leaf)) {
+                candidate.leaf = leaf;
+            }
+        } else if (candidate == null || candidate.estimate() < estimate) {
+            window.candidates.compareAndSet(slot, candidate, new Candidate(key, leaf, hash, window.sketch));
+        }
+    }
+
+    private Window window(long epoch) {
+        int index = (int) (epoch % windows.length());
+        while (true) {
+            Window window = windows.get(index);
+            if (window != null && window.epoch >= epoch) {
+                return window;
+            }
+            Window next = new Window(epoch, width, candidateMask + 1);
+            if (windows.compareAndSet(index, window, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * @return the hottest keys of the sliding window, hottest first, at most
+     *         top K
+     */
+    public List<HotKey> hotKeys() {
+        List<Window> live = liveWindows();
+        long total = scale(total(live));
+        Map<String, Candidate> candidates = new HashMap<>();
+        for (Window window : live) {
+            for (int slot = 0; slot < window.candidates.length(); slot++) {
+                Candidate candidate = window.candidates.get(slot);
+                if (candidate != null) {
+                    // Newer slots come later and carry the latest leaf.
+                    candidates.put(candidate.key, candidate);
+                }
+            }
+        }
+
+        List<HotKey> hotKeys = new ArrayList<>(candidates.size());
+        for (Candidate candidate : candidates.values()) {
+            long count = scale(estimate(live, candidate.hash));
+            hotKeys.add(new HotKey(candidate.key, candidate.leaf, count, total == 0 ? 0 : (double) count / total));
+        }
+        hotKeys.sort(Comparator.comparingLong(HotKey::getCount).reversed());
+        return hotKeys.size() > topK ? new ArrayList<>(hotKeys.subList(0, topK)) : hotKeys;
+    }
+
+    /**
+     * @return estimated routings per leaf path over the sliding window,
+     *         hottest first
+     */
+    public Map<String, Long> hotLeaves() {
+        Map<String, Long> counts = new HashMap<>();
+        for (Window window : liveWindows()) {
+            for (Map.Entry<String, LongAdder> entry : window.leaves.entrySet()) {
+                counts.merge(entry.getKey(), entry.getValue().sum(), Long::sum);
+            }
+        }
+
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort(Map.Entry.<String, Long> comparingByValue().reversed());
+        Map<String, Long> leaves = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : entries) {
+            leaves.put(entry.getKey(), scale(entry.getValue()));
+        }
+        return leaves;
+    }
+
+    /**
+     * @param key
+     * @return estimated routings of the key over the sliding window, never
+     *         below the sampled count
+     */
+    public long estimate(String key) {
+        return scale(estimate(liveWindows(), hash(key)));
+    }
+
+    /**
+     * @return estimated routings over the sliding window
+     */
+    public long getTotal() {
+        return scale(total(liveWindows()));
+    }
+
+    public double getSamplingRate() {
+        return samplingRate;
+    }
+
+    public int getWindows() {
+        return windows.length();
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * @return slots of the sliding window, oldest first
+     */
+    private List<Window> liveWindows() {
+        long epoch = clock.getAsLong() / windowMillis;
+        List<Window> live = new ArrayList<>(windows.length());
+        for (int index = 0; index < windows.length(); index++) {
+            Window window = windows.get(index);
+            if (window != null && window.epoch > epoch - windows.length() && window.epoch <= epoch) {
+                live.add(window);
+            }
+        }
+        live.sort(Comparator.comparingLong(window -> window.epoch));
+        return live;
+    }
+
+    private static long estimate(List<Window> live, long hash) {
+        long estimate = 0;
+        for (Window window : live) {
+            estimate += window.sketch.estimate(hash);
+        }
+        return estimate;
+    }
+
+    private static long total(List<Window> live) {
+        long total = 0;
+        for (Window window : live) {
+            total += window.total.sum();
+        }
+        return total;
+    }
+
+    private long scale(long sampled) {
+        return threshold >= ALWAYS ? sampled : Math.round(sampled / samplingRate);
+    }
+
+    private static long hash(String key) {
+        return ConsistentHash.mix(key.hashCode());
+    }
+
+    /**
+     * One slot of the sliding window.
+     */
+    private static final class Window {
+        final long epoch;
+        final CountMinSketch sketch;
+        final AtomicReferenceArray<Candidate> candidates;
+        final LongAdder total = new LongAdder();
+        final Map<String, LongAdder> leaves = new ConcurrentHashMap<>();
+
+        Window(long epoch, int width, int candidates) {
+            this.epoch = epoch;
+            this.sketch = new CountMinSketch(DEPTH, width);
+            this.candidates = new AtomicReferenceArray<>(candidates);
+        }
+    }
+
+    /**
+     * Heavy-hitter candidate, estimated from the sketch of its slot.
+     */
+    private static final class Candidate {
+        final String key;
+        final long hash;
+        final CountMinSketch sketch;
+        volatile String leaf;
+
+        Candidate(String key, String leaf, long hash, CountMinSketch sketch) {
+            this.key = key;
+            this.leaf = leaf;
+            this.hash = hash;
+            this.sketch = sketch;
+        }
+
+        long estimate() {
+            return sketch.estimate(hash);
+        }
+    }
+}
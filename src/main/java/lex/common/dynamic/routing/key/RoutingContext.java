@@ -0,0 +1,161 @@
+package lex.common.dynamic.routing.key;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Immutable routing key bound for the duration of a task, an alternative to
+ * {@link KeyHolder#setKey(String, boolean)} which needs no cleanup and follows
+ * the task into executors.
+ *
+ * Contexts form a chain, so keys of several holders can be bound at once; a
+ * holder finds its key with {@link #lookupKey(Object)}. A thread only keeps a
+ * thread-local entry while it runs a task within a context, so threads which
+ * never route, or route only in scopes, keep none.
+ */
+public final class RoutingContext {
+    private static final ThreadLocal<RoutingContext> CURRENT = new ThreadLocal<>();
+
+    private final Object holder;
+    private final String key;
+    private final String lookupKey;
+    private final RoutingContext parent;
+
+    /**
+     * Context binding a key on top of the current context of the calling
+     * thread.
+     *
+     * @param holder,
+     *            the key holder the key belongs to
+     * @param key,
+     *            routing key
+     * @param lookupKey,
+     *            data source lookup key the routing key was routed to
+     */
+    public RoutingContext(Object holder, String key, String lookupKey) {
+        this.holder = holder;
+        this.key = key;
+        this.lookupKey = lookupKey;
+        this.parent = CURRENT.get();
+    }
+
+    /**
+     * @return context of the calling thread, or null if none is bound
+     */
+    public static RoutingContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @param holder
+     * @return lookup key bound for the holder on the calling thread, the
+     *         innermost one if nested, or null if none
+     */
+    public static String lookupKey(Object holder) {
+        for (RoutingContext context = CURRENT.get(); context != null; context = context.parent) {
+            if (context.holder == holder) {
+                return context.lookupKey;
+            }
+        }
+        return null;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getLookupKey() {
+        return lookupKey;
+    }
+
+    /**
+     * Runs the task with this context bound, then restores the previous one.
+     *
+     * @param task
+     */
+    public void run(Runnable task) {
+        RoutingContext previous = bind();
+        try {
+            task.run();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * Calls the task with this context bound, then restores the previous one.
+     *
+     * @param task
+     * @return result of the task
+     * @throws Exception
+     *             thrown by the task
+     */
+    public <V> V call(Callable<V> task) throws Exception {
+        RoutingContext previous = bind();
+        try {
+            return task.call();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * Same as {@link #call(Callable)} for tasks without checked exceptions.
+     *
+     * @param task
+     * @return result of the task
+     */
+    public <V> V supply(Supplier<V> task) {
+        RoutingContext previous = bind();
+        try {
+            return task.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    private RoutingContext bind() {
+        RoutingContext previous = CURRENT.get();
+        CURRENT.set(this);
+        return previous;
+    }
+
+    private static void restore(RoutingContext previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * @param task
+     * @return the task running within the context of the calling thread,
+     *         wherever it runs; the task itself if no context is bound
+     */
+    public static Runnable wrap(Runnable task) {
+        RoutingContext context = CURRENT.get();
+        return context == null ? task : () -> context.run(task);
+    }
+
+    /**
+     * @param task
+     * @return the task called within the context of the calling thread,
+     *         wherever it runs; the task itself if no context is bound
+     */
+    public static <V> Callable<V> wrap(Callable<V> task) {
+        RoutingContext context = CURRENT.get();
+        return context == null ? task : () -> context.call(task);
+    }
+
+    /**
+     * @param executor
+     * @return executor running every task within the context bound when it
+     *         was submitted, e.g. for the async stages of a
+     *         {@code CompletableFuture}
+     */
+    public static Executor propagating(Executor executor) {
+        return command -> executor.execute(wrap(command));
+    }
+}
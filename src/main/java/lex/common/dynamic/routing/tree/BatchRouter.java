@@ -0,0 +1,222 @@
+package lex.common.dynamic.routing.tree;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Routes many key hashes through one version of the tree. At every parent the
+ * keys under it are sorted by the highest bits in which their positions on
+ * that level differ, and the locator is walked once along them, then the keys
+ * are partitioned by child, stable, and routed further. Large batches are split
+ * into chunks routed in parallel.
+ */
+final class BatchRouter {
+
+    /**
+     * Smallest batch split into parallel chunks.
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    /**
+     * Positions are sorted by about log2(keys) + SORT_SLACK of their highest
+     * differing bits only, which leaves few keys per bucket out of order; the
+     * locator walk tolerates those, at a fraction of the passes of a full sort.
+     */
+    private static final int SORT_SLACK = 4;
+
+    private final TreeNode root;
+    private final LookupMode lookupMode;
+    private final long[] keyHashes;
+    private final TreeNode[] leaves;
+
+    private final int[] order;
+    private final int[] orderBuffer;
+    private final long[] hashes;
+    private final long[] hashBuffer;
+    private final long[] positions;
+    private final long[] positionBuffer;
+    private final Object[] hits;
+    private final int[] slots;
+
+    /**
+     * @param root,
+     *            the published root to route through
+     * @param lookupMode
+     * @param keyHashes
+     * @param leaves,
+     *            receives the leaf of every key hash, null if the tree is
+     *            empty
+     */
+    BatchRouter(TreeNode root, LookupMode lookupMode, long[] keyHashes, TreeNode[] leaves) {
+        this.root = root;
+        this.lookupMode = lookupMode;
+        this.keyHashes = keyHashes;
+        this.leaves = leaves;
+
+        int length = keyHashes.length;
+        this.order = new int[length];
+        this.orderBuffer = new int[length];
+        this.hashes = new long[length];
+        this.hashBuffer = new long[length];
+        this.positions = new long[length];
+        this.positionBuffer = new long[length];
+        this.hits = new Object[length];
+        this.slots = new int[length];
+    }
+
+    void route() {
+        int length = keyHashes.length;
+        if (length < PARALLEL_THRESHOLD) {
+            route(0, length);
+            return;
+        }
+
+        int chunks = Math.min(length / (PARALLEL_THRESHOLD / 2), Runtime.getRuntime().availableProcessors() * 4);
+        IntStream.range(0, chunks).parallel()
+                .forEach(chunk -> route((int) ((long) length * chunk / chunks),
+                        (int) ((long) length * (chunk + 1) / chunks)));
+    }
+
+    private void route(int from, int to) {
+        for (int index = from; index < to; index++) {
+            order[index] = index;
+        }
+        System.arraycopy(keyHashes, from, hashes, from, to - from);
+        route(root, 0, from, to);
+    }
+
+    /**
+     * Routes the keys in [from, to) of order, hashes carries their hashes in
+     * the same order.
+     */
+    private void route(TreeNode node, int level, int from, int to) {
+        if (node.locator == null || from == to) {
+            assign(node, from, to);
+            return;
+        }
+
+        boolean sorted = true;
+        long differing = 0;
+        positions[from] = lookupMode.levelPosition(hashes[from], level);
+        for (int index = from + 1; index < to; index++) {
+            long position = lookupMode.levelPosition(hashes[index], level);
+            positions[index] = position;
+            sorted &= positions[index - 1] <= position;
+            differing |= position ^ positions[from];
+        }
+        if (!sorted) {
+            sort(from, to, differing);
+        }
+        node.locator.getSorted(positions, from, to, hits);
+
+        Object[] children = node.children == null ? new Object[0] : node.children.toArray();
+        int[] bounds = new int[children.length + 2];
+        for (int index = from; index < to; index++) {
+            int slot = childIndex(children, hits[index]) + 1;
+            slots[index] = slot;
+            bounds[slot + 1]++;
+        }
+        bounds[0] = from;
+        for (int slot = 1; slot < bounds.length; slot++) {
+            bounds[slot] += bounds[slot - 1];
+        }
+        for (int index = from; index < to; index++) {
+            int target = bounds[slots[index]]++;
+            orderBuffer[target] = order[index];
+            hashBuffer[target] = hashes[index];
+        }
+        System.arraycopy(orderBuffer, from, order, from, to - from);
+        System.arraycopy(hashBuffer, from, hashes, from, to - from);
+
+        // bounds[slot] now ends the keys of slot, slot 0 holds the misses.
+        assign(node, from, bounds[0]);
+        for (int child = 0; child < children.length; child++) {
+            route((TreeNode) children[child], level + 1, bounds[child], bounds[child + 1]);
+        }
+    }
+
+    /**
+     * @return index of the hit child, -1 if the locator missed
+     */
+    private static int childIndex(Object[] children, Object hit) {
+        if (hit != null) {
+            for (int child = 0; child < children.length; child++) {
+                if (children[child] == hit) {
+                    return child;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private void assign(TreeNode node, int from, int to) {
+        TreeNode leaf = node == root ? null : node;
+        for (int index = from; index < to; index++) {
+            leaves[order[index]] = leaf;
+        }
+    }
+
+    /**
+     * LSD radix sort of the range by the highest differing bits of the
+     * positions, carrying the key order along. Hashes narrower than 64 bits,
+     * e.g. the 32-bit MD5 positions, are sorted by their own top bits.
+     * 
+     * @param differing,
+     *            bits which are not the same in all positions
+     */
+    private void sort(int from, int to, long differing) {
+        int top = Long.SIZE - Long.numberOfLeadingZeros(differing);
+        int bits = Long.SIZE - Long.numberOfLeadingZeros(to - from) + SORT_SLACK;
+        int lowest = Math.max(0, top - bits);
+        long[] sourcePositions = positions;
+        long[] targetPositions = positionBuffer;
+        int[] sourceOrder = order;
+        int[] targetOrder = orderBuffer;
+        long[] sourceHashes = hashes;
+        long[] targetHashes = hashBuffer;
+        int[] counts = new int[257];
+        for (int shift = lowest; shift < top; shift += 8) {
+            Arrays.fill(counts, 0);
+            for (int index = from; index < to; index++) {
+                counts[digit(sourcePositions[index], shift) + 1]++;
+            }
+            if (counts[digit(sourcePositions[from], shift) + 1] == to - from) {
+                continue;
+            }
+            counts[0] = from;
+            for (int digit = 1; digit < counts.length; digit++) {
+                counts[digit] += counts[digit - 1];
+            }
+            for (int index = from; index < to; index++) {
+                int target = counts[digit(sourcePositions[index], shift)]++;
+                targetPositions[target] = sourcePositions[index];
+                targetOrder[target] = sourceOrder[index];
+                targetHashes[target] = sourceHashes[index];
+            }
+
+            long[] positionSwap = sourcePositions;
+            sourcePositions = targetPositions;
+            targetPositions = positionSwap;
+            int[] orderSwap = sourceOrder;
+            sourceOrder = targetOrder;
+            targetOrder = orderSwap;
+            long[] hashSwap = sourceHashes;
+            sourceHashes = targetHashes;
+            targetHashes = hashSwap;
+        }
+
+        if (sourcePositions != positions) {
+            System.arraycopy(sourcePositions, from, positions, from, to - from);
+            System.arraycopy(sourceOrder, from, order, from, to - from);
+            System.arraycopy(sourceHashes, from, hashes, from, to - from);
+        }
+    }
+
+    /**
+     * Byte of the position at shift, the sign bit flipped so that the sort is
+     * signed.
+     */
+    private static int digit(long position, int shift) {
+        return (int) (((position ^ Long.MIN_VALUE) >>> shift) & 0xFF);
+    }
+}
@@ -1,5 +1,13 @@
 package lex.common.dynamic.routing.tree;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
 public interface ChangableLeaf {
     /**
      * Adds the full path of certain leaf.
@@ -22,6 +30,32 @@ public interface ChangableLeaf {
      */
     String findLeaf(String key);
 
+    /**
+     * Finds the full paths of many keys in one call.
+     * 
+     * @param keys
+     * @return keys grouped by the full path of the leaf they hit, in input order
+     */
+    default Map<String, List<String>> findLeaves(String... keys) {
+        return findLeaves(Arrays.asList(keys), Function.identity());
+    }
+
+    /**
+     * Finds the full paths of many items in one call.
+     * 
+     * @param items
+     * @param routingKey,
+     *            the key of an item
+     * @return items grouped by the full path of the leaf they hit, in input order
+     */
+    default <K> Map<String, List<K>> findLeaves(Collection<? extends K> items, Function<? super K, String> routingKey) {
+        Map<String, List<K>> leaves = new LinkedHashMap<>();
+        for (K item : items) {
+            leaves.computeIfAbsent(findLeaf(routingKey.apply(item)), path -> new ArrayList<>()).add(item);
+        }
+        return leaves;
+    }
+
     /**
      * Optional, overrides this method when concrete class needs to implement this
      * function.
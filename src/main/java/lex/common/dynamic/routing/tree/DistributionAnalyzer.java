@@ -0,0 +1,222 @@
+package lex.common.dynamic.routing.tree;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+import lex.common.consistent.hashing.HashingAlgorithm;
+
+/**
+ * Measures how a {@link DynamicHashingTree} spreads keys over its leaves and
+ * how many keys move on a topology change, so that replica counts, engines
+ * and hashing algorithms can be compared by numbers. Keys are routed in
+ * parallel on a fork-join pool, straight through the published nodes, so the
+ * routing metrics and cache of the tree are left alone.
+ */
+public class DistributionAnalyzer {
+    private static final int THRESHOLD = 1 << 13;
+
+    private final String[] keys;
+    private final ForkJoinPool pool;
+
+    /**
+     * Analyzes synthetic keys "key-0", "key-1", ...
+     * 
+     * @param numberOfKeys
+     */
+    public DistributionAnalyzer(int numberOfKeys) {
+        this(syntheticKeys(numberOfKeys));
+    }
+
+    /**
+     * @param keys,
+     *            sampled keys
+     */
+    public DistributionAnalyzer(String[] keys) {
+        this(keys, ForkJoinPool.commonPool());
+    }
+
+    public DistributionAnalyzer(String[] keys, ForkJoinPool pool) {
+        this.keys = keys;
+        this.pool = pool;
+    }
+
+    /**
+     * Routes every key and reports the load of each leaf.
+     * 
+     * @param tree
+     * @return report
+     */
+    public DistributionReport analyze(DynamicHashingTree tree) {
+        List<TreeNode> leaves = tree.leaves();
+        Map<String, Integer> indices = new HashMap<>();
+        for (TreeNode leaf : leaves) {
+            indices.put(leaf.path, indices.size());
+        }
+
+        long[] counts = pool.invoke(new CountTask(new Router(tree), indices, 0, keys.length));
+        Map<String, Long> loads = new LinkedHashMap<>();
+        for (int index = 0; index < leaves.size(); index++) {
+            loads.put(leaves.get(index).path, counts[index]);
+        }
+        return new DistributionReport(loads, keys.length, footprint(tree.root()));
+    }
+
+    /**
+     * Routes every key before and after the change. The change is applied to a
+     * {@link DynamicHashingTree#copy()}, the tree itself is left as is.
+     * 
+     * @param tree
+     * @param change,
+     *            applied to the copy, e.g. {@code t -> t.addLeaf("D3-T1-S1")}
+     * @return fraction of keys routed to another leaf after the change
+     */
+    public double remapFraction(DynamicHashingTree tree, Consumer<DynamicHashingTree> change) {
+        DynamicHashingTree changed = tree.copy();
+        String[] before = route(changed);
+        change.accept(changed);
+        String[] after = route(changed);
+
+        long moved = 0;
+        for (int index = 0; index < keys.length; index++) {
+            if (!before[index].equals(after[index])) {
+                moved++;
+            }
+        }
+        return keys.length == 0 ? 0 : (double) moved / keys.length;
+    }
+
+    /**
+     * @param tree
+     * @return leaf path of every key
+     */
+    public String[] route(DynamicHashingTree tree) {
+        String[] paths = new String[keys.length];
+        pool.invoke(new RouteTask(new Router(tree), paths, 0, keys.length));
+        return paths;
+    }
+
+    /**
+     * Approximate heap bytes of the tree nodes and their locators, excluding
+     * the interned key and path strings.
+     * 
+     * @param node
+     * @return bytes
+     */
+    static long footprint(TreeNode node) {
+        long bytes = 48;
+        if (node.children != null) {
+            bytes += 24 + 16 + 4L * node.children.size();
+            for (TreeNode child : node.children) {
+                bytes += footprint(child);
+            }
+        }
+        if (node.locator != null) {
+            bytes += node.locator.footprint();
+        }
+        return bytes;
+    }
+
+    private static String[] syntheticKeys(int numberOfKeys) {
+        String[] keys = new String[numberOfKeys];
+        for (int index = 0; index < numberOfKeys; index++) {
+            keys[index] = "key-" + index;
+        }
+        return keys;
+    }
+
+    private final class CountTask extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final Router router;
+        private final Map<String, Integer> indices;
+        private final int from;
+        private final int to;
+
+        CountTask(Router router, Map<String, Integer> indices, int from, int to) {
+            this.router = router;
+            this.indices = indices;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from > THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                CountTask left = new CountTask(router, indices, from, middle);
+                left.fork();
+                long[] counts = new CountTask(router, indices, middle, to).compute();
+                long[] leftCounts = left.join();
+                for (int index = 0; index < counts.length; index++) {
+                    counts[index] += leftCounts[index];
+                }
+                return counts;
+            }
+
+            long[] counts = new long[indices.size()];
+            for (int index = from; index < to; index++) {
+                Integer leaf = indices.get(router.findLeaf(keys[index]));
+                if (leaf != null) {
+                    counts[leaf]++;
+                }
+            }
+            return counts;
+        }
+    }
+
+    private final class RouteTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Router router;
+        private final String[] paths;
+        private final int from;
+        private final int to;
+
+        RouteTask(Router router, String[] paths, int from, int to) {
+            this.router = router;
+            this.paths = paths;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RouteTask(router, paths, from, middle), new RouteTask(router, paths, middle, to));
+                return;
+            }
+
+            for (int index = from; index < to; index++) {
+                paths[index] = router.findLeaf(keys[index]);
+            }
+        }
+    }
+
+    /**
+     * Routes through one published version of a tree without recording
+     * metrics or filling the routing cache.
+     */
+    private static final class Router {
+        private final TreeNode root;
+        private final HashingAlgorithm algorithm;
+        private final LookupMode lookupMode;
+
+        Router(DynamicHashingTree tree) {
+            this.root = tree.root();
+            this.algorithm = tree.getAlgorithm();
+            this.lookupMode = tree.lookupMode();
+        }
+
+        String findLeaf(String value) {
+            TreeNode leaf = TreeKeeper.findLeafNode(root, algorithm.hashAsLong(value), lookupMode);
+            return leaf == null ? "" : leaf.path;
+        }
+    }
+}
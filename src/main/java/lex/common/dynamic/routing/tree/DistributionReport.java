@@ -0,0 +1,95 @@
+package lex.common.dynamic.routing.tree;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Per-leaf load of a {@link DistributionAnalyzer} run.
+ */
+public class DistributionReport {
+    private final Map<String, Long> loads;
+    private final long numberOfKeys;
+    private final long footprint;
+    private final double mean;
+    private final double standardDeviation;
+    private final long max;
+    private final long min;
+
+    DistributionReport(Map<String, Long> loads, long numberOfKeys, long footprint) {
+        this.loads = Collections.unmodifiableMap(loads);
+        this.numberOfKeys = numberOfKeys;
+        this.footprint = footprint;
+
+        long max = 0;
+        long min = loads.isEmpty() ? 0 : Long.MAX_VALUE;
+        long sum = 0;
+        for (long load : loads.values()) {
+            max = Math.max(max, load);
+            min = Math.min(min, load);
+            sum += load;
+        }
+        this.mean = loads.isEmpty() ? 0 : (double) sum / loads.size();
+
+        double squares = 0;
+        for (long load : loads.values()) {
+            squares += (load - mean) * (load - mean);
+        }
+        this.standardDeviation = loads.isEmpty() ? 0 : Math.sqrt(squares / loads.size());
+        this.max = max;
+        this.min = min;
+    }
+
+    /**
+     * @return number of keys per leaf path, in tree order
+     */
+    public Map<String, Long> getLoads() {
+        return loads;
+    }
+
+    public long getNumberOfKeys() {
+        return numberOfKeys;
+    }
+
+    /**
+     * @return approximate heap bytes of the tree
+     */
+    public long getFootprint() {
+        return footprint;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getStandardDeviation() {
+        return standardDeviation;
+    }
+
+    /**
+     * @return standard deviation divided by mean
+     */
+    public double getCoefficientOfVariation() {
+        return mean == 0 ? 0 : standardDeviation / mean;
+    }
+
+    /**
+     * @return load of the busiest leaf divided by mean, 1 is perfect balance
+     */
+    public double getMaxToMean() {
+        return mean == 0 ? 0 : max / mean;
+    }
+
+    /**
+     * @return load of the idlest leaf divided by mean
+     */
+    public double getMinToMean() {
+        return mean == 0 ? 0 : min / mean;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("leaves=%d, keys=%d, mean=%.1f, stddev=%.1f (%.2f%%), max/mean=%.3f, min/mean=%.3f, bytes=%d",
+                loads.size(), numberOfKeys, mean, standardDeviation, getCoefficientOfVariation() * 100,
+                getMaxToMean(), getMinToMean(), footprint);
+    }
+}
@@ -1,15 +1,39 @@
 package lex.common.dynamic.routing.tree;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
+import lex.common.consistent.hashing.BoundedLoadTracker;
 import lex.common.consistent.hashing.HashingAlgorithm;
+import lex.common.consistent.hashing.NodeLocator;
 import lex.common.constant.TreeConstant;
 
+/**
+ * Hash tree with lock-free lookups. Every topology change copies the nodes on
+ * the changed path, applies the change to the copies and publishes the new root
+ * with a single volatile write, so lookups always walk one consistent version.
+ */
 public class DynamicHashingTree implements ChangableLeaf {
-    private final TreeNode root = new TreeNode(TreeConstant.ROOT_KEY);
+    private volatile TreeNode root = new TreeNode(TreeConstant.ROOT_KEY);
     private final HashingAlgorithm algorithm;
     private final String pathSeparator;
     private int numberOfReplications = 13;
+    private LookupMode lookupMode = LookupMode.PER_LEVEL_HASH;
+    private volatile BoundedLoadTracker<String> loadTracker = null;
+    private volatile long boundedLevelMask = 0L;
+    private volatile HashingEngine[] levelEngines = new HashingEngine[0];
+    private volatile HashingEngine defaultEngine = HashingEngine.RING;
+    private volatile int rendezvousThreshold = HashingEngine.DEFAULT_RENDEZVOUS_THRESHOLD;
+    private final LocatorFactory locatorFactory = this::newLocator;
+    private volatile long version = 0L;
+    private volatile RoutingCache routingCache = null;
+    private volatile RoutingMetrics metrics = null;
 
     public DynamicHashingTree(HashingAlgorithm algorithm) {
         this.algorithm = algorithm;
@@ -32,23 +56,522 @@ public class DynamicHashingTree implements ChangableLeaf {
         this.pathSeparator = pathSeparator;
         this.numberOfReplications = numberOfReplications;
     }
-    
+
+    /**
+     * @param algorithm
+     * @param pathSeparator
+     * @param numberOfReplications
+     * @param lookupMode,
+     *            {@link LookupMode#SINGLE_HASH} hashes the key once for all
+     *            levels
+     */
+    public DynamicHashingTree(HashingAlgorithm algorithm, String pathSeparator, int numberOfReplications,
+            LookupMode lookupMode) {
+        this.algorithm = algorithm;
+        this.pathSeparator = pathSeparator;
+        this.numberOfReplications = numberOfReplications;
+        this.lookupMode = lookupMode;
+    }
+
     @Override
-    public void addLeaf(String pathKey) {
+    public synchronized void addLeaf(String pathKey) {
+        long start = System.nanoTime();
+        List<String> keys = TreeKeeper.splitKey(pathKey, pathSeparator);
+        TreeNode next = TreeKeeper.copyPath(root, keys);
+        TreeKeeper.addPath(next, keys, 0, locatorFactory);
+        publish(next, start);
+    }
+
+    /**
+     * Adds many leaves as one topology change. Every existing node is copied
+     * once, and each locator takes all its new children at once; ring locators
+     * hash the virtual nodes in parallel and sort once. Parents are filled in
+     * parallel.
+     * 
+     * @param pathKeys
+     */
+    public void addLeaves(Collection<String> pathKeys) {
+        TopologyChangeset changeset = newChangeset();
+        for (String pathKey : pathKeys) {
+            changeset.addLeaf(pathKey);
+        }
+        apply(changeset);
+    }
+
+    /**
+     * Adds the full path of certain leaf with a weight, published as one
+     * topology change.
+     * 
+     * @param pathKey
+     * @param weight,
+     *            see {@link TopologyChangeset#setWeight(String, double)}
+     */
+    public void addLeaf(String pathKey, double weight) {
+        apply(newChangeset().addLeaf(pathKey, weight));
+    }
+
+    /**
+     * Changes the weight of an existing node, moving only the hashes covered by
+     * the virtual nodes added or removed.
+     * 
+     * @param pathKey
+     * @param weight,
+     *            see {@link TopologyChangeset#setWeight(String, double)}
+     */
+    public void setWeight(String pathKey, double weight) {
+        apply(newChangeset().setWeight(pathKey, weight));
+    }
+
+    /**
+     * @param pathKey
+     * @return weight of the node at the path, 1 unless set
+     * @throws IllegalArgumentException
+     *             if the path is not found
+     */
+    public double getWeight(String pathKey) {
+        TreeNode current = root;
         List<String> keys = TreeKeeper.splitKey(pathKey, pathSeparator);
-        TreeKeeper.addPath(algorithm, root, keys, numberOfReplications);
+        TreeNode node = TreeKeeper.findNode(current, keys);
+        if (node == null || node == current) {
+            throw new IllegalArgumentException("Path [" + pathKey + "] is not found");
+        }
+        TreeNode parent = TreeKeeper.findNode(current, keys.subList(0, keys.size() - 1));
+        return parent.locator.getWeight(node);
+    }
+
+    /**
+     * @return an empty changeset of this tree
+     */
+    public TopologyChangeset newChangeset() {
+        return new TopologyChangeset(this);
+    }
+
+    /**
+     * Applies the staged changes to a private copy of the tree in staging order,
+     * consecutive additions with a single locator build per parent, then
+     * publishes the copy. Readers see either none or all of the changes.
+     * 
+     * @param changeset
+     * @return root before the changes, root after
+     */
+    synchronized TreeNode[] apply(TopologyChangeset changeset) {
+        long start = System.nanoTime();
+        TreeNode before = root;
+        TreeNode next = before.copy(null);
+        Set<TreeNode> owned = TreeKeeper.newOwnedSet();
+        owned.add(next);
+
+        List<List<String>> additions = new ArrayList<>();
+        Map<List<String>, Double> weights = new LinkedHashMap<>();
+        for (TopologyChangeset.Change change : changeset.changes()) {
+            List<String> keys = TreeKeeper.splitKey(change.path, pathSeparator);
+            if (change.kind == TopologyChangeset.Change.Kind.ADD) {
+                additions.add(keys);
+                if (change.weight != 1.0) {
+                    weights.put(keys, change.weight);
+                }
+                continue;
+            }
+
+            addPaths(next, additions, weights, owned);
+            TreeKeeper.copyPath(next, keys, owned);
+            if (change.kind == TopologyChangeset.Change.Kind.REMOVE) {
+                TreeKeeper.removeLeaf(next, keys);
+            } else {
+                TreeKeeper.setWeight(next, keys, change.weight);
+            }
+        }
+        addPaths(next, additions, weights, owned);
+
+        publish(next, start);
+        return new TreeNode[] { before, next };
+    }
+
+    /**
+     * Adds the paths, each locator takes all its new children at once; parents
+     * are filled in parallel. Then sets the weights of the weighted paths and
+     * clears both.
+     */
+    private void addPaths(TreeNode next, List<List<String>> paths, Map<List<String>, Double> weights,
+            Set<TreeNode> owned) {
+        if (paths.isEmpty()) {
+            return;
+        }
+        addPaths(next, paths, owned);
+        for (Map.Entry<List<String>, Double> weight : weights.entrySet()) {
+            TreeKeeper.copyPath(next, weight.getKey(), owned);
+            TreeKeeper.setWeight(next, weight.getKey(), weight.getValue());
+        }
+        paths.clear();
+        weights.clear();
+    }
+
+    private void addPaths(TreeNode next, List<List<String>> paths, Set<TreeNode> owned) {
+        Map<TreeNode, List<TreeNode>> added = TreeKeeper.addPaths(next, paths, locatorFactory, owned);
+        added.entrySet().parallelStream().forEach(entry -> {
+            List<TreeNode> children = entry.getValue();
+            List<String> keys = new ArrayList<>(children.size());
+            for (TreeNode child : children) {
+                keys.add(child.key);
+            }
+            entry.getKey().locator.addAll(keys, children);
+        });
     }
 
     @Override
-    public void removeLeaf(String pathKey) {
+    public synchronized void removeLeaf(String pathKey) {
+        long start = System.nanoTime();
         List<String> keys = TreeKeeper.splitKey(pathKey, pathSeparator);
-        TreeKeeper.removeLeaf(root, keys, algorithm, numberOfReplications);
+        TreeNode next = TreeKeeper.copyPath(root, keys);
+        TreeKeeper.removeLeaf(next, keys);
+        publish(next, start);
+    }
+
+    /**
+     * Publishes a new root, then bumps the version. Readers read the version
+     * before the root, so a leaf is never cached under a newer version than
+     * the tree it was found in.
+     * 
+     * @param next
+     * @param start,
+     *            {@link System#nanoTime()} at the start of the change
+     */
+    private void publish(TreeNode next, long start) {
+        TreeNode before = root;
+        root = next;
+        version++;
+        evictLoads(before, next);
+        RoutingMetrics current = metrics;
+        if (current != null) {
+            current.recordTopologyChange(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Drops the in-flight counts of the nodes erased by a topology change, so
+     * route churn does not grow the load tracker.
+     */
+    private void evictLoads(TreeNode before, TreeNode next) {
+        BoundedLoadTracker<String> tracker = loadTracker;
+        if (tracker == null) {
+            return;
+        }
+
+        List<TreeNode> erased = new ArrayList<>();
+        TreeKeeper.collectErased(before, next, erased);
+        for (TreeNode node : erased) {
+            tracker.remove(node.path);
+        }
+    }
+
+    /**
+     * @return topology version, bumped by every addLeaf and removeLeaf
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Copies the currently published version. Both trees share the unchanged
+     * nodes and evolve independently afterwards, so a copy taken before a
+     * topology change keeps routing as before, e.g. for a
+     * {@link MigrationPlanner}. Bounded loads and the routing cache are not
+     * copied.
+     *
+     * @return a tree with the same topology, settings and version
+     */
+    public synchronized DynamicHashingTree copy() {
+        DynamicHashingTree copy = new DynamicHashingTree(algorithm, pathSeparator, numberOfReplications, lookupMode);
+        copy.root = root;
+        copy.levelEngines = levelEngines;
+        copy.defaultEngine = defaultEngine;
+        copy.rendezvousThreshold = rendezvousThreshold;
+        copy.version = version;
+        return copy;
+    }
+
+    /**
+     * Starts counting lookups per leaf, their latency and the topology changes.
+     * Costs two {@link System#nanoTime()} calls and a few striped counter
+     * increments per lookup.
+     * 
+     * @return the metrics, kept if already enabled
+     */
+    public synchronized RoutingMetrics enableMetrics() {
+        if (metrics == null) {
+            metrics = new RoutingMetrics();
+        }
+        return metrics;
+    }
+
+    /**
+     * @return the metrics, or null if not enabled
+     */
+    public RoutingMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Caches the leaves found by {@link #findLeafNode(String)} and
+     * {@link #findLeaf(String)}, until the next topology change.
+     * 
+     * @param capacity,
+     *            number of cached keys
+     */
+    public void enableRoutingCache(int capacity) {
+        this.routingCache = new RoutingCache(capacity);
+    }
+
+    /**
+     * @return the routing cache, or null if not enabled
+     */
+    public RoutingCache getRoutingCache() {
+        return routingCache;
     }
 
     @Override
     public String findLeaf(String value) {
-        StringBuilder pathBuilder = new StringBuilder();
-        TreeKeeper.findLeaf(root, value, pathBuilder, algorithm);
-        return pathBuilder.toString();
+        TreeNode leaf = findLeafNode(value);
+        return leaf == null ? "" : leaf.path;
+    }
+
+    /**
+     * Routes the items through one version of the tree, sorting the key hashes
+     * and walking every locator once per parent instead of once per key.
+     */
+    @Override
+    public <K> Map<String, List<K>> findLeaves(Collection<? extends K> items, Function<? super K, String> routingKey) {
+        @SuppressWarnings("unchecked")
+        K[] array = (K[]) items.toArray();
+        String[] keys = new String[array.length];
+        for (int index = 0; index < array.length; index++) {
+            keys[index] = routingKey.apply(array[index]);
+        }
+
+        TreeNode[] leaves = findLeafNodes(keys);
+        Map<String, List<K>> grouped = new LinkedHashMap<>();
+        for (int index = 0; index < array.length; index++) {
+            String path = leaves[index] == null ? "" : leaves[index].path;
+            grouped.computeIfAbsent(path, key -> new ArrayList<>()).add(array[index]);
+        }
+        return grouped;
+    }
+
+    /**
+     * Batch form of {@link #findLeafNode(String)}. Keys are hashed in bulk,
+     * batches of {@link BatchRouter#PARALLEL_THRESHOLD} keys or more are hashed
+     * and routed in parallel.
+     * 
+     * @param values
+     * @return the leaf of every value by index, null if the tree is empty
+     */
+    public TreeNode[] findLeafNodes(String[] values) {
+        TreeNode current = root;
+        long[] keyHashes = new long[values.length];
+        if (values.length < BatchRouter.PARALLEL_THRESHOLD) {
+            for (int index = 0; index < values.length; index++) {
+                keyHashes[index] = algorithm.hashAsLong(values[index]);
+            }
+        } else {
+            Arrays.parallelSetAll(keyHashes, index -> algorithm.hashAsLong(values[index]));
+        }
+
+        TreeNode[] leaves = new TreeNode[values.length];
+        new BatchRouter(current, lookupMode, keyHashes, leaves).route();
+        return leaves;
+    }
+
+    /**
+     * Picks the engine of a level. Applies to parents created afterwards, so set
+     * it before adding leaves.
+     * 
+     * @param level,
+     *            0 for the children of root
+     * @param engine
+     */
+    public synchronized void setHashingEngine(int level, HashingEngine engine) {
+        HashingEngine[] engines = levelEngines;
+        if (level >= engines.length) {
+            engines = Arrays.copyOf(engines, level + 1);
+        } else {
+            engines = engines.clone();
+        }
+        engines[level] = engine;
+        levelEngines = engines;
+    }
+
+    /**
+     * @param level
+     * @return engine of the level, the default engine unless set
+     */
+    public HashingEngine getHashingEngine(int level) {
+        HashingEngine[] engines = levelEngines;
+        return level < engines.length && engines[level] != null ? engines[level] : defaultEngine;
+    }
+
+    /**
+     * Picks the engine of every level without an engine of its own, e.g.
+     * {@link HashingEngine#ADAPTIVE}. Applies to parents created afterwards.
+     * 
+     * @param engine
+     */
+    public void setDefaultHashingEngine(HashingEngine engine) {
+        this.defaultEngine = engine;
+    }
+
+    /**
+     * @param rendezvousThreshold,
+     *            largest number of children served by rendezvous hashing in
+     *            {@link HashingEngine#ADAPTIVE}
+     */
+    public void setRendezvousThreshold(int rendezvousThreshold) {
+        this.rendezvousThreshold = rendezvousThreshold;
+    }
+
+    NodeLocator<TreeNode> newLocator(int level) {
+        return getHashingEngine(level).newLocator(level, algorithm, numberOfReplications, lookupMode,
+                rendezvousThreshold);
+    }
+
+    /**
+     * Enables consistent hashing with bounded loads. On the given levels a child
+     * is skipped for the next one on the ring while its in-flight assignments
+     * exceed (1 + epsilon) times the average of its siblings. Only
+     * {@link #acquireLeaf(String)} honors the bound.
+     * 
+     * @param epsilon
+     * @param levels,
+     *            0 for the children of root, all levels if none is given
+     */
+    public void enableBoundedLoads(double epsilon, int... levels) {
+        long mask = levels.length == 0 ? -1L : 0L;
+        for (int level : levels) {
+            if (level < 0 || level >= Long.SIZE) {
+                throw new IllegalArgumentException("Level out of range: " + level);
+            }
+            mask |= 1L << level;
+        }
+        boundedLevelMask = mask;
+        loadTracker = new BoundedLoadTracker<>(epsilon);
+    }
+
+    /**
+     * Finds the leaf hit by input value under the bounded loads and counts the
+     * assignment until {@link #releaseLeaf(TreeNode)}. Falls back to
+     * {@link #findLeafNode(String)} when bounded loads are not enabled.
+     * 
+     * @param value
+     * @return the leaf, or null if the tree is empty
+     */
+    public TreeNode acquireLeaf(String value) {
+        BoundedLoadTracker<String> tracker = loadTracker;
+        if (tracker == null) {
+            return findLeafNode(value);
+        }
+
+        RoutingMetrics current = metrics;
+        long start = current == null ? 0L : System.nanoTime();
+        TreeNode leaf = TreeKeeper.acquireLeafNode(root, algorithm.hashAsLong(value), lookupMode, tracker,
+                boundedLevelMask);
+        if (current != null) {
+            current.recordLookup(leaf, System.nanoTime() - start);
+        }
+        return leaf;
+    }
+
+    /**
+     * Releases a leaf returned by {@link #acquireLeaf(String)}.
+     * 
+     * @param leaf
+     */
+    public void releaseLeaf(TreeNode leaf) {
+        BoundedLoadTracker<String> tracker = loadTracker;
+        if (tracker != null && leaf != null) {
+            TreeKeeper.releaseLeafNode(leaf, tracker);
+        }
+    }
+
+    /**
+     * @return tracker of in-flight assignments keyed by node path, or null if
+     *         bounded loads are not enabled
+     */
+    public BoundedLoadTracker<String> getLoadTracker() {
+        return loadTracker;
+    }
+
+    /**
+     * @return leaves of the currently published tree
+     */
+    public List<TreeNode> leaves() {
+        List<TreeNode> leaves = new ArrayList<>();
+        TreeKeeper.collectLeaves(root, leaves);
+        return leaves;
+    }
+
+    /**
+     * Publishes a restored root, replacing the whole tree.
+     * 
+     * @param next
+     */
+    synchronized void restore(TreeNode next) {
+        publish(next, System.nanoTime());
+    }
+
+    public HashingAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    LookupMode lookupMode() {
+        return lookupMode;
+    }
+
+    /**
+     * @return virtual nodes of a node of weight 1
+     */
+    public int numberOfReplications() {
+        return numberOfReplications;
+    }
+
+    /**
+     * @return currently published root
+     */
+    TreeNode root() {
+        return root;
+    }
+
+    /**
+     * Finds the leaf node hit by input value, which carries the precomputed full
+     * path and data source keys.
+     * 
+     * @param value
+     * @return the leaf, or null if the tree is empty
+     */
+    public TreeNode findLeafNode(String value) {
+        RoutingMetrics current = metrics;
+        if (current == null) {
+            return lookup(value);
+        }
+
+        long start = System.nanoTime();
+        TreeNode leaf = lookup(value);
+        current.recordLookup(leaf, System.nanoTime() - start);
+        return leaf;
+    }
+
+    private TreeNode lookup(String value) {
+        RoutingCache cache = routingCache;
+        if (cache == null) {
+            return TreeKeeper.findLeafNode(root, algorithm.hashAsLong(value), lookupMode);
+        }
+
+        long current = version;
+        TreeNode leaf = cache.get(value, current);
+        if (leaf == null) {
+            leaf = TreeKeeper.findLeafNode(root, algorithm.hashAsLong(value), lookupMode);
+            if (leaf != null) {
+                cache.put(value, leaf, current);
+            }
+        }
+        return leaf;
     }
 }
\ No newline at end of file
@@ -0,0 +1,206 @@
+package lex.common.dynamic.routing.tree;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import lex.common.consistent.hashing.HashingAlgorithm;
+import lex.common.constant.TreeConstant;
+
+/**
+ * Read-only hash tree over the flat layout of {@link TopologySnapshot}. Lookups
+ * binary search the ring arrays in the buffer itself, so a memory-mapped
+ * snapshot is served from the page cache, shared by every JVM mapping the same
+ * file, and a direct buffer keeps the rings off heap. Only leaf paths are
+ * decoded onto the heap, lazily on their first hit.
+ */
+public class FlatTopology implements ChangableLeaf {
+    private final ByteBuffer buffer;
+    private final HashingAlgorithm algorithm;
+    private final LookupMode lookupMode;
+    private final int numberOfReplications;
+    private final int algorithmId;
+    private final int nodeCount;
+    private final int positionsOffset;
+    private final int ownersOffset;
+    private final int stringsOffset;
+    private final String[] paths;
+
+    /**
+     * @param buffer,
+     *            a snapshot written by {@link TopologySnapshot}
+     * @param algorithm,
+     *            the hashing algorithm of the tree the snapshot was taken from
+     * @throws IllegalArgumentException
+     *             if the buffer is not a snapshot or was taken with another
+     *             hashing algorithm
+     */
+    public FlatTopology(ByteBuffer buffer, HashingAlgorithm algorithm) {
+        this.buffer = buffer.duplicate();
+        this.algorithm = algorithm;
+
+        if (buffer.capacity() < TopologySnapshot.HEADER_BYTES
+                || this.buffer.getInt(0) != TopologySnapshot.MAGIC) {
+            throw new IllegalArgumentException("Not a topology snapshot");
+        }
+        int formatVersion = this.buffer.getInt(4);
+        if (formatVersion != TopologySnapshot.FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported snapshot format version " + formatVersion);
+        }
+        this.lookupMode = LookupMode.values()[this.buffer.getInt(8)];
+        this.numberOfReplications = this.buffer.getInt(12);
+        this.nodeCount = this.buffer.getInt(16);
+        int positionCount = this.buffer.getInt(20);
+        int stringBytes = this.buffer.getInt(24);
+        this.algorithmId = this.buffer.getInt(28);
+        if (algorithmId != TopologySnapshot.algorithmId(algorithm)) {
+            throw new IllegalArgumentException("Snapshot was taken with another hashing algorithm");
+        }
+
+        this.positionsOffset = TopologySnapshot.HEADER_BYTES + nodeCount * TopologySnapshot.NODE_BYTES;
+        this.ownersOffset = positionsOffset + positionCount * 8;
+        this.stringsOffset = ownersOffset + positionCount * 4;
+        if (stringsOffset + stringBytes > buffer.capacity()) {
+            throw new IllegalArgumentException("Truncated topology snapshot");
+        }
+        this.paths = new String[nodeCount];
+    }
+
+    @Override
+    public void addLeaf(String path) {
+        throw new UnsupportedOperationException("Flat topology is read-only");
+    }
+
+    @Override
+    public void removeLeaf(String path) {
+        throw new UnsupportedOperationException("Flat topology is read-only");
+    }
+
+    @Override
+    public String findLeaf(String key) {
+        int leaf = findLeafIndex(algorithm.hashAsLong(key));
+        return leaf < 0 ? "" : path(leaf);
+    }
+
+    /**
+     * @param keyHash
+     * @return index of the leaf hit by the hash, -1 if the tree is empty
+     */
+    public int findLeafIndex(long keyHash) {
+        int node = 0;
+        int level = 0;
+        while (true) {
+            int ringLength = ringLength(node);
+            if (ringLength == 0) {
+                break;
+            }
+
+            long position = lookupMode.levelPosition(keyHash, level++);
+            int from = ringStart(node);
+            int low = from;
+            int high = from + ringLength - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (buffer.getLong(positionsOffset + middle * 8) < position) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            if (low == from + ringLength) {
+                low = from;
+            }
+            node = buffer.getInt(ownersOffset + low * 4);
+        }
+        return node == 0 ? -1 : node;
+    }
+
+    /**
+     * @param node
+     * @return full path of the node, e.g. "D1-T1-S1-", "" for root
+     */
+    public String path(int node) {
+        String path = paths[node];
+        if (path == null) {
+            int parent = parent(node);
+            path = parent < 0 ? ""
+                    : path(parent).concat(key(node)).concat(TreeConstant.DEFAULT_PATH_SEPARATOR).intern();
+            paths[node] = path;
+        }
+        return path;
+    }
+
+    /**
+     * @param node
+     * @return key of the node, e.g. "S1"
+     */
+    public String key(int node) {
+        int offset = stringsOffset + field(node, 0);
+        int length = buffer.getShort(offset) & 0xFFFF;
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset + 2);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public int parent(int node) {
+        return field(node, 1);
+    }
+
+    public int firstChild(int node) {
+        return field(node, 2);
+    }
+
+    public int childCount(int node) {
+        return field(node, 3);
+    }
+
+    int ringStart(int node) {
+        return field(node, 4);
+    }
+
+    int ringLength(int node) {
+        return field(node, 5);
+    }
+
+    long position(int index) {
+        return buffer.getLong(positionsOffset + index * 8);
+    }
+
+    int owner(int index) {
+        return buffer.getInt(ownersOffset + index * 4);
+    }
+
+    /**
+     * @return bytes of the buffer
+     */
+    public int capacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * @return number of nodes, root included
+     */
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public LookupMode getLookupMode() {
+        return lookupMode;
+    }
+
+    public int getNumberOfReplications() {
+        return numberOfReplications;
+    }
+
+    /**
+     * @return fingerprint of the hashing algorithm the snapshot was taken with
+     */
+    public int getAlgorithmId() {
+        return algorithmId;
+    }
+
+    private int field(int node, int field) {
+        return buffer.getInt(TopologySnapshot.HEADER_BYTES + node * TopologySnapshot.NODE_BYTES + field * 4);
+    }
+}
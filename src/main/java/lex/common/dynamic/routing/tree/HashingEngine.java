@@ -0,0 +1,102 @@
+package lex.common.dynamic.routing.tree;
+
+import lex.common.consistent.hashing.AdaptiveLocator;
+import lex.common.consistent.hashing.HashRing;
+import lex.common.consistent.hashing.HashingAlgorithm;
+import lex.common.consistent.hashing.JumpHash;
+import lex.common.consistent.hashing.MaglevTable;
+import lex.common.consistent.hashing.NodeLocator;
+import lex.common.consistent.hashing.RendezvousHash;
+import lex.common.consistent.hashing.RendezvousTable;
+
+/**
+ * Engine picking a child on one level of the tree.
+ */
+public enum HashingEngine {
+
+    /**
+     * Virtual node ring, default. The only engine supporting weights.
+     */
+    RING {
+        @Override
+        NodeLocator<TreeNode> newLocator(int level, HashingAlgorithm hashingAlgorithm, int numberOfReplications,
+                LookupMode lookupMode, int rendezvousThreshold) {
+            return new HashRing<>(numberOfReplications,
+                    (nodeKey, from, to) -> lookupMode.virtualNodePositions(nodeKey, from, to, hashingAlgorithm));
+        }
+    },
+
+    /**
+     * Jump Consistent Hash, O(1) memory. Buckets follow the child key order, so
+     * it suits append-only numbered children; adding or removing a child other
+     * than the highest one shifts the buckets above it.
+     */
+    JUMP {
+        @Override
+        NodeLocator<TreeNode> newLocator(int level, HashingAlgorithm hashingAlgorithm, int numberOfReplications,
+                LookupMode lookupMode, int rendezvousThreshold) {
+            return new JumpHash<>(level);
+        }
+    },
+
+    /**
+     * Maglev lookup table, O(1) lookups with near-perfect balance. Costs a table
+     * of {@link MaglevTable#DEFAULT_TABLE_SIZE} ints per parent node.
+     */
+    MAGLEV {
+        @Override
+        NodeLocator<TreeNode> newLocator(int level, HashingAlgorithm hashingAlgorithm, int numberOfReplications,
+                LookupMode lookupMode, int rendezvousThreshold) {
+            return new MaglevTable<>(MaglevTable.DEFAULT_TABLE_SIZE, hashingAlgorithm::hashAsLong, level);
+        }
+    },
+
+    /**
+     * Rendezvous (highest random weight) hashing, scores every child on each
+     * lookup. Fastest for a handful of children, no ring memory.
+     */
+    RENDEZVOUS {
+        @Override
+        NodeLocator<TreeNode> newLocator(int level, HashingAlgorithm hashingAlgorithm, int numberOfReplications,
+                LookupMode lookupMode, int rendezvousThreshold) {
+            return new RendezvousHash<>(hashingAlgorithm::hashAsLong, level);
+        }
+    },
+
+    /**
+     * Rendezvous hashing up to the rendezvous threshold of children, a
+     * {@link RendezvousTable} beyond, so large fan-outs get one table read per
+     * lookup. Both score the same buckets, so crossing the threshold only moves
+     * the keys the added or removed child wins or owned.
+     */
+    ADAPTIVE {
+        @Override
+        NodeLocator<TreeNode> newLocator(int level, HashingAlgorithm hashingAlgorithm, int numberOfReplications,
+                LookupMode lookupMode, int rendezvousThreshold) {
+            return new AdaptiveLocator<>(rendezvousThreshold,
+                    () -> new RendezvousHash<>(hashingAlgorithm::hashAsLong, level,
+                            RendezvousTable.DEFAULT_BUCKET_BITS),
+                    () -> new RendezvousTable<>(hashingAlgorithm::hashAsLong, level,
+                            RendezvousTable.DEFAULT_BUCKET_BITS));
+        }
+    };
+
+    /**
+     * Default largest number of children served by rendezvous hashing in
+     * {@link #ADAPTIVE}.
+     */
+    public static final int DEFAULT_RENDEZVOUS_THRESHOLD = 8;
+
+    /**
+     * @param level,
+     *            0 for the children of root
+     * @param hashingAlgorithm
+     * @param numberOfReplications
+     * @param lookupMode
+     * @param rendezvousThreshold,
+     *            used by {@link #ADAPTIVE}
+     * @return an empty locator for the children of a node
+     */
+    abstract NodeLocator<TreeNode> newLocator(int level, HashingAlgorithm hashingAlgorithm, int numberOfReplications,
+            LookupMode lookupMode, int rendezvousThreshold);
+}
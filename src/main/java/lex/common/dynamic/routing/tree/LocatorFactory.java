@@ -0,0 +1,16 @@
+package lex.common.dynamic.routing.tree;
+
+import lex.common.consistent.hashing.NodeLocator;
+
+/**
+ * Creates the locator of the children of a node.
+ */
+interface LocatorFactory {
+
+    /**
+     * @param level,
+     *            0 for the children of root
+     * @return an empty locator
+     */
+    NodeLocator<TreeNode> newLocator(int level);
+}
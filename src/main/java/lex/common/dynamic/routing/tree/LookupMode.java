@@ -0,0 +1,67 @@
+package lex.common.dynamic.routing.tree;
+
+import lex.common.consistent.hashing.ConsistentHash;
+import lex.common.consistent.hashing.HashingAlgorithm;
+
+/**
+ * How a key is turned into ring positions along its path.
+ */
+public enum LookupMode {
+
+    /**
+     * Hashes the key again at every level, default. Keeps the placements of
+     * existing trees.
+     */
+    PER_LEVEL_HASH {
+        @Override
+        long[] virtualNodePositions(String nodeKey, int from, int to, HashingAlgorithm hashingAlgorithm) {
+            return ConsistentHash.virtualNodePositions(nodeKey, from, to, hashingAlgorithm);
+        }
+
+        @Override
+        long levelPosition(long keyHash, int level) {
+            return keyHash;
+        }
+    },
+
+    /**
+     * Hashes the key once and derives the position of each level by seeded
+     * mixing. Virtual nodes are mixed into the same 64-bit space, so trees built
+     * in this mode place keys differently from {@link #PER_LEVEL_HASH}.
+     */
+    SINGLE_HASH {
+        @Override
+        long[] virtualNodePositions(String nodeKey, int from, int to, HashingAlgorithm hashingAlgorithm) {
+            long[] positions = ConsistentHash.virtualNodePositions(nodeKey, from, to, hashingAlgorithm);
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = ConsistentHash.mix(positions[i]);
+            }
+            return positions;
+        }
+
+        @Override
+        long levelPosition(long keyHash, int level) {
+            return ConsistentHash.mix(keyHash, level);
+        }
+    };
+
+    /**
+     * @param nodeKey
+     * @param from,
+     *            first replica, inclusive
+     * @param to,
+     *            last replica, exclusive
+     * @param hashingAlgorithm
+     * @return ring positions of the replicas
+     */
+    abstract long[] virtualNodePositions(String nodeKey, int from, int to, HashingAlgorithm hashingAlgorithm);
+
+    /**
+     * @param keyHash,
+     *            hash of the routed key
+     * @param level,
+     *            0 for the children of root
+     * @return position looked up in the ring of that level
+     */
+    abstract long levelPosition(long keyHash, int level);
+}
@@ -0,0 +1,170 @@
+package lex.common.dynamic.routing.tree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+import lex.common.consistent.hashing.HashingAlgorithm;
+
+/**
+ * Moved hash ranges of a topology change grouped by source and target leaf,
+ * with key filters for migration jobs streaming over their rows. Immutable and
+ * thread-safe.
+ */
+public class MigrationPlan {
+    private final TopologyDiff diff;
+    private final Map<String, Map<String, List<MovedRange>>> moves;
+    private final RangeFilter filter;
+    private final HashingAlgorithm algorithm;
+
+    MigrationPlan(TopologyDiff diff, HashingAlgorithm algorithm) {
+        this.diff = diff;
+        this.algorithm = algorithm;
+        this.filter = new RangeFilter(diff.getRanges(), algorithm);
+
+        Map<String, Map<String, List<MovedRange>>> grouped = new TreeMap<>();
+        for (MovedRange range : diff.getRanges()) {
+            grouped.computeIfAbsent(range.getSource(), source -> new TreeMap<>())
+                    .computeIfAbsent(range.getTarget(), target -> new ArrayList<>()).add(range);
+        }
+        for (Map.Entry<String, Map<String, List<MovedRange>>> entry : grouped.entrySet()) {
+            Map<String, List<MovedRange>> targets = entry.getValue();
+            for (Map.Entry<String, List<MovedRange>> target : targets.entrySet()) {
+                target.setValue(Collections.unmodifiableList(target.getValue()));
+            }
+            entry.setValue(Collections.unmodifiableMap(targets));
+        }
+        this.moves = Collections.unmodifiableMap(grouped);
+    }
+
+    public TopologyDiff getDiff() {
+        return diff;
+    }
+
+    public boolean isEmpty() {
+        return diff.isEmpty();
+    }
+
+    /**
+     * @return moved ranges in ascending hash order by source leaf path, then by
+     *         target leaf path; "" stands for no leaf
+     */
+    public Map<String, Map<String, List<MovedRange>>> getMoves() {
+        return moves;
+    }
+
+    /**
+     * @param source
+     * @param target
+     * @return ranges moved from the source to the target leaf, in ascending hash
+     *         order
+     */
+    public List<MovedRange> getRanges(String source, String target) {
+        List<MovedRange> ranges = moves.getOrDefault(source, Collections.emptyMap()).get(target);
+        return ranges == null ? Collections.emptyList() : ranges;
+    }
+
+    /**
+     * @param source
+     * @return share of the hash space of the algorithm moved off the source
+     *         leaf, i.e. of the rows to copy out of it
+     */
+    public double movedFraction(String source) {
+        double fraction = 0;
+        for (List<MovedRange> ranges : moves.getOrDefault(source, Collections.emptyMap()).values()) {
+            for (MovedRange range : ranges) {
+                fraction += range.fraction(diff.getHashBits());
+            }
+        }
+        return fraction;
+    }
+
+    /**
+     * @param key,
+     *            routing key of a row
+     * @return true if the key is routed to another leaf after the change
+     */
+    public boolean isMoved(String key) {
+        return filter.test(key);
+    }
+
+    /**
+     * @param key,
+     *            routing key of a row
+     * @return leaf path the key moved to, "" if it has no leaf any more, or null
+     *         if it did not move
+     */
+    public String targetOf(String key) {
+        MovedRange range = filter.find(algorithm.hashAsLong(key));
+        return range == null ? null : range.getTarget();
+    }
+
+    /**
+     * @return filter accepting the routing keys which moved
+     */
+    public Predicate<String> movedKeys() {
+        return filter;
+    }
+
+    /**
+     * Filter for a job scanning the rows of one leaf; it only searches the
+     * ranges moved off that leaf.
+     *
+     * @param source,
+     *            leaf path before the change
+     * @return filter accepting the routing keys which moved off the source leaf
+     */
+    public Predicate<String> movedKeys(String source) {
+        List<MovedRange> ranges = new ArrayList<>();
+        for (List<MovedRange> moved : moves.getOrDefault(source, Collections.emptyMap()).values()) {
+            ranges.addAll(moved);
+        }
+        ranges.sort((one, other) -> Long.compare(one.getStart(), other.getStart()));
+        return new RangeFilter(ranges, algorithm);
+    }
+
+    /**
+     * Binary search over flat arrays of the range bounds, in ascending order.
+     */
+    private static final class RangeFilter implements Predicate<String> {
+        private final long[] starts;
+        private final long[] ends;
+        private final MovedRange[] ranges;
+        private final HashingAlgorithm algorithm;
+
+        RangeFilter(List<MovedRange> sorted, HashingAlgorithm algorithm) {
+            this.algorithm = algorithm;
+            this.ranges = sorted.toArray(new MovedRange[sorted.size()]);
+            this.starts = new long[ranges.length];
+            this.ends = new long[ranges.length];
+            for (int index = 0; index < ranges.length; index++) {
+                starts[index] = ranges[index].getStart();
+                ends[index] = ranges[index].getEnd();
+            }
+        }
+
+        @Override
+        public boolean test(String key) {
+            return ranges.length != 0 && find(algorithm.hashAsLong(key)) != null;
+        }
+
+        MovedRange find(long hash) {
+            int low = 0;
+            int high = ranges.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (ends[middle] < hash) {
+                    low = middle + 1;
+                } else if (starts[middle] > hash) {
+                    high = middle - 1;
+                } else {
+                    return ranges[middle];
+                }
+            }
+            return null;
+        }
+    }
+}
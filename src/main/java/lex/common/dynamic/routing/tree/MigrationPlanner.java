@@ -0,0 +1,59 @@
+package lex.common.dynamic.routing.tree;
+
+import lex.common.consistent.hashing.HashingAlgorithm;
+
+/**
+ * Plans the data migration of a topology change from the moved hash ranges,
+ * so a migration job copies only the rows whose leaf changed.
+ *
+ * Typical use:
+ *
+ * <pre>
+ * DynamicHashingTree before = tree.copy();
+ * tree.addLeaf("D3-T1-S1");
+ * MigrationPlan plan = MigrationPlanner.plan(before, tree);
+ * rows.filter(row -&gt; plan.isMoved(row.getRoutingKey()))...
+ * </pre>
+ */
+public final class MigrationPlanner {
+
+    private MigrationPlanner() {
+    }
+
+    /**
+     * @param before,
+     *            tree before the change, e.g. a {@link DynamicHashingTree#copy()}
+     * @param after,
+     *            tree after the change
+     * @return the moved ranges between the currently published versions
+     * @throws IllegalArgumentException
+     *             if the trees hash keys differently, or are not diffable, see
+     *             {@link TopologyDiff}
+     */
+    public static MigrationPlan plan(DynamicHashingTree before, DynamicHashingTree after) {
+        if (before.lookupMode() != after.lookupMode()) {
+            throw new IllegalArgumentException(
+                    "Lookup modes differ: " + before.lookupMode() + " and " + after.lookupMode());
+        }
+        if (TopologySnapshot.algorithmId(before.getAlgorithm()) != TopologySnapshot.algorithmId(after.getAlgorithm())) {
+            throw new IllegalArgumentException("Hashing algorithms differ: "
+                    + before.getAlgorithm().getClass().getName() + " and " + after.getAlgorithm().getClass().getName());
+        }
+        return plan(TopologyDiff.between(before.root(), after.root(), after.lookupMode(),
+                after.getAlgorithm().hashBits()), after.getAlgorithm());
+    }
+
+    /**
+     * @param diff,
+     *            e.g. returned by {@link TopologyChangeset#commit()}
+     * @param algorithm,
+     *            hashing algorithm of the tree
+     * @return plan of the diff
+     */
+    public static MigrationPlan plan(TopologyDiff diff, HashingAlgorithm algorithm) {
+        if (diff == null) {
+            throw new IllegalArgumentException("Topology diff is null");
+        }
+        return new MigrationPlan(diff, algorithm);
+    }
+}
@@ -0,0 +1,79 @@
+package lex.common.dynamic.routing.tree;
+
+import lex.common.consistent.hashing.HashingAlgorithm;
+
+/**
+ * Inclusive range of key hashes routed to another leaf after a topology
+ * change.
+ */
+public class MovedRange {
+    private final long start;
+    private final long end;
+    private final String source;
+    private final String target;
+
+    /**
+     * @param start,
+     *            first hash of the range
+     * @param end,
+     *            last hash of the range, inclusive
+     * @param source,
+     *            leaf path before the change, "" if there was no leaf
+     * @param target,
+     *            leaf path after the change, "" if there is no leaf
+     */
+    public MovedRange(long start, long end, String source, String target) {
+        this.start = start;
+        this.end = end;
+        this.source = source;
+        this.target = target;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * @param hash
+     * @return true if the hash lies in the range
+     */
+    public boolean contains(long hash) {
+        return start <= hash && hash <= end;
+    }
+
+    /**
+     * @param hashBits,
+     *            width of the key hashes, see {@link HashingAlgorithm#hashBits()}
+     * @return share of the hash space covered by the range
+     */
+    public double fraction(int hashBits) {
+        long low = start;
+        long high = end;
+        if (hashBits < 64) {
+            low = Math.max(low, 0);
+            high = Math.min(high, (1L << hashBits) - 1);
+            if (low > high) {
+                return 0;
+            }
+        }
+        long width = high - low;
+        return ((width >>> 1) * 2.0 + (width & 1) + 1) / Math.pow(2, hashBits);
+    }
+
+    @Override
+    public String toString() {
+        return "[" + start + ", " + end + "] " + source + " -> " + target;
+    }
+}
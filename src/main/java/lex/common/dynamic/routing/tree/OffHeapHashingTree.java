@@ -0,0 +1,141 @@
+package lex.common.dynamic.routing.tree;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+
+import lex.common.consistent.hashing.HashingAlgorithm;
+import lex.common.constant.TreeConstant;
+
+/**
+ * Hash tree kept off heap in the flat layout of {@link TopologySnapshot}: a
+ * node table indexed by int and the ring arrays, in a direct buffer. The heap
+ * holds the facade and the decoded paths of the leaves hit so far, so old-gen
+ * size and GC scanning do not grow with the rings.
+ *
+ * Lookups read the published buffer without locking. A topology change decodes
+ * the buffer into a scratch {@link DynamicHashingTree}, applies the change and
+ * publishes a freshly encoded buffer, so changes cost time linear in the tree
+ * and batches should go through {@link #addLeaves(Collection)}. Released
+ * buffers are freed when collected. Only ring locators are supported.
+ */
+public class OffHeapHashingTree implements ChangableLeaf {
+    private final HashingAlgorithm algorithm;
+    private final String pathSeparator;
+    private final int numberOfReplications;
+    private final LookupMode lookupMode;
+    private volatile FlatTopology topology;
+
+    public OffHeapHashingTree(HashingAlgorithm algorithm) {
+        this(algorithm, TreeConstant.DEFAULT_PATH_SEPARATOR, 13, LookupMode.PER_LEVEL_HASH);
+    }
+
+    public OffHeapHashingTree(HashingAlgorithm algorithm, int numberOfReplications) {
+        this(algorithm, TreeConstant.DEFAULT_PATH_SEPARATOR, numberOfReplications, LookupMode.PER_LEVEL_HASH);
+    }
+
+    public OffHeapHashingTree(HashingAlgorithm algorithm, String pathSeparator, int numberOfReplications,
+            LookupMode lookupMode) {
+        this.algorithm = algorithm;
+        this.pathSeparator = pathSeparator;
+        this.numberOfReplications = numberOfReplications;
+        this.lookupMode = lookupMode;
+        this.topology = encode(scratch());
+    }
+
+    /**
+     * Starts from an existing topology, e.g. a memory-mapped snapshot, which is
+     * served as it is until the first change.
+     * 
+     * @param topology
+     * @param algorithm,
+     *            the hashing algorithm of the topology
+     * @param pathSeparator
+     */
+    public OffHeapHashingTree(FlatTopology topology, HashingAlgorithm algorithm, String pathSeparator) {
+        this.algorithm = algorithm;
+        this.pathSeparator = pathSeparator;
+        this.numberOfReplications = topology.getNumberOfReplications();
+        this.lookupMode = topology.getLookupMode();
+        this.topology = topology;
+    }
+
+    /**
+     * Copies a heap tree off heap.
+     * 
+     * @param tree
+     * @param pathSeparator
+     * @return off-heap tree routing like tree
+     */
+    public static OffHeapHashingTree of(DynamicHashingTree tree, String pathSeparator) {
+        return new OffHeapHashingTree(new FlatTopology(TopologySnapshot.encode(tree, ByteBuffer::allocateDirect),
+                tree.getAlgorithm()), tree.getAlgorithm(), pathSeparator);
+    }
+
+    @Override
+    public void addLeaf(String path) {
+        addLeaves(Collections.singleton(path));
+    }
+
+    /**
+     * Adds many leaves with a single re-encoding.
+     * 
+     * @param paths
+     */
+    public synchronized void addLeaves(Collection<String> paths) {
+        DynamicHashingTree scratch = decode();
+        scratch.addLeaves(paths);
+        topology = encode(scratch);
+    }
+
+    @Override
+    public void removeLeaf(String path) {
+        removeLeaves(Collections.singleton(path));
+    }
+
+    /**
+     * Removes many leaves with a single re-encoding.
+     * 
+     * @param paths
+     */
+    public synchronized void removeLeaves(Collection<String> paths) {
+        DynamicHashingTree scratch = decode();
+        for (String path : paths) {
+            scratch.removeLeaf(path);
+        }
+        topology = encode(scratch);
+    }
+
+    @Override
+    public String findLeaf(String key) {
+        return topology.findLeaf(key);
+    }
+
+    /**
+     * @return the currently published topology
+     */
+    public FlatTopology getTopology() {
+        return topology;
+    }
+
+    /**
+     * @return bytes of the off-heap buffer
+     */
+    public int offHeapBytes() {
+        return topology.capacity();
+    }
+
+    private DynamicHashingTree scratch() {
+        return new DynamicHashingTree(algorithm, pathSeparator, numberOfReplications, lookupMode);
+    }
+
+    private DynamicHashingTree decode() {
+        DynamicHashingTree scratch = scratch();
+        TopologySnapshot.restore(topology, scratch);
+        return scratch;
+    }
+
+    private FlatTopology encode(DynamicHashingTree tree) {
+        return new FlatTopology(TopologySnapshot.encode(tree, ByteBuffer::allocateDirect), algorithm);
+    }
+}
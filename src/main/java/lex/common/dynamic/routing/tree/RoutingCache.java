@@ -0,0 +1,136 @@
+package lex.common.dynamic.routing.tree;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded key to leaf cache in front of the tree walk. Entries are tagged with
+ * the topology version they were routed on, so bumping the version invalidates
+ * the whole cache in O(1).
+ *
+ * The cache is a set-associative table of immutable entries: a key maps to a
+ * set of {@link #WAYS} slots, and a miss replaces a slot of its set picked by
+ * CLOCK, i.e. the hand skips and clears entries referenced since it last
+ * passed. Reads never lock; concurrent writers may overwrite each other, which
+ * costs a miss at worst.
+ */
+public class RoutingCache {
+
+    /**
+     * Slots per set.
+     */
+    static final int WAYS = 4;
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int[] hands;
+    private final int setMask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity,
+     *            number of cached keys, rounded up to a power of two
+     */
+    public RoutingCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        int needed = (capacity + WAYS - 1) / WAYS;
+        int sets = needed <= 1 ? 1 : Integer.highestOneBit(needed - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(sets * WAYS);
+        this.hands = new int[sets];
+        this.setMask = sets - 1;
+    }
+
+    /**
+     * @param key
+     * @param version,
+     *            current topology version
+     * @return cached leaf, or null on a miss
+     */
+    public TreeNode get(String key, long version) {
+        int first = set(key) * WAYS;
+        for (int way = 0; way < WAYS; way++) {
+            Entry entry = slots.get(first + way);
+            if (entry != null && entry.version == version && entry.key.equals(key)) {
+                if (!entry.referenced) {
+                    entry.referenced = true;
+                }
+                hits.increment();
+                return entry.leaf;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * @param key
+     * @param leaf
+     * @param version,
+     *            topology version the leaf was found on
+     */
+    public void put(String key, TreeNode leaf, long version) {
+        int set = set(key);
+        int first = set * WAYS;
+        int hand = hands[set];
+        for (int step = 0; step < 2 * WAYS; step++) {
+            int slot = first + ((hand + step) & (WAYS - 1));
+            Entry entry = slots.get(slot);
+            if (entry == null || entry.version != version || entry.key.equals(key) || !entry.referenced) {
+                slots.set(slot, new Entry(key, leaf, version));
+                hands[set] = (hand + step + 1) & (WAYS - 1);
+                return;
+            }
+            entry.referenced = false;
+        }
+    }
+
+    /**
+     * Drops every entry.
+     */
+    public void clear() {
+        for (int slot = 0; slot < slots.length(); slot++) {
+            slots.set(slot, null);
+        }
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return hits divided by lookups, 0 before the first lookup
+     */
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    private int set(String key) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & setMask;
+    }
+
+    private static final class Entry {
+        final String key;
+        final TreeNode leaf;
+        final long version;
+        volatile boolean referenced;
+
+        Entry(String key, TreeNode leaf, long version) {
+            this.key = key;
+            this.leaf = leaf;
+            this.version = version;
+        }
+    }
+}
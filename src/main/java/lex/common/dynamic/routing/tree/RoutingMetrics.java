@@ -0,0 +1,215 @@
+package lex.common.dynamic.routing.tree;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Routing counters cheap enough to stay on at full load: striped hit counters
+ * per leaf and per master/slave choice, a lookup latency histogram, and the
+ * number and duration of topology changes. Read them with {@link #snapshot()}
+ * or over JMX after {@link #register(String)}.
+ *
+ * Counters are keyed by leaf path and kept for removed leaves until
+ * {@link #reset()}.
+ */
+public class RoutingMetrics implements RoutingMetricsMXBean {
+
+    /**
+     * Domain of the registered MBeans.
+     */
+    public static final String JMX_DOMAIN = "lex.common.dynamic.routing";
+
+    private final Map<String, LeafCounters> leaves = new ConcurrentHashMap<>();
+    private final Function<String, LeafCounters> newCounters = path -> new LeafCounters();
+    private final LatencyHistogram lookupLatency = new LatencyHistogram();
+    private final LatencyHistogram topologyChangeLatency = new LatencyHistogram();
+    private volatile ObjectName objectName = null;
+
+    /**
+     * Counts a lookup.
+     *
+     * @param leaf,
+     *            null if the tree was empty
+     * @param nanos,
+     *            duration of the lookup
+     */
+    public void recordLookup(TreeNode leaf, long nanos) {
+        lookupLatency.record(nanos);
+        if (leaf != null) {
+            counters(leaf).hits.increment();
+        }
+    }
+
+    /**
+     * Counts a choice between the master and the slave of a leaf.
+     *
+     * @param leaf
+     * @param master
+     */
+    public void recordChoice(TreeNode leaf, boolean master) {
+        LeafCounters counters = counters(leaf);
+        if (master) {
+            counters.masters.increment();
+        } else {
+            counters.slaves.increment();
+        }
+    }
+
+    /**
+     * Counts a published topology change.
+     *
+     * @param nanos,
+     *            from the start of the change to its publication
+     */
+    public void recordTopologyChange(long nanos) {
+        topologyChangeLatency.record(nanos);
+    }
+
+    private LeafCounters counters(TreeNode leaf) {
+        LeafCounters counters = leaves.get(leaf.path);
+        return counters != null ? counters : leaves.computeIfAbsent(leaf.path, newCounters);
+    }
+
+    /**
+     * @return a copy of every counter
+     */
+    public RoutingMetricsSnapshot snapshot() {
+        Map<String, Long> hits = new TreeMap<>();
+        Map<String, Long> masters = new TreeMap<>();
+        Map<String, Long> slaves = new TreeMap<>();
+        for (Map.Entry<String, LeafCounters> entry : leaves.entrySet()) {
+            hits.put(entry.getKey(), entry.getValue().hits.sum());
+            masters.put(entry.getKey(), entry.getValue().masters.sum());
+            slaves.put(entry.getKey(), entry.getValue().slaves.sum());
+        }
+        return new RoutingMetricsSnapshot(hits, masters, slaves, lookupLatency.snapshot(),
+                topologyChangeLatency.snapshot());
+    }
+
+    /**
+     * Clears every counter. Values recorded concurrently may survive.
+     */
+    @Override
+    public void reset() {
+        leaves.clear();
+        lookupLatency.reset();
+        topologyChangeLatency.reset();
+    }
+
+    /**
+     * Registers the metrics in the platform MBean server as
+     * {@code lex.common.dynamic.routing:type=RoutingMetrics,name=<name>}.
+     *
+     * @param name
+     * @return the object name
+     */
+    public synchronized ObjectName register(String name) {
+        if (objectName != null) {
+            throw new IllegalStateException("Already registered as " + objectName);
+        }
+        try {
+            ObjectName next = new ObjectName(JMX_DOMAIN + ":type=RoutingMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, next);
+            objectName = next;
+            return next;
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register routing metrics " + name, e);
+        }
+    }
+
+    /**
+     * Unregisters the MBean, if registered.
+     */
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot unregister routing metrics " + objectName, e);
+        } finally {
+            objectName = null;
+        }
+    }
+
+    @Override
+    public long getLookupCount() {
+        return lookupLatency.snapshot().getCount();
+    }
+
+    @Override
+    public double getLookupMeanNanos() {
+        return lookupLatency.snapshot().getMean();
+    }
+
+    @Override
+    public long getLookupP50Nanos() {
+        return lookupLatency.snapshot().getValueAt(0.5);
+    }
+
+    @Override
+    public long getLookupP99Nanos() {
+        return lookupLatency.snapshot().getValueAt(0.99);
+    }
+
+    @Override
+    public long getLookupP999Nanos() {
+        return lookupLatency.snapshot().getValueAt(0.999);
+    }
+
+    @Override
+    public long getLookupMaxNanos() {
+        return lookupLatency.snapshot().getMax();
+    }
+
+    @Override
+    public long getTopologyChanges() {
+        return topologyChangeLatency.snapshot().getCount();
+    }
+
+    @Override
+    public double getTopologyChangeMeanNanos() {
+        return topologyChangeLatency.snapshot().getMean();
+    }
+
+    @Override
+    public long getTopologyChangeMaxNanos() {
+        return topologyChangeLatency.snapshot().getMax();
+    }
+
+    @Override
+    public Map<String, Long> getLeafHits() {
+        return snapshot().getLeafHits();
+    }
+
+    @Override
+    public Map<String, Long> getMasterHits() {
+        return snapshot().getMasterHits();
+    }
+
+    @Override
+    public Map<String, Long> getSlaveHits() {
+        return snapshot().getSlaveHits();
+    }
+
+    /**
+     * Striped counters of one leaf.
+     */
+    private static final class LeafCounters {
+        final LongAdder hits = new LongAdder();
+        final LongAdder masters = new LongAdder();
+        final LongAdder slaves = new LongAdder();
+    }
+}
@@ -0,0 +1,36 @@
+package lex.common.dynamic.routing.tree;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link RoutingMetrics}. Durations are in nanoseconds, hit maps
+ * are keyed by leaf path.
+ */
+public interface RoutingMetricsMXBean {
+
+    long getLookupCount();
+
+    double getLookupMeanNanos();
+
+    long getLookupP50Nanos();
+
+    long getLookupP99Nanos();
+
+    long getLookupP999Nanos();
+
+    long getLookupMaxNanos();
+
+    long getTopologyChanges();
+
+    double getTopologyChangeMeanNanos();
+
+    long getTopologyChangeMaxNanos();
+
+    Map<String, Long> getLeafHits();
+
+    Map<String, Long> getMasterHits();
+
+    Map<String, Long> getSlaveHits();
+
+    void reset();
+}
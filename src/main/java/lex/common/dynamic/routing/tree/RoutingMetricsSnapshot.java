@@ -0,0 +1,67 @@
+package lex.common.dynamic.routing.tree;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Point-in-time copy of {@link RoutingMetrics}.
+ */
+public class RoutingMetricsSnapshot {
+    private final Map<String, Long> leafHits;
+    private final Map<String, Long> masterHits;
+    private final Map<String, Long> slaveHits;
+    private final LatencyHistogram.Snapshot lookupLatency;
+    private final LatencyHistogram.Snapshot topologyChangeLatency;
+
+    RoutingMetricsSnapshot(Map<String, Long> leafHits, Map<String, Long> masterHits, Map<String, Long> slaveHits,
+            LatencyHistogram.Snapshot lookupLatency, LatencyHistogram.Snapshot topologyChangeLatency) {
+        this.leafHits = Collections.unmodifiableMap(leafHits);
+        this.masterHits = Collections.unmodifiableMap(masterHits);
+        this.slaveHits = Collections.unmodifiableMap(slaveHits);
+        this.lookupLatency = lookupLatency;
+        this.topologyChangeLatency = topologyChangeLatency;
+    }
+
+    /**
+     * @return lookups hitting every leaf, by leaf path
+     */
+    public Map<String, Long> getLeafHits() {
+        return leafHits;
+    }
+
+    /**
+     * @return master data source choices, by leaf path
+     */
+    public Map<String, Long> getMasterHits() {
+        return masterHits;
+    }
+
+    /**
+     * @return slave data source choices, by leaf path
+     */
+    public Map<String, Long> getSlaveHits() {
+        return slaveHits;
+    }
+
+    /**
+     * @return durations of the lookups in nanoseconds
+     */
+    public LatencyHistogram.Snapshot getLookupLatency() {
+        return lookupLatency;
+    }
+
+    /**
+     * @return durations of the topology changes in nanoseconds, from the start
+     *         of a change to its publication
+     */
+    public LatencyHistogram.Snapshot getTopologyChangeLatency() {
+        return topologyChangeLatency;
+    }
+
+    /**
+     * @return number of published topology changes
+     */
+    public long getTopologyChanges() {
+        return topologyChangeLatency.getCount();
+    }
+}
@@ -0,0 +1,131 @@
+package lex.common.dynamic.routing.tree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Staged leaf additions and removals of a {@link DynamicHashingTree}, applied
+ * in staging order and published as a single topology change by
+ * {@link #commit()}. Nothing is visible to readers before the commit.
+ *
+ * Not thread-safe, a changeset is meant to be staged by one thread.
+ */
+public class TopologyChangeset {
+    private final DynamicHashingTree tree;
+    private final List<Change> changes = new ArrayList<>();
+
+    TopologyChangeset(DynamicHashingTree tree) {
+        this.tree = tree;
+    }
+
+    /**
+     * Stages the full path of certain leaf.
+     * 
+     * @param path
+     * @return this changeset
+     */
+    public TopologyChangeset addLeaf(String path) {
+        changes.add(new Change(path, Change.Kind.ADD, 1.0));
+        return this;
+    }
+
+    /**
+     * Stages the full path of certain leaf with a weight, see
+     * {@link #setWeight(String, double)}.
+     * 
+     * @param path
+     * @param weight
+     * @return this changeset
+     */
+    public TopologyChangeset addLeaf(String path, double weight) {
+        changes.add(new Change(path, Change.Kind.ADD, checkWeight(weight)));
+        return this;
+    }
+
+    /**
+     * Stages the removal of the full path of certain leaf.
+     * 
+     * @param path
+     * @return this changeset
+     */
+    public TopologyChangeset removeLeaf(String path) {
+        changes.add(new Change(path, Change.Kind.REMOVE, 1.0));
+        return this;
+    }
+
+    /**
+     * Stages a new weight of an existing node. A node of weight w gets round(w
+     * * numberOfReplications) virtual nodes in the ring of its parent, only
+     * the difference is added or removed. Needs {@link HashingEngine#RING} on
+     * the level of the node.
+     * 
+     * @param path,
+     *            of a leaf or an inner node
+     * @param weight,
+     *            1 by default
+     * @return this changeset
+     */
+    public TopologyChangeset setWeight(String path, double weight) {
+        changes.add(new Change(path, Change.Kind.WEIGHT, checkWeight(weight)));
+        return this;
+    }
+
+    private static double checkWeight(double weight) {
+        if (!(weight > 0) || Double.isInfinite(weight)) {
+            throw new IllegalArgumentException("Weight must be positive: " + weight);
+        }
+        return weight;
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /**
+     * Applies and publishes every staged change at once, then clears the
+     * changeset.
+     * 
+     * @return hash ranges whose leaf changed, see
+     *         {@link TopologyDiff#between(TreeNode, TreeNode, LookupMode, int)},
+     *         or null if the tree does not place keys by ring ranges
+     */
+    public TopologyDiff commit() {
+        TreeNode[] roots = tree.apply(this);
+        changes.clear();
+        if (!TopologyDiff.isSupported(roots[0], tree.lookupMode())
+                || !TopologyDiff.isSupported(roots[1], tree.lookupMode())) {
+            return null;
+        }
+        return TopologyDiff.between(roots[0], roots[1], tree.lookupMode(), tree.getAlgorithm().hashBits());
+    }
+
+    /**
+     * Same as {@link #commit()} without computing the diff, e.g. for the
+     * changes building a tree no data is migrated for.
+     */
+    public void publish() {
+        tree.apply(this);
+        changes.clear();
+    }
+
+    List<Change> changes() {
+        return Collections.unmodifiableList(changes);
+    }
+
+    static final class Change {
+        enum Kind {
+            ADD, REMOVE, WEIGHT
+        }
+
+        final String path;
+        final Kind kind;
+        final double weight;
+
+        Change(String path, Kind kind, double weight) {
+            this.path = path;
+            this.kind = kind;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package lex.common.dynamic.routing.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import lex.common.consistent.hashing.HashRing;
+import lex.common.consistent.hashing.HashingAlgorithm;
+
+/**
+ * Hash ranges routed to another leaf between two versions of a tree.
+ *
+ * With {@link LookupMode#PER_LEVEL_HASH} and ring locators the leaf of a key
+ * only depends on the ring range its hash falls into on every level, so the
+ * hash space splits into intervals, each routed to one leaf; the diff compares
+ * the intervals of both versions.
+ */
+public class TopologyDiff {
+    private final List<MovedRange> ranges;
+    private final int hashBits;
+
+    TopologyDiff(List<MovedRange> ranges, int hashBits) {
+        this.ranges = Collections.unmodifiableList(ranges);
+        this.hashBits = hashBits;
+    }
+
+    /**
+     * @param root
+     * @param lookupMode
+     * @return true if the tree is diffable, i.e. per-level hashing with ring
+     *         locators only
+     */
+    static boolean isSupported(TreeNode root, LookupMode lookupMode) {
+        return lookupMode == LookupMode.PER_LEVEL_HASH && ringsOnly(root);
+    }
+
+    private static boolean ringsOnly(TreeNode node) {
+        if (node.locator != null && !(node.locator instanceof HashRing)) {
+            return false;
+        }
+        if (node.children != null) {
+            for (TreeNode child : node.children) {
+                if (!ringsOnly(child)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param before,
+     *            root of the older version
+     * @param after,
+     *            root of the newer version
+     * @param lookupMode
+     * @param hashBits,
+     *            width of the key hashes, see {@link HashingAlgorithm#hashBits()}
+     * @return moved ranges in ascending hash order, adjacent ranges with the
+     *         same source and target merged
+     * @throws IllegalArgumentException
+     *             if either version is not diffable
+     */
+    static TopologyDiff between(TreeNode before, TreeNode after, LookupMode lookupMode, int hashBits) {
+        if (!isSupported(before, lookupMode) || !isSupported(after, lookupMode)) {
+            throw new IllegalArgumentException("Only per-level hashing with ring locators can be diffed");
+        }
+
+        Segments old = new Segments();
+        old.collect(before, before, Long.MIN_VALUE, Long.MAX_VALUE);
+        Segments current = new Segments();
+        current.collect(after, after, Long.MIN_VALUE, Long.MAX_VALUE);
+
+        List<MovedRange> ranges = new ArrayList<>();
+        long start = Long.MIN_VALUE;
+        int i = 0;
+        int j = 0;
+        while (true) {
+            long end = Math.min(old.ends.get(i), current.ends.get(j));
+            String source = old.paths.get(i);
+            String target = current.paths.get(j);
+            if (!source.equals(target)) {
+                MovedRange last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+                if (last != null && last.getEnd() == start - 1 && last.getSource().equals(source)
+                        && last.getTarget().equals(target)) {
+                    ranges.set(ranges.size() - 1, new MovedRange(last.getStart(), end, source, target));
+                } else {
+                    ranges.add(new MovedRange(start, end, source, target));
+                }
+            }
+            if (end == Long.MAX_VALUE) {
+                break;
+            }
+            if (old.ends.get(i) == end) {
+                i++;
+            }
+            if (current.ends.get(j) == end) {
+                j++;
+            }
+            start = end + 1;
+        }
+        return new TopologyDiff(ranges, hashBits);
+    }
+
+    /**
+     * @return moved ranges in ascending hash order
+     */
+    public List<MovedRange> getRanges() {
+        return ranges;
+    }
+
+    public boolean isEmpty() {
+        return ranges.isEmpty();
+    }
+
+    /**
+     * @return width of the key hashes the ranges are measured against
+     */
+    public int getHashBits() {
+        return hashBits;
+    }
+
+    /**
+     * @return share of the hash space of the algorithm routed to another leaf
+     */
+    public double movedFraction() {
+        double fraction = 0;
+        for (MovedRange range : ranges) {
+            fraction += range.fraction(hashBits);
+        }
+        return fraction;
+    }
+
+    /**
+     * @param hash
+     * @return the moved range holding the hash, or null if it did not move
+     */
+    public MovedRange find(long hash) {
+        int low = 0;
+        int high = ranges.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            MovedRange range = ranges.get(middle);
+            if (range.getEnd() < hash) {
+                low = middle + 1;
+            } else if (range.getStart() > hash) {
+                high = middle - 1;
+            } else {
+                return range;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Leaf intervals of one version, consecutive from Long.MIN_VALUE, each given
+     * by its inclusive end.
+     */
+    private static final class Segments {
+        final LongList ends = new LongList();
+        final List<String> paths = new ArrayList<>();
+        private final Map<HashRing<TreeNode>, long[]> positionsOfRings = new IdentityHashMap<>();
+
+        @SuppressWarnings("unchecked")
+        void collect(TreeNode node, TreeNode root, long low, long high) {
+            HashRing<TreeNode> ring = (HashRing<TreeNode>) node.locator;
+            if (ring == null || ring.isEmpty()) {
+                ends.add(high);
+                paths.add(node == root ? "" : node.path);
+                return;
+            }
+
+            long[] positions = positionsOfRings.computeIfAbsent(ring, HashRing::positions);
+            int index = firstAtOrAfter(positions, low);
+            long start = low;
+            while (true) {
+                boolean wrapped = index == positions.length;
+                long end = wrapped ? high : Math.min(positions[index], high);
+                collect(ring.ownerAt(wrapped ? 0 : index), root, start, end);
+                if (end == high) {
+                    return;
+                }
+                start = end + 1;
+                index++;
+            }
+        }
+
+        private static int firstAtOrAfter(long[] positions, long hash) {
+            int low = 0;
+            int high = positions.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (positions[middle] < hash) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Growable long array.
+     */
+    private static final class LongList {
+        long[] values = new long[64];
+        int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long get(int index) {
+            return values[index];
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package lex.common.dynamic.routing.tree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import lex.common.consistent.hashing.HashRing;
+import lex.common.consistent.hashing.HashingAlgorithm;
+import lex.common.consistent.hashing.NodeLocator;
+
+/**
+ * Versioned binary snapshot of a hash tree with ring locators, including the
+ * ring arrays, so that a tree is loaded without hashing a single virtual node.
+ *
+ * Layout, big-endian:
+ * <ul>
+ * <li>header: magic, format version, lookup mode ordinal, number of
+ * replications, node count, position count, string bytes, algorithm id; 8
+ * ints</li>
+ * <li>node table, breadth first with root at 0 and children contiguous: key
+ * offset, parent, first child, child count, ring start, ring length; 6 ints
+ * per node</li>
+ * <li>ring positions, sorted per node; a long each</li>
+ * <li>ring owners, the node index owning each position; an int each</li>
+ * <li>keys, an unsigned short length and UTF-8 bytes each</li>
+ * </ul>
+ */
+public final class TopologySnapshot {
+    static final int MAGIC = 0x43485453;
+    static final int FORMAT_VERSION = 2;
+    static final int HEADER_BYTES = 32;
+    static final int NODE_BYTES = 24;
+
+    private TopologySnapshot() {
+    }
+
+    /**
+     * Encodes the currently published version of the tree.
+     * 
+     * @param tree
+     * @param allocator,
+     *            allocates the buffer of the given size, e.g.
+     *            {@link ByteBuffer#allocateDirect(int)}
+     * @return buffer positioned at 0
+     * @throws IllegalArgumentException
+     *             if a level of the tree does not use a ring
+     */
+    public static ByteBuffer encode(DynamicHashingTree tree, IntFunction<ByteBuffer> allocator) {
+        // Parent links may point to older versions, the walk keeps its own.
+        List<TreeNode> nodes = new ArrayList<>();
+        List<Integer> parents = new ArrayList<>();
+        Map<TreeNode, Integer> indices = new IdentityHashMap<>();
+        TreeNode root = tree.root();
+        nodes.add(root);
+        parents.add(-1);
+        indices.put(root, 0);
+        for (int index = 0; index < nodes.size(); index++) {
+            List<TreeNode> children = nodes.get(index).children;
+            if (children != null) {
+                for (TreeNode child : children) {
+                    indices.put(child, nodes.size());
+                    nodes.add(child);
+                    parents.add(index);
+                }
+            }
+        }
+
+        int positionCount = 0;
+        byte[][] keys = new byte[nodes.size()][];
+        int stringBytes = 0;
+        for (int index = 0; index < nodes.size(); index++) {
+            TreeNode node = nodes.get(index);
+            positionCount += ring(node).size();
+            keys[index] = node.key.getBytes(StandardCharsets.UTF_8);
+            if (keys[index].length > 0xFFFF) {
+                throw new IllegalArgumentException("Node key too long: " + node.key);
+            }
+            stringBytes += 2 + keys[index].length;
+        }
+
+        int positionsOffset = HEADER_BYTES + nodes.size() * NODE_BYTES;
+        int ownersOffset = positionsOffset + positionCount * 8;
+        int stringsOffset = ownersOffset + positionCount * 4;
+        ByteBuffer buffer = allocator.apply(stringsOffset + stringBytes);
+        buffer.putInt(0, MAGIC).putInt(4, FORMAT_VERSION).putInt(8, tree.lookupMode().ordinal())
+                .putInt(12, tree.numberOfReplications()).putInt(16, nodes.size()).putInt(20, positionCount)
+                .putInt(24, stringBytes).putInt(28, algorithmId(tree.getAlgorithm()));
+
+        int ringStart = 0;
+        int keyOffset = 0;
+        int nextChild = 1;
+        for (int index = 0; index < nodes.size(); index++) {
+            TreeNode node = nodes.get(index);
+            HashRing<TreeNode> ring = ring(node);
+            long[] positions = ring.positions();
+            for (int position = 0; position < positions.length; position++) {
+                buffer.putLong(positionsOffset + (ringStart + position) * 8, positions[position]);
+                buffer.putInt(ownersOffset + (ringStart + position) * 4, indices.get(ring.ownerAt(position)));
+            }
+
+            int childCount = node.children == null ? 0 : node.children.size();
+            int offset = HEADER_BYTES + index * NODE_BYTES;
+            buffer.putInt(offset, keyOffset).putInt(offset + 4, parents.get(index))
+                    .putInt(offset + 8, childCount == 0 ? -1 : nextChild).putInt(offset + 12, childCount)
+                    .putInt(offset + 16, ringStart).putInt(offset + 20, positions.length);
+
+            buffer.putShort(stringsOffset + keyOffset, (short) keys[index].length);
+            for (int at = 0; at < keys[index].length; at++) {
+                buffer.put(stringsOffset + keyOffset + 2 + at, keys[index][at]);
+            }
+
+            nextChild += childCount;
+            ringStart += positions.length;
+            keyOffset += 2 + keys[index].length;
+        }
+        return buffer;
+    }
+
+    /**
+     * Writes the snapshot to a temporary file, then moves it over file, so that
+     * readers never map a half-written snapshot.
+     * 
+     * @param tree
+     * @param file
+     * @throws IOException
+     */
+    public static void write(DynamicHashingTree tree, Path file) throws IOException {
+        ByteBuffer buffer = encode(tree, ByteBuffer::allocate);
+        Path directory = file.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Memory-maps a snapshot read-only. The mapping stays valid after this
+     * method returns and is released with the buffer.
+     * 
+     * @param file
+     * @param algorithm,
+     *            the hashing algorithm of the tree the snapshot was taken from
+     * @return topology reading the mapped buffer
+     * @throws IOException
+     * @throws IllegalArgumentException
+     *             if the snapshot was taken with another hashing algorithm
+     */
+    public static FlatTopology map(Path file, HashingAlgorithm algorithm) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new FlatTopology(buffer, algorithm);
+        }
+    }
+
+    /**
+     * Rebuilds the tree from a snapshot, replacing its current content. Rings
+     * are restored from the snapshot arrays, nothing is hashed.
+     * 
+     * @param topology
+     * @param tree,
+     *            using the lookup mode and number of replications of the
+     *            snapshot, with ring locators
+     * @throws IllegalArgumentException
+     *             if the tree does not match the snapshot
+     */
+    @SuppressWarnings("unchecked")
+    public static void restore(FlatTopology topology, DynamicHashingTree tree) {
+        if (topology.getLookupMode() != tree.lookupMode()
+                || topology.getNumberOfReplications() != tree.numberOfReplications()) {
+            throw new IllegalArgumentException("Snapshot was taken with " + topology.getLookupMode() + " and "
+                    + topology.getNumberOfReplications() + " replications");
+        }
+        if (topology.getAlgorithmId() != algorithmId(tree.getAlgorithm())) {
+            throw new IllegalArgumentException("Snapshot was taken with another hashing algorithm");
+        }
+
+        int nodeCount = topology.nodeCount();
+        TreeNode[] nodes = new TreeNode[nodeCount];
+        int[] levels = new int[nodeCount];
+        nodes[0] = new TreeNode(topology.key(0));
+        for (int index = 1; index < nodeCount; index++) {
+            int parent = topology.parent(index);
+            nodes[index] = new TreeNode(topology.key(index), nodes[parent]);
+            levels[index] = levels[parent] + 1;
+            if (nodes[parent].children == null) {
+                nodes[parent].children = new ArrayList<>(topology.childCount(parent));
+            }
+            nodes[parent].children.add(nodes[index]);
+        }
+
+        for (int index = 0; index < nodeCount; index++) {
+            int childCount = topology.childCount(index);
+            if (childCount == 0) {
+                continue;
+            }
+
+            NodeLocator<TreeNode> locator = tree.newLocator(levels[index]);
+            if (!(locator instanceof HashRing)) {
+                throw new IllegalArgumentException("Level " + levels[index] + " does not use a ring");
+            }
+            int firstChild = topology.firstChild(index);
+            int ringStart = topology.ringStart(index);
+            long[] positions = new long[topology.ringLength(index)];
+            int[] owners = new int[positions.length];
+            for (int position = 0; position < positions.length; position++) {
+                positions[position] = topology.position(ringStart + position);
+                owners[position] = topology.owner(ringStart + position) - firstChild;
+            }
+            ((HashRing<TreeNode>) locator).restore(Arrays.asList(nodes).subList(firstChild, firstChild + childCount),
+                    positions, owners);
+            nodes[index].locator = locator;
+        }
+
+        tree.restore(nodes[0]);
+    }
+
+    /**
+     * Fingerprints the algorithm by the hash of a fixed probe, so that any
+     * algorithm placing keys differently, custom ones included, gets another
+     * id.
+     * 
+     * @param algorithm
+     * @return id stored in the snapshot header
+     */
+    static int algorithmId(HashingAlgorithm algorithm) {
+        long hash = algorithm.hashAsLong("lex.common.dynamic.routing.tree.TopologySnapshot");
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static HashRing<TreeNode> ring(TreeNode node) {
+        if (node.locator == null) {
+            return new HashRing<>();
+        }
+        if (!(node.locator instanceof HashRing)) {
+            throw new IllegalArgumentException("Node " + node.path + " does not use a ring");
+        }
+        return (HashRing<TreeNode>) node.locator;
+    }
+}
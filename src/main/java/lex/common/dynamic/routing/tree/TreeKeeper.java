@@ -3,10 +3,13 @@ package lex.common.dynamic.routing.tree;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.TreeMap;
+import java.util.Map;
+import java.util.Set;
 
-import lex.common.consistent.hashing.ConsistentHash;
+import lex.common.consistent.hashing.BoundedLoadTracker;
 import lex.common.consistent.hashing.HashingAlgorithm;
 import lex.common.constant.TreeConstant;
 
@@ -27,29 +30,29 @@ public final class TreeKeeper {
         }
     }
 
-    private static void makeRingIfNecessary(TreeNode treeNode) {
-        if (treeNode.hashRing == null) {
-            treeNode.hashRing = Collections.synchronizedSortedMap(new TreeMap<>());
+    private static void makeLocatorIfNecessary(TreeNode treeNode, int level, LocatorFactory locatorFactory) {
+        if (treeNode.locator == null) {
+            treeNode.locator = locatorFactory.newLocator(level);
         }
     }
 
     /**
-     * Fills the node with its key, children and hash ring.
+     * Fills the node with its key, children and locator.
      * 
      * @param treeNode
      * @param currentKey
-     * @param numberOfReplications
-     * @param hashingAlgorithm, default md5
+     * @param level,
+     *            level of the new node, 0 for the children of root
+     * @param locatorFactory
      * @return {@code}TreeNode
      */
-    private static TreeNode fillTheNode(TreeNode treeNode, String currentKey, int numberOfReplications,
-            HashingAlgorithm hashingAlgorithm) {
+    private static TreeNode fillTheNode(TreeNode treeNode, String currentKey, int level,
+            LocatorFactory locatorFactory) {
         makeChildrenIfNecessary(treeNode);
-        makeRingIfNecessary(treeNode);
-        TreeNode node = new TreeNode(currentKey);
-        node.parent = treeNode;
+        makeLocatorIfNecessary(treeNode, level, locatorFactory);
+        TreeNode node = new TreeNode(currentKey, treeNode);
         treeNode.children.add(node);
-        ConsistentHash.addNodeIntoHashRing(currentKey, treeNode.hashRing, numberOfReplications, hashingAlgorithm);
+        treeNode.locator.add(currentKey, node);
         return node;
     }
 
@@ -76,6 +79,69 @@ public final class TreeKeeper {
         return null;
     }
 
+    /**
+     * Copies root and every existing node along the keys, leaving the rest of
+     * the tree shared. The returned root can be mutated along that path and
+     * published without touching the tree readers are walking.
+     * 
+     * @param root
+     * @param keys,
+     *            separated keys of leaf path
+     * @return copied root
+     */
+    static TreeNode copyPath(TreeNode root, List<String> keys) {
+        TreeNode copy = root.copy(root.parent);
+        TreeNode node = copy;
+        for (String key : keys) {
+            TreeNode child = findExistedChild(node, key);
+            if (child == null) {
+                break;
+            }
+
+            TreeNode childCopy = child.copy(node);
+            node.children.set(node.children.indexOf(child), childCopy);
+            node.locator.replace(child, childCopy);
+            node = childCopy;
+        }
+        return copy;
+    }
+
+    /**
+     * Same as {@link #copyPath(TreeNode, List)} on a root which is already a
+     * private copy, copying only the nodes not copied yet.
+     * 
+     * @param root,
+     *            a copy of the published root
+     * @param keys
+     * @param owned,
+     *            nodes already copied, root included, receives the new copies
+     */
+    static void copyPath(TreeNode root, List<String> keys, Set<TreeNode> owned) {
+        TreeNode node = root;
+        for (String key : keys) {
+            TreeNode child = findExistedChild(node, key);
+            if (child == null) {
+                break;
+            }
+
+            if (!owned.contains(child)) {
+                TreeNode childCopy = child.copy(node);
+                node.children.set(node.children.indexOf(child), childCopy);
+                node.locator.replace(child, childCopy);
+                owned.add(childCopy);
+                child = childCopy;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * @return empty identity set of copied nodes
+     */
+    static Set<TreeNode> newOwnedSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
     /**
      * Adds the full path of certain leaf via traversal accessing the tree from
      * root.
@@ -89,20 +155,97 @@ public final class TreeKeeper {
      */
     static void addPath(HashingAlgorithm hashingAlgorithm, TreeNode treeNode, List<String> keys,
             int numberOfReplications) {
+        addPath(hashingAlgorithm, treeNode, keys, numberOfReplications, LookupMode.PER_LEVEL_HASH);
+    }
+
+    /**
+     * Adds the full path of certain leaf, placing virtual nodes for the lookup
+     * mode.
+     * 
+     * @param hashingAlgorithm
+     * @param treeNode
+     * @param keys
+     * @param numberOfReplications
+     * @param lookupMode
+     */
+    static void addPath(HashingAlgorithm hashingAlgorithm, TreeNode treeNode, List<String> keys,
+            int numberOfReplications, LookupMode lookupMode) {
+        addPath(treeNode, keys, 0,
+                level -> HashingEngine.RING.newLocator(level, hashingAlgorithm, numberOfReplications, lookupMode,
+                        HashingEngine.DEFAULT_RENDEZVOUS_THRESHOLD));
+    }
+
+    /**
+     * Adds the full path of certain leaf, creating the locators of new parents
+     * with the factory.
+     * 
+     * @param treeNode
+     * @param keys,
+     *            separated keys of leaf path
+     * @param level,
+     *            level of the first key, 0 for the children of root
+     * @param locatorFactory
+     */
+    static void addPath(TreeNode treeNode, List<String> keys, int level, LocatorFactory locatorFactory) {
         String currentKey = keys.get(0);
         int size = keys.size();
         TreeNode existedNode = findExistedChild(treeNode, currentKey);
         if (existedNode != null) {
-            addPath(hashingAlgorithm, existedNode, keys.subList(1, size), numberOfReplications);
+            if (size > 1) {
+                addPath(existedNode, keys.subList(1, size), level + 1, locatorFactory);
+            }
         } else {
-            TreeNode node = fillTheNode(treeNode, currentKey, numberOfReplications, hashingAlgorithm);
+            TreeNode node = fillTheNode(treeNode, currentKey, level, locatorFactory);
 
             if (size == 1) { // leaf it is
                 return;
             } else {
-                addPath(hashingAlgorithm, node, keys.subList(1, size), numberOfReplications);
+                addPath(node, keys.subList(1, size), level + 1, locatorFactory);
+            }
+        }
+    }
+
+    /**
+     * Adds many leaf paths under a copied root. Existing nodes along the paths
+     * are copied once, new children are linked to their parents but left out of
+     * the parent locators, so that every locator can take its new children in
+     * one call.
+     * 
+     * @param root,
+     *            a copy of the published root
+     * @param paths,
+     *            separated keys of every leaf path
+     * @param locatorFactory
+     * @param owned,
+     *            nodes already copied, root included, receives the new copies
+     * @return new children of every parent, in the order of the paths
+     */
+    static Map<TreeNode, List<TreeNode>> addPaths(TreeNode root, List<List<String>> paths,
+            LocatorFactory locatorFactory, Set<TreeNode> owned) {
+        Map<TreeNode, List<TreeNode>> added = new LinkedHashMap<>();
+        for (List<String> keys : paths) {
+            TreeNode node = root;
+            for (int level = 0; level < keys.size(); level++) {
+                String key = keys.get(level);
+                TreeNode child = findExistedChild(node, key);
+                if (child == null) {
+                    makeChildrenIfNecessary(node);
+                    makeLocatorIfNecessary(node, level, locatorFactory);
+                    child = new TreeNode(key, node);
+                    node.children.add(child);
+                    added.computeIfAbsent(node, parent -> new ArrayList<>()).add(child);
+                    owned.add(child);
+                } else if (!owned.contains(child)) {
+                    TreeNode childCopy = child.copy(node);
+                    node.children.set(node.children.indexOf(child), childCopy);
+                    node.locator.replace(child, childCopy);
+                    owned.add(childCopy);
+                    child = childCopy;
+                }
+                node = child;
             }
         }
+        return added;
     }
 
     /**
@@ -119,29 +262,103 @@ public final class TreeKeeper {
      */
     static void findLeaf(TreeNode treeNode, String anyValue, StringBuilder fullPathBuilder,
             HashingAlgorithm hashingAlgorithm) {
+        findLeaf(treeNode, hashingAlgorithm.hashAsLong(anyValue), fullPathBuilder, LookupMode.PER_LEVEL_HASH);
+    }
+
+    /**
+     * Finds the full path of certain leaf by the hash of the input value.
+     * 
+     * @param treeNode
+     * @param keyHash,
+     *            hash of the input value
+     * @param fullPathBuilder,
+     *            to build the full path as result
+     * @param lookupMode
+     */
+    static void findLeaf(TreeNode treeNode, long keyHash, StringBuilder fullPathBuilder, LookupMode lookupMode) {
+        TreeNode leaf = findLeafNode(treeNode, keyHash, lookupMode);
+        if (leaf != null) {
+            fullPathBuilder.append(leaf.path);
+        }
+    }
 
-        if (TreeConstant.ROOT_KEY.equals(treeNode.key)) {
-            if (treeNode.children == null || treeNode.hashRing == null) {
+    /**
+     * Finds the leaf node by the hash of the input value. Each locator points
+     * straight at the child node, so every level costs one binary search on
+     * rings and one table or arithmetic lookup on other engines.
+     * 
+     * @param treeNode
+     * @param keyHash,
+     *            hash of the input value
+     * @param lookupMode
+     * @return the leaf, or null if the tree is empty
+     */
+    static TreeNode findLeafNode(TreeNode treeNode, long keyHash, LookupMode lookupMode) {
+        int level = 0;
+        TreeNode node = treeNode;
+        while (node.locator != null) {
+            TreeNode child = node.locator.get(lookupMode.levelPosition(keyHash, level++));
+            if (child == null) {
                 // At least log a warning later.
-                return;
+                return node == treeNode ? null : node;
             }
+            node = child;
         }
 
-        String nodeKey = ConsistentHash.getHitHashNode(treeNode.hashRing, anyValue, hashingAlgorithm);
+        return node == treeNode ? null : node;
+    }
 
-        List<TreeNode> children = treeNode.children;
+    /**
+     * Finds the leaf node by the hash of the input value, skipping children
+     * which are over the bounded load on the levels of levelMask, and records the
+     * assignment along the path.
+     * 
+     * @param treeNode
+     * @param keyHash
+     * @param lookupMode
+     * @param tracker,
+     *            loads keyed by node path
+     * @param levelMask,
+     *            bit n set bounds the load on level n
+     * @return the leaf, or null if the tree is empty
+     */
+    static TreeNode acquireLeafNode(TreeNode treeNode, long keyHash, LookupMode lookupMode,
+            BoundedLoadTracker<String> tracker, long levelMask) {
+        int level = 0;
+        TreeNode node = treeNode;
+        while (node.locator != null) {
+            long position = lookupMode.levelPosition(keyHash, level);
+            TreeNode child = (levelMask & (1L << level)) == 0 ? node.locator.get(position)
+                    : node.locator.get(position, candidate -> tracker.load(candidate.path),
+                            tracker.load(node.path), tracker.getEpsilon());
+            if (child == null) {
+                break;
+            }
+            node = child;
+            level++;
+        }
 
-        int size = children.size();
-        for (int index = 0; index < size; index++) {
-            TreeNode node = children.get(index);
-            if (node.key.equals(nodeKey)) {
-                fullPathBuilder.append(node.key);
-                fullPathBuilder.append(TreeConstant.DEFAULT_PATH_SEPARATOR);
+        if (node == treeNode) {
+            return null;
+        }
+        for (TreeNode pathNode = node; pathNode != null; pathNode = pathNode.parent) {
+            tracker.acquire(pathNode.path);
+        }
+        return node;
+    }
 
-                if (node.children != null) {
-                    findLeaf(node, anyValue, fullPathBuilder, hashingAlgorithm);
-                }
-            }
+    /**
+     * Releases an assignment recorded by
+     * {@link #acquireLeafNode(TreeNode, long, LookupMode, BoundedLoadTracker, long)}.
+     * Only the paths of the parents are read, so it holds for leaves of older
+     * tree versions as well.
+     * 
+     * @param leaf
+     * @param tracker
+     */
+    static void releaseLeafNode(TreeNode leaf, BoundedLoadTracker<String> tracker) {
+        for (TreeNode pathNode = leaf; pathNode != null; pathNode = pathNode.parent) {
+            tracker.release(pathNode.path);
         }
     }
 
@@ -152,47 +369,37 @@ public final class TreeKeeper {
      * @param treeNode
      * @param keys,
      *            separated keys of leaf path
-     * @param hashingAlgorithm,
-     *            default md5
-     * @param numberOfReplications
      */
-    static void removeLeaf(TreeNode treeNode, List<String> keys, HashingAlgorithm hashingAlgorithm,
-            int numberOfReplications) {
+    static void removeLeaf(TreeNode treeNode, List<String> keys) {
         String currentKey = keys.get(0);
         int size = keys.size();
         TreeNode existedNode = findExistedChild(treeNode, currentKey);
         if (existedNode != null) {
             if (size == 1) {
                 // leaf it is
-                eraseNode(existedNode.key, existedNode, numberOfReplications, hashingAlgorithm);
+                eraseNode(existedNode);
 
             } else {
-                removeLeaf(existedNode, keys.subList(1, size), hashingAlgorithm, numberOfReplications);
+                removeLeaf(existedNode, keys.subList(1, size));
             }
         } else {
             return;
         }
 
-        if (treeNode.children.size() == 0) {
-            eraseNode(treeNode.key, treeNode, numberOfReplications, hashingAlgorithm);
+        if (treeNode.children.size() == 0 && treeNode.parent != null) {
+            eraseNode(treeNode);
         }
     }
 
     /**
      * Erases node from its parent and removes related virtual nodes as well.
      * 
-     * @param key,
-     *            string value of current node
      * @param node,
      *            {@code}TreeNode current node
-     * @param numberOfReplications
-     * @param hashingAlgorithm,
-     *            default md5
      */
-    private static void eraseNode(String key, TreeNode node, int numberOfReplications,
-            HashingAlgorithm hashingAlgorithm) {
+    private static void eraseNode(TreeNode node) {
         node.parent.children.remove(node);
-        ConsistentHash.remove(node.key, node.parent.hashRing, numberOfReplications, hashingAlgorithm);
+        node.parent.locator.remove(node);
     }
     
     
@@ -220,4 +427,94 @@ public final class TreeKeeper {
             return false;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * @param root
+     * @param keys,
+     *            separated keys of node path
+     * @return the node at the path, or null if not found
+     */
+    static TreeNode findNode(TreeNode root, List<String> keys) {
+        TreeNode node = root;
+        for (String key : keys) {
+            node = findExistedChild(node, key);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Sets the weight of the node at the path in the locator of its parent. The
+     * parent must be a private copy, see
+     * {@link #copyPath(TreeNode, List, Set)}.
+     * 
+     * @param root
+     * @param keys,
+     *            separated keys of node path
+     * @param weight
+     * @throws IllegalArgumentException
+     *             if the path is not found
+     */
+    static void setWeight(TreeNode root, List<String> keys, double weight) {
+        TreeNode parent = keys.isEmpty() ? null : findNode(root, keys.subList(0, keys.size() - 1));
+        TreeNode node = parent == null ? null : findExistedChild(parent, keys.get(keys.size() - 1));
+        if (node == null) {
+            throw new IllegalArgumentException("Path " + keys + " is not found");
+        }
+        parent.locator.setWeight(node.key, node, weight);
+    }
+
+    /**
+     * Collects the nodes of the before tree whose paths are gone from the after
+     * tree, descendants included. Subtrees shared by both versions are skipped,
+     * so the cost follows the changed paths only.
+     * 
+     * @param before
+     * @param after
+     * @param erased
+     */
+    static void collectErased(TreeNode before, TreeNode after, List<TreeNode> erased) {
+        if (before == after || before.children == null) {
+            return;
+        }
+
+        for (TreeNode child : before.children) {
+            TreeNode kept = findExistedChild(after, child.key);
+            if (kept == null) {
+                collectSubtree(child, erased);
+            } else {
+                collectErased(child, kept, erased);
+            }
+        }
+    }
+
+    private static void collectSubtree(TreeNode node, List<TreeNode> nodes) {
+        nodes.add(node);
+        if (node.children != null) {
+            for (TreeNode child : node.children) {
+                collectSubtree(child, nodes);
+            }
+        }
+    }
+
+    /**
+     * Collects the leaves under node, in child order.
+     * 
+     * @param node
+     * @param leaves
+     */
+    static void collectLeaves(TreeNode node, List<TreeNode> leaves) {
+        if (node.children == null || node.children.isEmpty()) {
+            if (node.parent != null) {
+                leaves.add(node);
+            }
+            return;
+        }
+
+        for (TreeNode child : node.children) {
+            collectLeaves(child, leaves);
+        }
+    }
+}
@@ -1,18 +1,83 @@
 package lex.common.dynamic.routing.tree;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.SortedMap;
+
+import lex.common.consistent.hashing.NodeLocator;
+import lex.common.constant.DataSourceConstant;
+import lex.common.constant.TreeConstant;
 
 public class TreeNode {
     String key = null;
     String value = null;
-    
+
+    /**
+     * Precomputed, interned full path and data source keys, so routing returns
+     * existing strings.
+     */
+    String path = "";
+    String masterKey = DataSourceConstant.MASTER;
+    String slaveKey = DataSourceConstant.SLAVE;
+
+    /**
+     * Nodes are shared between tree versions, so parent may point to an older
+     * version of the parent. It is only reliable along a path returned by
+     * {@link TreeKeeper#copyPath(TreeNode, List)}.
+     */
     TreeNode parent = null;
     List<TreeNode> children = null;
     
-    SortedMap<Long, String> hashRing = null;
+    NodeLocator<TreeNode> locator = null;
 
     public TreeNode(String string) {
         this.key = string;
     }
+
+    TreeNode(String string, TreeNode parent) {
+        this.key = string;
+        this.parent = parent;
+        this.path = parent.path.concat(string).concat(TreeConstant.DEFAULT_PATH_SEPARATOR).intern();
+        this.masterKey = path.concat(DataSourceConstant.MASTER).intern();
+        this.slaveKey = path.concat(DataSourceConstant.SLAVE).intern();
+    }
+
+    /**
+     * Shallow copy for copy-on-write mutation, sharing children and ring
+     * snapshot with the original.
+     * 
+     * @param parent
+     * @return
+     */
+    TreeNode copy(TreeNode parent) {
+        TreeNode copy = new TreeNode(key);
+        copy.value = value;
+        copy.path = path;
+        copy.masterKey = masterKey;
+        copy.slaveKey = slaveKey;
+        copy.parent = parent;
+        copy.children = children == null ? null : new ArrayList<>(children);
+        copy.locator = locator == null ? null : locator.copy();
+        return copy;
+    }
+
+    /**
+     * @return full path from root, ending with path separator, e.g. "D1-T1-S1-"
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return lookup key of the master data source, e.g. "D1-T1-S1-master"
+     */
+    public String getMasterKey() {
+        return masterKey;
+    }
+
+    /**
+     * @return lookup key of the slave data source, e.g. "D1-T1-S1-slave"
+     */
+    public String getSlaveKey() {
+        return slaveKey;
+    }
 }
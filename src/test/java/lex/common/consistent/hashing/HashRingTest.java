@@ -0,0 +1,140 @@
+package lex.common.consistent.hashing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HashRingTest {
+    private final int numberOfReplicas = 67;
+    private HashingAlgorithm algorithm = ConsistentHash.initMd5Hashing();
+
+    @Test
+    public void testEmptyRing() {
+        HashRing<String> ring = new HashRing<>();
+        Assert.assertTrue(ring.isEmpty());
+        Assert.assertNull(ring.get(42L));
+    }
+
+    @Test
+    public void testWrapAround() {
+        HashRing<String> ring = new HashRing<>();
+        ring.add("A", new long[] { 10L, 30L });
+        ring.add("B", new long[] { 20L });
+
+        Assert.assertEquals("A", ring.get(10L));
+        Assert.assertEquals("B", ring.get(11L));
+        Assert.assertEquals("A", ring.get(21L));
+        Assert.assertEquals("A", ring.get(31L));
+        Assert.assertEquals("A", ring.get(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void testAddAllSameAsAddingInOrder() {
+        HashRing<String> one = new HashRing<>();
+        one.add("A", new long[] { 10L, 30L });
+        HashRing<String> all = one.copy();
+
+        one.add("B", new long[] { 30L, -5L });
+        one.add("C", new long[] { -5L, 10L, 40L });
+        one.add("B", new long[] { 50L });
+        all.addAllAt(Arrays.asList("B", "C", "B"),
+                Arrays.asList(new long[] { 30L, -5L }, new long[] { -5L, 10L, 40L }, new long[] { 50L }));
+
+        Assert.assertArrayEquals(one.positions(), all.positions());
+        for (int index = 0; index < one.size(); index++) {
+            Assert.assertEquals(one.ownerAt(index), all.ownerAt(index));
+        }
+        Assert.assertEquals(one.memberCount(), all.memberCount());
+
+        HashRing<String> hashed = new HashRing<>(numberOfReplicas, algorithm);
+        HashRing<String> sequential = new HashRing<>(numberOfReplicas, algorithm);
+        List<String> nodes = new ArrayList<>();
+        for (int index = 0; index < 100; index++) {
+            nodes.add("S" + index);
+            sequential.add("S" + index, "S" + index);
+        }
+        hashed.addAll(nodes, nodes);
+        Assert.assertArrayEquals(sequential.positions(), hashed.positions());
+    }
+
+    @Test
+    public void testWeightChangeMovesOnlyTheDelta() {
+        HashRing<String> ring = new HashRing<>(numberOfReplicas, algorithm);
+        for (int index = 0; index < 5; index++) {
+            ring.add("S" + index, "S" + index);
+        }
+        HashRing<String> before = ring.copy();
+        ring.setWeight("S2", "S2", 2.0);
+        Assert.assertEquals(2.0, ring.getWeight("S2"), 1e-9);
+        Assert.assertEquals(1.0, before.getWeight("S2"), 1e-9);
+        Assert.assertEquals(numberOfReplicas * 6, ring.size());
+
+        for (int key = 0; key < 10000; key++) {
+            String old = before.get(algorithm.hashAsLong("key" + key));
+            String current = ring.get(algorithm.hashAsLong("key" + key));
+            Assert.assertTrue(old.equals(current) || current.equals("S2"));
+        }
+
+        ring.setWeight("S2", "S2", 1.0);
+        Assert.assertArrayEquals(before.positions(), ring.positions());
+
+        HashRing<String> restored = new HashRing<>(numberOfReplicas, algorithm);
+        ring.add("S5", "S5", 0.5);
+        restored.restore(Arrays.asList("S0", "S1", "S2", "S3", "S4", "S5"), ring.positions(), owners(ring));
+        Assert.assertEquals(34.0 / numberOfReplicas, restored.getWeight("S5"), 1e-9);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWeightsNeedReplicaPositions() {
+        HashRing<String> ring = new HashRing<>(key -> new long[] { key.hashCode() });
+        ring.add("A", "A", 2.0);
+    }
+
+    private static int[] owners(HashRing<String> ring) {
+        int[] owners = new int[ring.size()];
+        for (int index = 0; index < owners.length; index++) {
+            owners[index] = ring.ownerAt(index).charAt(1) - '0';
+        }
+        return owners;
+    }
+
+    @Test
+    public void testSameLookupAsSortedMap() {
+        SortedMap<Long, String> sortedMap = Collections.synchronizedSortedMap(new TreeMap<>());
+        HashRing<String> ring = new HashRing<>();
+        for (int index = 0; index < 10; index++) {
+            String node = "S" + index;
+            ConsistentHash.addNodeIntoHashRing(node, sortedMap, numberOfReplicas, algorithm);
+            ConsistentHash.addNodeIntoHashRing(node, ring, numberOfReplicas, algorithm);
+        }
+
+        Assert.assertEquals(sortedMap.size(), ring.size());
+        for (int key = 0; key < 10000; key++) {
+            String value = "key" + key;
+            Assert.assertEquals(ConsistentHash.getHitHashNode(sortedMap, value, algorithm),
+                    ConsistentHash.getHitHashNode(ring, value, algorithm));
+        }
+    }
+
+    @Test
+    public void testRemove() {
+        HashRing<String> ring = new HashRing<>();
+        ConsistentHash.addNodeIntoHashRing("S1", ring, numberOfReplicas, algorithm);
+        ConsistentHash.addNodeIntoHashRing("S2", ring, numberOfReplicas, algorithm);
+        ConsistentHash.remove("S1", ring);
+
+        Assert.assertEquals(numberOfReplicas, ring.size());
+        for (int key = 0; key < 1000; key++) {
+            Assert.assertEquals("S2", ConsistentHash.getHitHashNode(ring, "key" + key, algorithm));
+        }
+
+        ConsistentHash.remove("S2", ring);
+        Assert.assertTrue(ring.isEmpty());
+    }
+}
@@ -0,0 +1,78 @@
+package lex.common.consistent.hashing;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HashingAlgorithmTest {
+
+    /**
+     * MD5 formula of the original {@code HashingAlgorithm.md5HashingAlgorithm},
+     * kept verbatim so placements are checked against it, not against the
+     * cached implementation.
+     */
+    private static long legacyMd5(String key) throws NoSuchAlgorithmException {
+        MessageDigest md5 = MessageDigest.getInstance("MD5");
+        md5.reset();
+        md5.update(key.getBytes());
+        byte[] bKey = md5.digest();
+        return ((long) (bKey[3] & 0xFF) << 24) | ((long) (bKey[2] & 0xFF) << 16) | ((long) (bKey[1] & 0xFF) << 8)
+                | (long) (bKey[0] & 0xFF);
+    }
+
+    @Test
+    public void testXxHash64() {
+        HashingAlgorithm algorithm = ConsistentHash.initXxHash64Hashing();
+        Assert.assertEquals(0xef46db3751d8e999L, algorithm.hashAsLong(""));
+        Assert.assertEquals(0xf0510bbc915bedf1L, algorithm.hashAsLong("D1#0"));
+        Assert.assertEquals(0xf9bcbff2d7e12b3bL, algorithm.hashAsLong("canyouseeme"));
+    }
+
+    @Test
+    public void testMurmur3() {
+        HashingAlgorithm algorithm = ConsistentHash.initMurmur3Hashing();
+        Assert.assertEquals(0L, algorithm.hashAsLong(""));
+        Assert.assertEquals(0xba8a6abf62deeaf6L, algorithm.hashAsLong("D1#0"));
+        Assert.assertEquals(0x4dcc3914c0d8925cL, algorithm.hashAsLong("canyouseeme"));
+    }
+
+    @Test
+    public void testFnv1a64() {
+        HashingAlgorithm algorithm = ConsistentHash.initFnv1a64Hashing();
+        Assert.assertEquals(0xcbf29ce484222325L, algorithm.hashAsLong(""));
+        Assert.assertEquals(0x89be207b544f1e4L, algorithm.hashAsLong("a"));
+    }
+
+    @Test
+    public void testCachedMd5KeepsPlacements() throws NoSuchAlgorithmException {
+        HashingAlgorithm algorithm = ConsistentHash.initMd5Hashing();
+        Assert.assertEquals(0xd98c1dd4L, algorithm.hashAsLong(""));
+        Assert.assertEquals(0xd2a88a0bL, algorithm.hashAsLong("D1#0"));
+        Assert.assertEquals(0xaa6672ecL, algorithm.hashAsLong("canyouseeme"));
+        Assert.assertEquals(0xdb249091L, algorithm.hashAsLong("D1-T1#66"));
+
+        String[] keys = { "", "D1#0", "canyouseeme", "\u4e2d\u6587#12" };
+        for (String key : keys) {
+            Assert.assertEquals(legacyMd5(key), algorithm.hashAsLong(key));
+            Assert.assertEquals(Long.valueOf(legacyMd5(key)), algorithm.hash(key));
+            Assert.assertEquals(algorithm.hashAsLong(key), algorithm.hashAsLong(new StringBuilder(key)));
+        }
+    }
+
+    @Test
+    public void testCharSequenceMatchesString() {
+        HashingAlgorithm[] algorithms = { ConsistentHash.initXxHash64Hashing(), ConsistentHash.initMurmur3Hashing(),
+                ConsistentHash.initFnv1a64Hashing() };
+        for (HashingAlgorithm algorithm : algorithms) {
+            for (int length = 0; length < 40; length++) {
+                StringBuilder key = new StringBuilder();
+                for (int index = 0; index < length; index++) {
+                    key.append((char) ('a' + index));
+                }
+                Assert.assertEquals(algorithm.hash(key.toString()).longValue(), algorithm.hashAsLong(key));
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package lex.common.consistent.hashing;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NodeLocatorTest {
+    private final int keys = 100000;
+    private HashingAlgorithm algorithm = ConsistentHash.initXxHash64Hashing();
+
+    @Test
+    public void testJumpHashMovesOnlyToAppendedNode() {
+        JumpHash<String> jumpHash = new JumpHash<>();
+        fill(jumpHash, 10);
+        String[] before = locateAll(jumpHash);
+        jumpHash.add("S10", "S10");
+        String[] after = locateAll(jumpHash);
+
+        int moved = 0;
+        for (int key = 0; key < keys; key++) {
+            if (!before[key].equals(after[key])) {
+                Assert.assertEquals("S10", after[key]);
+                moved++;
+            }
+        }
+        Assert.assertEquals(keys / 11.0, moved, keys * 0.01);
+        assertBalanced(after, 11, 0.05);
+
+        jumpHash.remove("S10");
+        Assert.assertArrayEquals(before, locateAll(jumpHash));
+    }
+
+    @Test
+    public void testJumpHashIgnoresMembershipHistory() {
+        JumpHash<String> ascending = new JumpHash<>();
+        fill(ascending, 12);
+
+        JumpHash<String> shuffled = new JumpHash<>();
+        for (int node : new int[] { 7, 0, 11, 3, 10, 1, 5, 9, 2, 8, 4, 6 }) {
+            shuffled.add("S" + node, "S" + node);
+        }
+        Assert.assertArrayEquals(locateAll(ascending), locateAll(shuffled));
+
+        // A restart after removing S4 builds the table without it.
+        ascending.remove("S4");
+        JumpHash<String> restarted = new JumpHash<>();
+        for (int node = 11; node >= 0; node--) {
+            if (node != 4) {
+                restarted.add("S" + node, "S" + node);
+            }
+        }
+        Assert.assertArrayEquals(locateAll(restarted), locateAll(ascending));
+
+        Assert.assertTrue(JumpHash.compareNodeKeys("S2", "S10") < 0);
+        Assert.assertTrue(JumpHash.compareNodeKeys("D9", "S1") < 0);
+        Assert.assertTrue(JumpHash.compareNodeKeys("S010", "S9") > 0);
+    }
+
+    @Test
+    public void testMaglevTableBalanceAndDisruption() {
+        MaglevTable<String> maglevTable = new MaglevTable<>(algorithm);
+        fill(maglevTable, 10);
+        String[] before = locateAll(maglevTable);
+        assertBalanced(before, 10, 0.05);
+
+        maglevTable.remove("S3");
+        String[] after = locateAll(maglevTable);
+        int moved = 0;
+        for (int key = 0; key < keys; key++) {
+            Assert.assertNotEquals("S3", after[key]);
+            if (!before[key].equals(after[key])) {
+                moved++;
+            }
+        }
+        Assert.assertTrue(moved < keys * 0.15);
+
+        maglevTable.add("S3", "S3");
+        Assert.assertArrayEquals(before, locateAll(maglevTable));
+    }
+
+    @Test
+    public void testRendezvousMovesOnlyRemovedNodeKeys() {
+        RendezvousHash<String> rendezvousHash = new RendezvousHash<>(algorithm);
+        fill(rendezvousHash, 6);
+        String[] before = locateAll(rendezvousHash);
+        assertBalanced(before, 6, 0.05);
+
+        rendezvousHash.remove("S2");
+        String[] after = locateAll(rendezvousHash);
+        for (int key = 0; key < keys; key++) {
+            if (!before[key].equals("S2")) {
+                Assert.assertEquals(before[key], after[key]);
+            }
+        }
+
+        rendezvousHash.add("S2", "S2");
+        Assert.assertArrayEquals(before, locateAll(rendezvousHash));
+    }
+
+    @Test
+    public void testAdaptiveLocatorSwitchesAtThreshold() {
+        AdaptiveLocator<String> adaptiveLocator = new AdaptiveLocator<>(4,
+                () -> new RendezvousHash<String>(algorithm), () -> new HashRing<String>(67, algorithm));
+        fill(adaptiveLocator, 4);
+        Assert.assertTrue(adaptiveLocator.getDelegate() instanceof RendezvousHash);
+        AdaptiveLocator<String> copy = adaptiveLocator.copy();
+
+        adaptiveLocator.add("S4", "S4");
+        Assert.assertTrue(adaptiveLocator.getDelegate() instanceof HashRing);
+        Assert.assertEquals(5, adaptiveLocator.memberCount());
+        Assert.assertEquals("S4", adaptiveLocator.get(algorithm.hashAsLong("S4#0")));
+        Assert.assertTrue(copy.getDelegate() instanceof RendezvousHash);
+
+        adaptiveLocator.remove("S4");
+        Assert.assertTrue(adaptiveLocator.getDelegate() instanceof RendezvousHash);
+        Assert.assertArrayEquals(locateAll(copy), locateAll(adaptiveLocator));
+    }
+
+    @Test
+    public void testRendezvousTableMatchesBucketedRendezvous() {
+        RendezvousHash<String> rendezvousHash = new RendezvousHash<>(algorithm::hashAsLong, 1, 10);
+        RendezvousTable<String> rendezvousTable = new RendezvousTable<>(algorithm::hashAsLong, 1, 10);
+        fill(rendezvousHash, 9);
+        fill(rendezvousTable, 9);
+        Assert.assertArrayEquals(locateAll(rendezvousHash), locateAll(rendezvousTable));
+        assertBalanced(locateAll(rendezvousTable), 9, 0.2);
+
+        rendezvousHash.remove("S3");
+        rendezvousTable.remove("S3");
+        Assert.assertArrayEquals(locateAll(rendezvousHash), locateAll(rendezvousTable));
+    }
+
+    @Test
+    public void testAdaptiveSwitchMovesOnlyAddedNodeKeys() {
+        AdaptiveLocator<String> adaptiveLocator = new AdaptiveLocator<>(4,
+                () -> new RendezvousHash<String>(algorithm::hashAsLong, 0, RendezvousTable.DEFAULT_BUCKET_BITS),
+                () -> new RendezvousTable<String>(algorithm::hashAsLong, 0, RendezvousTable.DEFAULT_BUCKET_BITS));
+        fill(adaptiveLocator, 4);
+        String[] before = locateAll(adaptiveLocator);
+
+        adaptiveLocator.add("S4", "S4");
+        Assert.assertTrue(adaptiveLocator.getDelegate() instanceof RendezvousTable);
+        String[] after = locateAll(adaptiveLocator);
+        int moved = 0;
+        for (int key = 0; key < keys; key++) {
+            if (!before[key].equals(after[key])) {
+                Assert.assertEquals("S4", after[key]);
+                moved++;
+            }
+        }
+        Assert.assertEquals(keys / 5.0, moved, keys * 0.02);
+
+        adaptiveLocator.remove("S4");
+        Assert.assertTrue(adaptiveLocator.getDelegate() instanceof RendezvousHash);
+        Assert.assertArrayEquals(before, locateAll(adaptiveLocator));
+    }
+
+    @Test
+    public void testBoundedLookupSkipsFullNodes() {
+        NodeLocator<String>[] locators = new NodeLocator[] { new HashRing<String>(67, algorithm),
+                new JumpHash<String>(), new MaglevTable<String>(algorithm), new RendezvousHash<String>(algorithm),
+                new RendezvousTable<String>(algorithm::hashAsLong, 0, 8) };
+        for (NodeLocator<String> locator : locators) {
+            fill(locator, 4);
+            String hit = locator.get(42L);
+            String other = locator.get(42L, node -> node.equals(hit) ? 10 : 0, 10, 0.25);
+            Assert.assertNotEquals(hit, other);
+            Assert.assertEquals(hit, locator.get(42L, node -> 0, 10, 0.25));
+        }
+    }
+
+    private void fill(NodeLocator<String> locator, int nodes) {
+        for (int node = 0; node < nodes; node++) {
+            locator.add("S" + node, "S" + node);
+        }
+    }
+
+    private String[] locateAll(NodeLocator<String> locator) {
+        String[] hits = new String[keys];
+        for (int key = 0; key < keys; key++) {
+            hits[key] = locator.get(algorithm.hashAsLong("key" + key));
+        }
+        return hits;
+    }
+
+    private void assertBalanced(String[] hits, int nodes, double tolerance) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String hit : hits) {
+            counts.merge(hit, 1, Integer::sum);
+        }
+        Assert.assertEquals(nodes, counts.size());
+        for (int count : counts.values()) {
+            Assert.assertEquals((double) keys / nodes, count, keys * tolerance / nodes);
+        }
+    }
+}
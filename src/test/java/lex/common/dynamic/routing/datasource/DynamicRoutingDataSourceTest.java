@@ -0,0 +1,310 @@
+package lex.common.dynamic.routing.datasource;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.sql.DataSource;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import lex.common.consistent.hashing.ConsistentHash;
+import lex.common.constant.TreeConstant;
+import lex.common.dynamic.routing.datasource.replica.ReplicaSelector;
+import lex.common.dynamic.routing.datasource.replica.ReplicaSet;
+import lex.common.dynamic.routing.key.HotKey;
+import lex.common.dynamic.routing.key.HotKeySampler;
+import lex.common.dynamic.routing.key.RoutingContext;
+import lex.common.dynamic.routing.tree.RoutingMetricsSnapshot;
+
+public class DynamicRoutingDataSourceTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Map<String, DataSource> masters = new HashMap<>();
+    private Map<String, DataSource> slaves = new HashMap<>();
+
+    @Test
+    public void testRoutesToMasterAndSlave() {
+        DynamicRoutingDataSource dataSource = buildDataSource("D1-T1", "D1-T2", "D2-T1");
+
+        for (int key = 0; key < 100; key++) {
+            dataSource.setKey("key" + key, true);
+            String rout = rout(dataSource.getKey());
+            Assert.assertSame(masters.get(rout), dataSource.determineTargetDataSource());
+
+            dataSource.setKey("key" + key, false);
+            Assert.assertSame(slaves.get(rout), dataSource.determineTargetDataSource());
+        }
+        dataSource.removeKey(null);
+    }
+
+    @Test
+    public void testAppendKeepsRegisteredRoutes() {
+        DynamicRoutingDataSource dataSource = buildDataSource("D1-T1");
+        dataSource.appendDataSource("D2-T1", Arrays.asList(master("D2-T1"), slave("D2-T1")));
+
+        int hitFirstRout = 0;
+        for (int key = 0; key < 1000; key++) {
+            dataSource.setKey("key" + key, true);
+            String rout = rout(dataSource.getKey());
+            Assert.assertSame(masters.get(rout), dataSource.determineTargetDataSource());
+            if ("D1-T1".equals(rout)) {
+                hitFirstRout++;
+            }
+        }
+        Assert.assertTrue(hitFirstRout > 0 && hitFirstRout < 1000);
+        dataSource.removeKey(null);
+    }
+
+    @Test
+    public void testWeightedRoutes() {
+        DynamicRoutingDataSource dataSource = new DynamicRoutingDataSource.Builder()
+                .addDataSource("D1-T1", Arrays.asList(master("D1-T1"), slave("D1-T1")))
+                .addDataSource("D1-T2", Arrays.asList(master("D1-T2"), slave("D1-T2")), 4.0).build();
+        Assert.assertEquals(0.8, share(dataSource, "D1-T2"), 0.08);
+
+        dataSource.setDataSourceWeight("D1-T2", 1.0);
+        Assert.assertEquals(0.5, share(dataSource, "D1-T2"), 0.08);
+        dataSource.removeKey(null);
+    }
+
+    private static double share(DynamicRoutingDataSource dataSource, String rout) {
+        int hits = 0;
+        for (int key = 0; key < 10000; key++) {
+            dataSource.setKey("key" + key, true);
+            if (rout.equals(rout(dataSource.getKey()))) {
+                hits++;
+            }
+        }
+        return hits / 10000.0;
+    }
+
+    @Test
+    public void testMetricsCountMasterAndSlaveChoices() {
+        DynamicRoutingDataSource dataSource = new DynamicRoutingDataSource.Builder()
+                .addDataSource("D1-T1", Arrays.asList(master("D1-T1"), slave("D1-T1"))).enableMetrics().build();
+        for (int key = 0; key < 10; key++) {
+            dataSource.setKey("key" + key, key < 3);
+        }
+        dataSource.removeKey(null);
+
+        RoutingMetricsSnapshot snapshot = dataSource.getMetrics().snapshot();
+        Assert.assertEquals(3L, snapshot.getMasterHits().get("D1-T1-").longValue());
+        Assert.assertEquals(7L, snapshot.getSlaveHits().get("D1-T1-").longValue());
+        Assert.assertEquals(10L, snapshot.getLookupLatency().getCount());
+    }
+
+    @Test
+    public void testRejectsNonPositiveEpsilon() {
+        for (double epsilon : new double[] { 0, -0.25, Double.NaN }) {
+            try {
+                new DynamicRoutingDataSource.Builder().enableBoundedLoads(epsilon);
+                Assert.fail();
+            } catch (IllegalArgumentException e) {
+                // expected, bounded loads would be silently off
+            }
+        }
+    }
+
+    @Test
+    public void testSamplesHotKeys() {
+        DynamicRoutingDataSource dataSource = new DynamicRoutingDataSource.Builder()
+                .addDataSource("D1-T1", Arrays.asList(master("D1-T1"), slave("D1-T1")))
+                .addDataSource("D1-T2", Arrays.asList(master("D1-T2"), slave("D1-T2")))
+                .enableHotKeySampling(new HotKeySampler(1.0, 2, 60000, 2)).build();
+        for (int key = 0; key < 100; key++) {
+            dataSource.setKey("hot", true);
+            dataSource.setKey("key" + key, false);
+        }
+        dataSource.removeKey(null);
+
+        HotKey hottest = dataSource.getHotKeySampler().hotKeys().get(0);
+        Assert.assertEquals("hot", hottest.getKey());
+        dataSource.setKey("hot", true);
+        Assert.assertEquals(rout(dataSource.getKey()) + "-", hottest.getLeaf());
+        dataSource.removeKey(null);
+    }
+
+    @Test
+    public void testRunWithKeyBindsAndCleansUp() throws Exception {
+        DynamicRoutingDataSource dataSource = buildDataSource("D1-T1", "D1-T2", "D2-T1");
+        dataSource.setKey("key1", true);
+        String expected = dataSource.getKey();
+        dataSource.removeKey(null);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            String propagated = dataSource.callWithKey("key1", true, () -> {
+                Assert.assertEquals(expected, dataSource.getKey());
+                Assert.assertSame(masters.get(rout(expected)), dataSource.determineTargetDataSource());
+                return executor.submit(RoutingContext.wrap(() -> dataSource.getKey())).get();
+            });
+            Assert.assertEquals(expected, propagated);
+            Assert.assertEquals(TreeConstant.UNDEFINED_KEY, executor.submit(() -> dataSource.getKey()).get());
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(TreeConstant.UNDEFINED_KEY, dataSource.getKey());
+        Assert.assertNull(RoutingContext.current());
+    }
+
+    @Test
+    public void testRemoveDataSource() {
+        DynamicRoutingDataSource dataSource = buildDataSource("D1-T1", "D2-T1");
+        Assert.assertTrue(dataSource.removeDataSource("D2-T1"));
+
+        for (int key = 0; key < 100; key++) {
+            dataSource.setKey("key" + key, false);
+            Assert.assertSame(slaves.get("D1-T1"), dataSource.determineTargetDataSource());
+        }
+        dataSource.removeKey(null);
+        Assert.assertNull(dataSource.unregisterDataSource("D2-T1-master"));
+    }
+
+    @Test
+    public void testDefaultTargetDataSource() {
+        DynamicRoutingDataSource dataSource = buildDataSource("D1-T1", "D2-T1");
+        Assert.assertEquals(4, dataSource.getResolvedDataSources().size());
+        Assert.assertSame(masters.get("D1-T1"), dataSource.getResolvedDataSources().get("D1-T1-master"));
+
+        DataSource fallback = Mockito.mock(DataSource.class);
+        dataSource.setDefaultTargetDataSource(fallback);
+        Assert.assertSame(fallback, dataSource.getResolvedDefaultDataSource());
+        Assert.assertSame(fallback, dataSource.determineTargetDataSource());
+
+        dataSource.setKey("key", true);
+        dataSource.unregisterDataSource(dataSource.getKey());
+        Assert.assertSame(fallback, dataSource.determineTargetDataSource());
+
+        dataSource.setLenientFallback(false);
+        try {
+            dataSource.determineTargetDataSource();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // expected, no fallback for a registered key
+        }
+        dataSource.removeKey(null);
+        Assert.assertSame(fallback, dataSource.determineTargetDataSource());
+    }
+
+    @Test
+    public void testSlavesFormReplicaSet() {
+        DataSource slave1 = Mockito.mock(DataSource.class);
+        DataSource slave2 = Mockito.mock(DataSource.class);
+        DynamicRoutingDataSource dataSource = new DynamicRoutingDataSource.Builder()
+                .addDataSource("D1-T1", Arrays.asList(master("D1-T1"), slave1, slave2))
+                .addReplicaSelector(ReplicaSelector.weighted()).build();
+        dataSource.setReplicaWeights("D1-T1", 1, 2);
+
+        dataSource.setKey("key", false);
+        ReplicaSet replicaSet = (ReplicaSet) dataSource.determineTargetDataSource();
+        Assert.assertEquals(2, replicaSet.size());
+        Assert.assertSame(slave2, replicaSet.getReplica(1));
+        dataSource.removeKey(null);
+    }
+
+    @Test
+    public void testStartsFromTopologySnapshot() throws Exception {
+        Path snapshot = folder.getRoot().toPath().resolve("topology.bin");
+        buildDataSource("D1-T1", "D1-T2", "D2-T1").saveTopology(snapshot);
+
+        DynamicRoutingDataSource.Builder builder = new DynamicRoutingDataSource.Builder().loadTopology(snapshot);
+        for (String rout : new String[] { "D1-T1", "D2-T1", "D3-T1" }) {
+            builder.addDataSource(rout, Arrays.asList(master(rout), slave(rout)));
+        }
+        DynamicRoutingDataSource restored = builder.build();
+        DynamicRoutingDataSource rebuilt = buildDataSource("D1-T1", "D2-T1", "D3-T1");
+
+        for (int key = 0; key < 1000; key++) {
+            restored.setKey("key" + key, true);
+            rebuilt.setKey("key" + key, true);
+            Assert.assertEquals(rebuilt.getKey(), restored.getKey());
+        }
+        restored.removeKey(null);
+        rebuilt.removeKey(null);
+    }
+
+    @Test
+    public void testBuildPublishesRoutsAndWeightsOnce() throws Exception {
+        DynamicRoutingDataSource dataSource = new DynamicRoutingDataSource.Builder()
+                .addDataSource("D1-T1", Arrays.asList(master("D1-T1"), slave("D1-T1")), 0.3)
+                .addDataSource("D1-T2", Arrays.asList(master("D1-T2"), slave("D1-T2")), 4.0)
+                .addDataSource("D2-T1", Arrays.asList(master("D2-T1"), slave("D2-T1"))).enableMetrics().build();
+        Assert.assertEquals(1L, dataSource.getMetrics().snapshot().getTopologyChanges());
+        Path snapshot = folder.getRoot().toPath().resolve("topology.bin");
+        dataSource.saveTopology(snapshot);
+
+        // 0.3 is restored as 20 / 67, the same replica count, so only the restore publishes.
+        DynamicRoutingDataSource restored = new DynamicRoutingDataSource.Builder().loadTopology(snapshot)
+                .addDataSource("D1-T1", Arrays.asList(master("D1-T1"), slave("D1-T1")), 0.3)
+                .addDataSource("D1-T2", Arrays.asList(master("D1-T2"), slave("D1-T2")), 4.0)
+                .addDataSource("D2-T1", Arrays.asList(master("D2-T1"), slave("D2-T1"))).enableMetrics().build();
+        Assert.assertEquals(1L, restored.getMetrics().snapshot().getTopologyChanges());
+
+        DynamicRoutingDataSource changed = new DynamicRoutingDataSource.Builder().loadTopology(snapshot)
+                .addDataSource("D1-T1", Arrays.asList(master("D1-T1"), slave("D1-T1")), 2.0)
+                .addDataSource("D1-T2", Arrays.asList(master("D1-T2"), slave("D1-T2")), 4.0)
+                .addDataSource("D3-T1", Arrays.asList(master("D3-T1"), slave("D3-T1"))).enableMetrics().build();
+        Assert.assertEquals(2L, changed.getMetrics().snapshot().getTopologyChanges());
+        Assert.assertEquals(Arrays.asList("D1-T1", "D1-T2", "D3-T1"), changed.getRouts());
+        Assert.assertEquals(2.0, changed.copyTopology().getWeight("D1-T1"), 0.0);
+    }
+
+    @Test
+    public void testIgnoresMismatchedTopologySnapshot() throws Exception {
+        Path snapshot = folder.getRoot().toPath().resolve("topology.bin");
+        buildDataSource("D1-T1", "D1-T2").saveTopology(snapshot);
+
+        DynamicRoutingDataSource.Builder builder = new DynamicRoutingDataSource.Builder().loadTopology(snapshot)
+                .addHashingAlgorithm(ConsistentHash.initXxHash64Hashing());
+        for (String rout : new String[] { "D1-T1", "D2-T1" }) {
+            builder.addDataSource(rout, Arrays.asList(master(rout), slave(rout)));
+        }
+        DynamicRoutingDataSource restored = builder.build();
+        Assert.assertEquals(Arrays.asList("D1-T1", "D2-T1"), restored.getRouts());
+        DynamicRoutingDataSource rebuilt = new DynamicRoutingDataSource.Builder()
+                .addHashingAlgorithm(ConsistentHash.initXxHash64Hashing())
+                .addDataSource("D1-T1", Arrays.asList(master("D1-T1"), slave("D1-T1")))
+                .addDataSource("D2-T1", Arrays.asList(master("D2-T1"), slave("D2-T1"))).build();
+
+        for (int key = 0; key < 1000; key++) {
+            restored.setKey("key" + key, true);
+            rebuilt.setKey("key" + key, true);
+            Assert.assertEquals(rebuilt.getKey(), restored.getKey());
+        }
+        restored.removeKey(null);
+        rebuilt.removeKey(null);
+    }
+
+    private DynamicRoutingDataSource buildDataSource(String... routs) {
+        DynamicRoutingDataSource.Builder builder = new DynamicRoutingDataSource.Builder();
+        for (String rout : routs) {
+            builder.addDataSource(rout, Arrays.asList(master(rout), slave(rout)));
+        }
+        return builder.build();
+    }
+
+    private Object master(String rout) {
+        DataSource dataSource = Mockito.mock(DataSource.class);
+        masters.put(rout, dataSource);
+        return dataSource;
+    }
+
+    private Object slave(String rout) {
+        DataSource dataSource = Mockito.mock(DataSource.class);
+        slaves.put(rout, dataSource);
+        return dataSource;
+    }
+
+    private static String rout(String lookupKey) {
+        return lookupKey.substring(0, lookupKey.lastIndexOf('-'));
+    }
+}
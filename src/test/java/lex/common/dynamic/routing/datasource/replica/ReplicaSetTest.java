@@ -0,0 +1,84 @@
+package lex.common.dynamic.routing.datasource.replica;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class ReplicaSetTest {
+    private DataSource[] replicas = new DataSource[3];
+    private int[] hits = new int[3];
+
+    @Test
+    public void testRoundRobin() throws SQLException {
+        ReplicaSet replicaSet = buildReplicaSet(ReplicaSelector.roundRobin());
+        for (int count = 0; count < 300; count++) {
+            replicaSet.getConnection();
+        }
+        Assert.assertArrayEquals(new int[] { 100, 100, 100 }, hits);
+    }
+
+    @Test
+    public void testWeighted() throws SQLException {
+        ReplicaSet replicaSet = buildReplicaSet(ReplicaSelector.weighted());
+        replicaSet.setWeights(1, 0, 3);
+        for (int count = 0; count < 400; count++) {
+            replicaSet.getConnection();
+        }
+        Assert.assertArrayEquals(new int[] { 100, 0, 300 }, hits);
+    }
+
+    @Test
+    public void testLeastOutstanding() throws SQLException {
+        ReplicaSet replicaSet = buildReplicaSet(ReplicaSelector.leastOutstanding());
+        List<Connection> connections = new ArrayList<>();
+        for (int count = 0; count < 30; count++) {
+            connections.add(replicaSet.getConnection());
+        }
+        Assert.assertArrayEquals(new int[] { 10, 10, 10 }, hits);
+        Assert.assertEquals(10, replicaSet.outstanding(0));
+
+        for (Connection connection : connections) {
+            connection.close();
+            connection.close();
+        }
+        for (int index = 0; index < replicas.length; index++) {
+            Assert.assertEquals(0, replicaSet.outstanding(index));
+        }
+    }
+
+    @Test
+    public void testPowerOfTwoChoices() throws SQLException {
+        ReplicaSet replicaSet = buildReplicaSet(ReplicaSelector.powerOfTwoChoices());
+        List<Connection> connections = new ArrayList<>();
+        for (int count = 0; count < 300; count++) {
+            connections.add(replicaSet.getConnection());
+        }
+        for (int index = 0; index < replicas.length; index++) {
+            Assert.assertTrue(hits[index] > 50);
+        }
+
+        for (Connection connection : connections) {
+            connection.close();
+        }
+        Assert.assertEquals(0, replicaSet.outstanding(0) + replicaSet.outstanding(1) + replicaSet.outstanding(2));
+    }
+
+    private ReplicaSet buildReplicaSet(ReplicaSelector selector) throws SQLException {
+        for (int index = 0; index < replicas.length; index++) {
+            int replica = index;
+            replicas[index] = Mockito.mock(DataSource.class);
+            Mockito.when(replicas[index].getConnection()).thenAnswer(invocation -> {
+                hits[replica]++;
+                return Mockito.mock(Connection.class);
+            });
+        }
+        return new ReplicaSet(replicas, selector);
+    }
+}
@@ -0,0 +1,154 @@
+package lex.common.dynamic.routing.datasource.scatter;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import lex.common.dynamic.routing.datasource.DynamicRoutingDataSource;
+
+public class ScatterGatherTest {
+    private static final List<String> ROUTS = Arrays.asList("D1-T1", "D1-T2", "D2-T1", "D2-T2", "D3-T1");
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+    private final Map<DataSource, String> masters = new HashMap<>();
+    private final Map<DataSource, String> slaves = new HashMap<>();
+    private final DynamicRoutingDataSource dataSource = buildDataSource();
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testGatherAllConcatenates() throws Exception {
+        ScatterGather scatterGather = new ScatterGather(dataSource, executor, 4);
+
+        List<String> rows = scatterGather.gatherAll(true, (rout, target) -> {
+            Assert.assertEquals(rout, masters.get(target));
+            return Collections.singletonList(rout);
+        }, ResultMerger.concat());
+
+        Collections.sort(rows);
+        Assert.assertEquals(ROUTS, rows);
+    }
+
+    @Test
+    public void testGatherSelectedRoutsFromSlaves() throws Exception {
+        ScatterGather scatterGather = new ScatterGather(dataSource, executor, 2);
+
+        List<String> rows = scatterGather.gather(rout -> rout.startsWith("D2"), false, (rout, target) -> {
+            Assert.assertEquals(rout, slaves.get(target));
+            return Collections.singletonList(rout);
+        }, ResultMerger.concat());
+
+        Collections.sort(rows);
+        Assert.assertEquals(Arrays.asList("D2-T1", "D2-T2"), rows);
+    }
+
+    @Test
+    public void testSortedAndTopN() throws Exception {
+        ScatterGather scatterGather = new ScatterGather(dataSource, executor, 3);
+        ShardQuery<Integer> query = (rout, target) -> {
+            int shard = ROUTS.indexOf(rout);
+            return Arrays.asList(shard, shard + 10, shard + 20);
+        };
+
+        List<Integer> sorted = scatterGather.gatherAll(true, query, ResultMerger.sorted(Comparator.naturalOrder()));
+        Assert.assertEquals(15, sorted.size());
+        for (int index = 1; index < sorted.size(); index++) {
+            Assert.assertTrue(sorted.get(index - 1) <= sorted.get(index));
+        }
+
+        List<Integer> top = scatterGather.gatherAll(true, query,
+                ResultMerger.topN(Comparator.<Integer> naturalOrder().reversed(), 3));
+        Assert.assertEquals(Arrays.asList(24, 23, 22), top);
+    }
+
+    @Test
+    public void testSortedMergeIsStable() {
+        ResultMerger<String> merger = ResultMerger.sorted(Comparator.comparing(row -> row.charAt(0)));
+        merger.accept("D1-T1", Arrays.asList("a1", "c1", "c1'"));
+        merger.accept("D1-T2", Collections.emptyList());
+        merger.accept("D2-T1", Arrays.asList("a2", "b2", "c2"));
+        merger.accept("D2-T2", Arrays.asList("b3", "d3"));
+
+        Assert.assertEquals(Arrays.asList("a1", "a2", "b2", "b3", "c1", "c1'", "c2", "d3"), merger.result());
+        Assert.assertTrue(ResultMerger.sorted(Comparator.<String> naturalOrder()).result().isEmpty());
+    }
+
+    @Test
+    public void testBoundedParallelism() throws Exception {
+        ScatterGather scatterGather = new ScatterGather(dataSource, executor, 2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<String> rows = scatterGather.gatherAll(true, (rout, target) -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            return Collections.singletonList(rout);
+        }, ResultMerger.concat());
+
+        Assert.assertEquals(ROUTS.size(), rows.size());
+        Assert.assertTrue(maxRunning.get() <= 2);
+    }
+
+    @Test
+    public void testQueriesRouteThroughTheirShard() throws Exception {
+        ScatterGather scatterGather = new ScatterGather(dataSource, executor, 4);
+
+        List<String> rows = scatterGather.gatherAll(false, (rout, target) -> {
+            Assert.assertEquals(rout + "-slave", dataSource.getKey());
+            return Collections.singletonList(rout);
+        }, ResultMerger.concat());
+
+        Assert.assertEquals(ROUTS.size(), rows.size());
+    }
+
+    @Test(expected = SQLException.class)
+    public void testFailurePropagates() throws Exception {
+        ScatterGather scatterGather = new ScatterGather(dataSource, executor, 2);
+
+        scatterGather.gatherAll(true, (rout, target) -> {
+            if ("D2-T1".equals(rout)) {
+                throw new SQLException("shard down");
+            }
+            return Collections.singletonList(rout);
+        }, ResultMerger.concat());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNonPositiveParallelism() {
+        new ScatterGather(dataSource, executor, 0);
+    }
+
+    private DynamicRoutingDataSource buildDataSource() {
+        DynamicRoutingDataSource.Builder builder = new DynamicRoutingDataSource.Builder();
+        for (String rout : ROUTS) {
+            DataSource master = Mockito.mock(DataSource.class);
+            DataSource slave = Mockito.mock(DataSource.class);
+            masters.put(master, rout);
+            slaves.put(slave, rout);
+            builder.addDataSource(rout, Arrays.asList(master, slave));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,77 @@
+package lex.common.dynamic.routing.key;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HotKeySamplerTest {
+    private final AtomicLong clock = new AtomicLong(0);
+
+    @Test
+    public void testReportsHotKeysAndLeaves() {
+        HotKeySampler sampler = new HotKeySampler(1.0, 3, 1000, 4, clock::get);
+        for (int round = 0; round < 1000; round++) {
+            sampler.record("tenant-hot", "D1-S1-");
+            if (round % 2 == 0) {
+                sampler.record("tenant-warm", "D1-S2-");
+            }
+            sampler.record("tenant" + round, round % 2 == 0 ? "D1-S1-" : "D1-S2-");
+        }
+
+        List<HotKey> hotKeys = sampler.hotKeys();
+        Assert.assertEquals(3, hotKeys.size());
+        Assert.assertEquals("tenant-hot", hotKeys.get(0).getKey());
+        Assert.assertEquals("D1-S1-", hotKeys.get(0).getLeaf());
+        Assert.assertTrue(hotKeys.get(0).getCount() >= 1000);
+        Assert.assertEquals(1000.0 / 2500, hotKeys.get(0).getShare(), 0.01);
+        Assert.assertEquals("tenant-warm", hotKeys.get(1).getKey());
+        Assert.assertTrue(sampler.estimate("tenant-warm") >= 500);
+
+        Map<String, Long> leaves = sampler.hotLeaves();
+        Assert.assertEquals("D1-S1-", leaves.keySet().iterator().next());
+        Assert.assertEquals(1500L, leaves.get("D1-S1-").longValue());
+        Assert.assertEquals(2500L, sampler.getTotal());
+    }
+
+    @Test
+    public void testWindowSlides() {
+        HotKeySampler sampler = new HotKeySampler(1.0, 2, 1000, 3, clock::get);
+        for (int round = 0; round < 100; round++) {
+            sampler.record("old", "D1-");
+        }
+        clock.set(2500);
+        for (int round = 0; round < 10; round++) {
+            sampler.record("new", "D2-");
+        }
+        Assert.assertEquals("old", sampler.hotKeys().get(0).getKey());
+
+        clock.set(3000);
+        sampler.record("new", "D2-");
+        Assert.assertEquals("new", sampler.hotKeys().get(0).getKey());
+        Assert.assertEquals(0, sampler.estimate("old"));
+        Assert.assertEquals(11L, sampler.getTotal());
+
+        clock.set(10000);
+        Assert.assertTrue(sampler.hotKeys().isEmpty());
+        Assert.assertTrue(sampler.hotLeaves().isEmpty());
+    }
+
+    @Test
+    public void testSamplingScalesEstimates() {
+        HotKeySampler sampler = new HotKeySampler(0.25, 1, 1000, 1, clock::get);
+        for (int round = 0; round < 40000; round++) {
+            sampler.record("hot", "D1-");
+        }
+        Assert.assertEquals(40000, sampler.estimate("hot"), 2000);
+        Assert.assertEquals(40000, sampler.getTotal(), 2000);
+        Assert.assertEquals(1.0, sampler.hotKeys().get(0).getShare(), 1e-9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsSamplingRateAboveOne() {
+        new HotKeySampler(1.5, 1, 1000, 1);
+    }
+}
@@ -0,0 +1,58 @@
+package lex.common.dynamic.routing.key;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RoutingContextTest {
+    private final Object holder = new Object();
+    private final Object other = new Object();
+
+    @Test
+    public void testNestedContextsAreRestored() throws Exception {
+        Assert.assertNull(RoutingContext.current());
+        new RoutingContext(holder, "a", "D1-master").run(() -> {
+            Assert.assertEquals("D1-master", RoutingContext.lookupKey(holder));
+            Assert.assertNull(RoutingContext.lookupKey(other));
+            String inner = new RoutingContext(other, "b", "D2-slave").supply(() -> {
+                Assert.assertEquals("D1-master", RoutingContext.lookupKey(holder));
+                return RoutingContext.lookupKey(other);
+            });
+            Assert.assertEquals("D2-slave", inner);
+            Assert.assertNull(RoutingContext.lookupKey(other));
+        });
+        Assert.assertNull(RoutingContext.current());
+
+        try {
+            new RoutingContext(holder, "a", "D1-master").call(() -> {
+                throw new IllegalStateException();
+            });
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertNull(RoutingContext.current());
+        }
+    }
+
+    @Test
+    public void testPropagatesIntoExecutors() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            String key = new RoutingContext(holder, "a", "D1-master").call(() -> CompletableFuture
+                    .supplyAsync(() -> RoutingContext.lookupKey(holder), RoutingContext.propagating(executor))
+                    .thenApplyAsync(found -> found + "," + RoutingContext.lookupKey(holder),
+                            RoutingContext.propagating(executor))
+                    .get());
+            Assert.assertEquals("D1-master,D1-master", key);
+
+            Assert.assertNull(executor.submit(() -> RoutingContext.current()).get());
+            Assert.assertEquals("D1-master", new RoutingContext(holder, "a", "D1-master")
+                    .call(() -> executor.submit(RoutingContext.wrap(() -> RoutingContext.lookupKey(holder)))).get());
+            Assert.assertNull(executor.submit(() -> RoutingContext.current()).get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package lex.common.dynamic.routing.tree;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import lex.common.consistent.hashing.ConsistentHash;
+
+public class DistributionAnalyzerTest {
+    private final String[] leaves = { "D1-T1-S1", "D1-T1-S2", "D1-T2-S1", "D2-T1-S1", "D2-T2-S1", "D2-T2-S2" };
+    private final DistributionAnalyzer analyzer = new DistributionAnalyzer(200000);
+
+    @Test
+    public void testAnalyzeCountsEveryKey() {
+        DynamicHashingTree tree = buildTree(67);
+        DistributionReport report = analyzer.analyze(tree);
+
+        Assert.assertEquals(leaves.length, report.getLoads().size());
+        long total = 0;
+        for (long load : report.getLoads().values()) {
+            Assert.assertTrue(load > 0);
+            total += load;
+        }
+        Assert.assertEquals(200000, total);
+        Assert.assertTrue(report.getMaxToMean() >= 1);
+        Assert.assertTrue(report.getFootprint() > buildTree(1).leaves().size() * 48);
+        Assert.assertTrue(report.getFootprint() > analyzer.analyze(buildTree(13)).getFootprint());
+    }
+
+    @Test
+    public void testRemapFractionOfRemovedLeaf() {
+        DynamicHashingTree tree = buildTree(67);
+        RoutingMetrics metrics = tree.enableMetrics();
+        tree.enableRoutingCache(1024);
+        long removedLoad = analyzer.analyze(tree).getLoads().get("D1-T2-S1-");
+
+        double moved = analyzer.remapFraction(tree, t -> t.removeLeaf("D1-T2-S1"));
+        Assert.assertEquals(removedLoad / 200000.0, moved, 1e-9);
+        Assert.assertEquals(leaves.length, tree.leaves().size());
+        Assert.assertTrue(metrics.snapshot().getLeafHits().isEmpty());
+        Assert.assertEquals(0, metrics.snapshot().getTopologyChanges());
+        Assert.assertEquals(0, tree.getRoutingCache().getMissCount());
+
+        tree.removeLeaf("D1-T2-S1");
+        moved = analyzer.remapFraction(tree, t -> t.addLeaf("D1-T2-S1"));
+        Assert.assertEquals(removedLoad / 200000.0, moved, 1e-9);
+        Assert.assertEquals(leaves.length - 1, tree.leaves().size());
+    }
+
+    private DynamicHashingTree buildTree(int numberOfReplications) {
+        DynamicHashingTree tree = new DynamicHashingTree(ConsistentHash.initXxHash64Hashing(), numberOfReplications);
+        for (String leaf : leaves) {
+            tree.addLeaf(leaf);
+        }
+        return tree;
+    }
+}
@@ -0,0 +1,341 @@
+package lex.common.dynamic.routing.tree;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import lex.common.consistent.hashing.BoundedLoadTracker;
+import lex.common.consistent.hashing.ConsistentHash;
+import lex.common.consistent.hashing.HashingAlgorithm;
+import lex.common.constant.TreeConstant;
+
+public class DynamicHashingTreeTest {
+    private final String[] leaves = { "D1-T1-S1", "D1-T1-S2", "D1-T2-S1", "D2-T1-S1", "D2-T2-S1", "D2-T2-S2" };
+
+    @Test
+    public void testSingleHashReachesEveryLeaf() {
+        DynamicHashingTree tree = buildTree(LookupMode.SINGLE_HASH);
+
+        Set<String> found = new HashSet<>();
+        for (int key = 0; key < 10000; key++) {
+            String leaf = tree.findLeaf("key" + key);
+            Assert.assertEquals(leaf, tree.findLeaf("key" + key));
+            found.add(leaf);
+        }
+
+        Assert.assertEquals(leaves.length, found.size());
+        for (String leaf : leaves) {
+            Assert.assertTrue(found.contains(leaf + TreeConstant.DEFAULT_PATH_SEPARATOR));
+        }
+    }
+
+    @Test
+    public void testPerLevelHashKeepsPlacements() {
+        DynamicHashingTree tree = buildTree(LookupMode.PER_LEVEL_HASH);
+
+        // Leaves of the original per-level MD5 tree for key0 to key11.
+        String[] expected = { "D2-T1-S1-", "D2-T1-S1-", "D2-T2-S2-", "D2-T1-S1-", "D1-T2-S1-", "D2-T1-S1-",
+                "D2-T2-S2-", "D1-T1-S1-", "D1-T2-S1-", "D2-T1-S1-", "D2-T2-S1-", "D2-T1-S1-" };
+        for (int key = 0; key < expected.length; key++) {
+            Assert.assertEquals(expected[key], tree.findLeaf("key" + key));
+        }
+
+        // Keys per leaf of the original tree for key0 to key999.
+        Map<String, Integer> counts = new TreeMap<>();
+        for (int key = 0; key < 1000; key++) {
+            counts.merge(tree.findLeaf("key" + key), 1, Integer::sum);
+        }
+        Assert.assertEquals("{D1-T1-S1-=79, D1-T1-S2-=189, D1-T2-S1-=306, D2-T1-S1-=213, D2-T2-S1-=131, D2-T2-S2-=82}",
+                counts.toString());
+    }
+
+    @Test
+    public void testRemoveLeaf() {
+        DynamicHashingTree tree = buildTree(LookupMode.SINGLE_HASH);
+        tree.removeLeaf("D2-T2-S2");
+
+        for (int key = 0; key < 10000; key++) {
+            Assert.assertNotEquals("D2-T2-S2-", tree.findLeaf("key" + key));
+        }
+    }
+
+    @Test
+    public void testLeafKeysArePrecomputed() {
+        DynamicHashingTree tree = buildTree(LookupMode.PER_LEVEL_HASH);
+
+        TreeNode leaf = tree.findLeafNode("canyouseeme");
+        Assert.assertSame(leaf.getPath(), tree.findLeaf("canyouseeme"));
+        Assert.assertSame(leaf.getMasterKey(), tree.findLeafNode("canyouseeme").getMasterKey());
+        Assert.assertEquals(leaf.getPath() + "master", leaf.getMasterKey());
+        Assert.assertEquals(leaf.getPath() + "slave", leaf.getSlaveKey());
+    }
+
+    @Test
+    public void testLookupsDuringTopologyChanges() throws InterruptedException {
+        DynamicHashingTree tree = buildTree(LookupMode.SINGLE_HASH);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> partial = new AtomicReference<>();
+
+        Thread reader = new Thread(() -> {
+            int key = 0;
+            while (running.get()) {
+                String leaf = tree.findLeaf("key" + key++);
+                if (TreeKeeper.splitKey(leaf).size() != 3) {
+                    partial.set(leaf);
+                }
+            }
+        });
+        reader.start();
+
+        for (int round = 0; round < 200; round++) {
+            tree.addLeaf("D3-T1-S" + round);
+            tree.removeLeaf("D2-T2-S2");
+            tree.addLeaf("D2-T2-S2");
+            tree.removeLeaf("D3-T1-S" + round);
+        }
+        running.set(false);
+        reader.join();
+
+        Assert.assertNull(partial.get());
+        Assert.assertTrue(TreeKeeper.verifyLeaf(TreeKeeper.splitKey("D2-T2-S2"), tree.root()));
+        Assert.assertFalse(TreeKeeper.verifyLeaf(TreeKeeper.splitKey("D3-T1-S0"), tree.root()));
+    }
+
+    @Test
+    public void testBoundedLoadsSpreadHotKey() {
+        DynamicHashingTree tree = buildTree(LookupMode.PER_LEVEL_HASH);
+        tree.enableBoundedLoads(0.25);
+        BoundedLoadTracker<String> tracker = tree.getLoadTracker();
+
+        List<TreeNode> acquired = new ArrayList<>();
+        for (int count = 0; count < 60; count++) {
+            acquired.add(tree.acquireLeaf("hot tenant"));
+        }
+
+        Assert.assertEquals(60, tracker.load(""));
+        Assert.assertTrue(tracker.load("D1-") <= 38);
+        Assert.assertTrue(tracker.load("D2-") <= 38);
+        Assert.assertEquals(60, tracker.load("D1-") + tracker.load("D2-"));
+        Assert.assertTrue(new HashSet<>(acquired).size() > 1);
+
+        for (TreeNode leaf : acquired) {
+            tree.releaseLeaf(leaf);
+        }
+        Assert.assertEquals(0, tracker.load(""));
+        Assert.assertEquals(0, tracker.load(acquired.get(0).getPath()));
+    }
+
+    @Test
+    public void testBoundedLoadsForgetRemovedNodes() {
+        DynamicHashingTree tree = buildTree(LookupMode.PER_LEVEL_HASH);
+        tree.enableBoundedLoads(0.25);
+        BoundedLoadTracker<String> tracker = tree.getLoadTracker();
+        for (int key = 0; key < 1000; key++) {
+            tree.acquireLeaf("key" + key);
+        }
+        int tracked = tracker.size();
+
+        for (int round = 0; round < 50; round++) {
+            tree.addLeaf("D3-T" + round + "-S1");
+            tree.releaseLeaf(tree.acquireLeaf("D3 tenant " + round));
+            tree.removeLeaf("D3-T" + round);
+        }
+        tree.removeLeaf("D2");
+
+        Assert.assertEquals(0, tracker.load("D3-"));
+        Assert.assertEquals(0, tracker.load("D2-"));
+        Assert.assertEquals(0, tracker.load("D2-T1-S1-"));
+        Assert.assertTrue(tracker.load("D1-") > 0);
+        Assert.assertTrue(tracker.size() < tracked);
+    }
+
+    @Test
+    public void testHashingEnginePerLevel() {
+        DynamicHashingTree tree = new DynamicHashingTree(ConsistentHash.initMd5Hashing(),
+                TreeConstant.DEFAULT_PATH_SEPARATOR, 13, LookupMode.SINGLE_HASH);
+        tree.setHashingEngine(0, HashingEngine.JUMP);
+        tree.setHashingEngine(1, HashingEngine.MAGLEV);
+        for (String leaf : leaves) {
+            tree.addLeaf(leaf);
+        }
+
+        Set<String> found = new HashSet<>();
+        for (int key = 0; key < 10000; key++) {
+            found.add(tree.findLeaf("key" + key));
+        }
+        Assert.assertEquals(leaves.length, found.size());
+
+        tree.removeLeaf("D1-T1-S1");
+        for (int key = 0; key < 10000; key++) {
+            Assert.assertNotEquals("D1-T1-S1-", tree.findLeaf("key" + key));
+        }
+    }
+
+    @Test
+    public void testAdaptiveEngine() {
+        DynamicHashingTree tree = new DynamicHashingTree(ConsistentHash.initMd5Hashing());
+        tree.setDefaultHashingEngine(HashingEngine.ADAPTIVE);
+        tree.setRendezvousThreshold(1);
+        for (String leaf : leaves) {
+            tree.addLeaf(leaf);
+        }
+
+        Set<String> found = new HashSet<>();
+        for (int key = 0; key < 10000; key++) {
+            found.add(tree.findLeaf("key" + key));
+        }
+        Assert.assertEquals(leaves.length, found.size());
+    }
+
+    @Test
+    public void testAdaptiveSwitchMovesOnlyAddedLeafKeys() {
+        DynamicHashingTree tree = new DynamicHashingTree(ConsistentHash.initMd5Hashing());
+        tree.setDefaultHashingEngine(HashingEngine.ADAPTIVE);
+        tree.setRendezvousThreshold(4);
+        for (int shard = 0; shard < 4; shard++) {
+            tree.addLeaf("D" + shard);
+        }
+        DynamicHashingTree before = tree.copy();
+
+        tree.addLeaf("D4");
+        int moved = 0;
+        for (int key = 0; key < 10000; key++) {
+            String leaf = tree.findLeaf("key" + key);
+            if (!leaf.equals(before.findLeaf("key" + key))) {
+                Assert.assertEquals("D4-", leaf);
+                moved++;
+            }
+        }
+        Assert.assertEquals(2000, moved, 300);
+    }
+
+    @Test
+    public void testFindLeavesMatchesFindLeaf() {
+        String[] keys = new String[BatchRouter.PARALLEL_THRESHOLD * 2 + 7];
+        for (int key = 0; key < keys.length; key++) {
+            keys[key] = "key" + key;
+        }
+
+        HashingAlgorithm[] algorithms = { ConsistentHash.initXxHash64Hashing(), ConsistentHash.initMd5Hashing() };
+        for (HashingAlgorithm algorithm : algorithms) {
+            for (LookupMode lookupMode : LookupMode.values()) {
+                for (HashingEngine engine : HashingEngine.values()) {
+                    DynamicHashingTree tree = new DynamicHashingTree(algorithm, TreeConstant.DEFAULT_PATH_SEPARATOR,
+                            13, lookupMode);
+                    tree.setDefaultHashingEngine(engine);
+                    Assert.assertNull(tree.findLeafNodes(new String[] { "key" })[0]);
+                    for (String leaf : leaves) {
+                        tree.addLeaf(leaf);
+                    }
+
+                    TreeNode[] found = tree.findLeafNodes(keys);
+                    for (int key = 0; key < keys.length; key++) {
+                        Assert.assertSame(tree.findLeafNode(keys[key]), found[key]);
+                    }
+
+                    Map<String, List<String>> grouped = tree.findLeaves("a", "b", "c", "a");
+                    for (Map.Entry<String, List<String>> entry : grouped.entrySet()) {
+                        for (String key : entry.getValue()) {
+                            Assert.assertEquals(tree.findLeaf(key), entry.getKey());
+                        }
+                    }
+                    Assert.assertEquals(2, grouped.get(tree.findLeaf("a")).stream().filter("a"::equals).count());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAddLeavesSameAsAddingInOrder() {
+        List<String> paths = new ArrayList<>();
+        for (int leaf = 0; leaf < 3000; leaf++) {
+            paths.add("D" + leaf % 7 + "-T" + leaf % 31 + "-S" + leaf);
+        }
+
+        for (LookupMode lookupMode : LookupMode.values()) {
+            DynamicHashingTree sequential = new DynamicHashingTree(ConsistentHash.initMd5Hashing(),
+                    TreeConstant.DEFAULT_PATH_SEPARATOR, 67, lookupMode);
+            DynamicHashingTree bulk = new DynamicHashingTree(ConsistentHash.initMd5Hashing(),
+                    TreeConstant.DEFAULT_PATH_SEPARATOR, 67, lookupMode);
+            sequential.setHashingEngine(1, HashingEngine.JUMP);
+            bulk.setHashingEngine(1, HashingEngine.JUMP);
+
+            sequential.addLeaf(leaves[0]);
+            bulk.addLeaf(leaves[0]);
+            for (String path : paths) {
+                sequential.addLeaf(path);
+            }
+            long version = bulk.getVersion();
+            bulk.addLeaves(paths);
+            Assert.assertEquals(version + 1, bulk.getVersion());
+            bulk.addLeaves(paths.subList(0, 10));
+
+            Assert.assertEquals(sequential.leaves().size(), bulk.leaves().size());
+            for (int key = 0; key < 10000; key++) {
+                Assert.assertEquals(sequential.findLeaf("key" + key), bulk.findLeaf("key" + key));
+            }
+        }
+    }
+
+    @Test
+    public void testWeightedLeavesShareByWeight() {
+        DynamicHashingTree tree = new DynamicHashingTree(ConsistentHash.initMd5Hashing(), 100);
+        tree.addLeaf("D1-S1");
+        tree.addLeaf("D1-S2", 3.0);
+        Assert.assertEquals(3.0, tree.getWeight("D1-S2"), 1e-9);
+        Assert.assertEquals(1.0, tree.getWeight("D1-S1"), 1e-9);
+
+        int heavy = 0;
+        for (int key = 0; key < 20000; key++) {
+            if (tree.findLeaf("key" + key).equals("D1-S2-")) {
+                heavy++;
+            }
+        }
+        Assert.assertEquals(0.75, heavy / 20000.0, 0.08);
+
+        DynamicHashingTree unweighted = new DynamicHashingTree(ConsistentHash.initMd5Hashing(), 100);
+        unweighted.addLeaf("D1-S1");
+        unweighted.addLeaf("D1-S2");
+        DynamicHashingTree before = tree.copy();
+        TopologyDiff diff = tree.newChangeset().setWeight("D1-S2", 1.0).commit();
+        for (MovedRange range : diff.getRanges()) {
+            Assert.assertEquals("D1-S2-", range.getSource());
+        }
+        for (int key = 0; key < 20000; key++) {
+            Assert.assertEquals(unweighted.findLeaf("key" + key), tree.findLeaf("key" + key));
+        }
+        Assert.assertEquals(3.0, before.getWeight("D1-S2"), 1e-9);
+    }
+
+    @Test
+    public void testWeightsNeedRingEngine() {
+        DynamicHashingTree tree = new DynamicHashingTree(ConsistentHash.initMd5Hashing());
+        tree.setHashingEngine(0, HashingEngine.JUMP);
+        tree.addLeaf("D1");
+        long version = tree.getVersion();
+        try {
+            tree.addLeaf("D2", 2.0);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(version, tree.getVersion());
+            Assert.assertEquals(1, tree.leaves().size());
+        }
+    }
+
+    private DynamicHashingTree buildTree(LookupMode lookupMode) {
+        DynamicHashingTree tree = new DynamicHashingTree(ConsistentHash.initMd5Hashing(),
+                TreeConstant.DEFAULT_PATH_SEPARATOR, 13, lookupMode);
+        for (String leaf : leaves) {
+            tree.addLeaf(leaf);
+        }
+        return tree;
+    }
+}
@@ -0,0 +1,94 @@
+package lex.common.dynamic.routing.tree;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import lex.common.consistent.hashing.ConsistentHash;
+import lex.common.consistent.hashing.HashingAlgorithm;
+import lex.common.consistent.hashing.XxHash64HashingAlgorithm;
+import lex.common.constant.TreeConstant;
+
+public class MigrationPlannerTest {
+    private final String[] leaves = { "D1-T1-S1", "D1-T1-S2", "D1-T2-S1", "D2-T1-S1", "D2-T2-S1" };
+    private final HashingAlgorithm algorithm = ConsistentHash.initMd5Hashing();
+
+    @Test
+    public void testPlanMatchesRouting() {
+        DynamicHashingTree tree = buildTree(LookupMode.PER_LEVEL_HASH);
+        DynamicHashingTree before = tree.copy();
+        tree.addLeaf("D1-T1-S3");
+        tree.addLeaf("D2-T3-S1");
+        Assert.assertEquals(leaves.length, before.leaves().size());
+
+        MigrationPlan plan = MigrationPlanner.plan(before, tree);
+        Assert.assertFalse(plan.isEmpty());
+        for (Map.Entry<String, Map<String, List<MovedRange>>> source : plan.getMoves().entrySet()) {
+            for (Map.Entry<String, List<MovedRange>> target : source.getValue().entrySet()) {
+                for (MovedRange range : target.getValue()) {
+                    Assert.assertEquals(source.getKey(), range.getSource());
+                    Assert.assertEquals(target.getKey(), range.getTarget());
+                }
+                Assert.assertEquals(target.getValue(), plan.getRanges(source.getKey(), target.getKey()));
+            }
+        }
+
+        Predicate<String> movedOffS1 = plan.movedKeys("D1-T1-S1-");
+        int movedKeysOffS1 = 0;
+        for (int key = 0; key < 20000; key++) {
+            String value = "key" + key;
+            String source = before.findLeaf(value);
+            String target = tree.findLeaf(value);
+            Assert.assertEquals(!source.equals(target), plan.isMoved(value));
+            Assert.assertEquals(!source.equals(target), plan.movedKeys().test(value));
+            Assert.assertEquals(source.equals(target) ? null : target, plan.targetOf(value));
+            Assert.assertEquals(source.equals("D1-T1-S1-") && !source.equals(target), movedOffS1.test(value));
+            if (movedOffS1.test(value)) {
+                movedKeysOffS1++;
+            }
+            if (!source.equals(target)) {
+                Assert.assertTrue(target.equals("D1-T1-S3-") || target.equals("D2-T3-S1-"));
+            }
+        }
+        Assert.assertTrue(movedKeysOffS1 > 0);
+        Assert.assertEquals(movedKeysOffS1 / 20000.0, plan.movedFraction("D1-T1-S1-"), 0.01);
+        Assert.assertEquals(0.0, plan.movedFraction("D9-T1-S1-"), 0.0);
+        Assert.assertTrue(plan.getRanges("D1-T1-S1-", "D2-T3-S1-").isEmpty());
+    }
+
+    @Test
+    public void testCopyIsUnaffectedByChanges() {
+        DynamicHashingTree tree = buildTree(LookupMode.PER_LEVEL_HASH);
+        DynamicHashingTree copy = tree.copy();
+        tree.removeLeaf("D2");
+        copy.addLeaf("D3-T1-S1");
+
+        Assert.assertEquals(3, tree.leaves().size());
+        Assert.assertEquals(leaves.length + 1, copy.leaves().size());
+        Assert.assertTrue(MigrationPlanner.plan(tree, tree.copy()).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsDifferentLookupModes() {
+        MigrationPlanner.plan(buildTree(LookupMode.PER_LEVEL_HASH), buildTree(LookupMode.SINGLE_HASH));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsDifferentlySeededAlgorithms() {
+        DynamicHashingTree before = new DynamicHashingTree(new XxHash64HashingAlgorithm(1L));
+        DynamicHashingTree after = new DynamicHashingTree(new XxHash64HashingAlgorithm(2L));
+        MigrationPlanner.plan(before, after);
+    }
+
+    private DynamicHashingTree buildTree(LookupMode lookupMode) {
+        DynamicHashingTree tree = new DynamicHashingTree(algorithm, TreeConstant.DEFAULT_PATH_SEPARATOR, 13,
+                lookupMode);
+        for (String leaf : leaves) {
+            tree.addLeaf(leaf);
+        }
+        return tree;
+    }
+}
@@ -0,0 +1,41 @@
+package lex.common.dynamic.routing.tree;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import lex.common.consistent.hashing.ConsistentHash;
+import lex.common.consistent.hashing.HashingAlgorithm;
+
+public class OffHeapHashingTreeTest {
+    private final String[] leaves = { "D1-T1-S1", "D1-T1-S2", "D1-T2-S1", "D2-T1-S1", "D2-T2-S1", "D2-T2-S2" };
+    private final HashingAlgorithm algorithm = ConsistentHash.initMd5Hashing();
+
+    @Test
+    public void testRoutesLikeTheHeapTree() {
+        DynamicHashingTree tree = new DynamicHashingTree(algorithm);
+        OffHeapHashingTree offHeap = new OffHeapHashingTree(algorithm);
+        Assert.assertEquals("", offHeap.findLeaf("key"));
+
+        offHeap.addLeaves(Arrays.asList(leaves));
+        for (String leaf : leaves) {
+            tree.addLeaf(leaf);
+        }
+        assertSameRoutes(tree, offHeap);
+        Assert.assertTrue(offHeap.getTopology().capacity() > 6 * 13 * 12);
+
+        tree.removeLeaf("D1-T2-S1");
+        offHeap.removeLeaf("D1-T2-S1");
+        tree.addLeaf("D3-T1-S1");
+        offHeap.addLeaf("D3-T1-S1");
+        assertSameRoutes(tree, offHeap);
+        assertSameRoutes(tree, OffHeapHashingTree.of(tree, "-"));
+    }
+
+    private void assertSameRoutes(DynamicHashingTree tree, OffHeapHashingTree offHeap) {
+        for (int key = 0; key < 10000; key++) {
+            Assert.assertEquals(tree.findLeaf("key" + key), offHeap.findLeaf("key" + key));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package lex.common.dynamic.routing.tree;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import lex.common.consistent.hashing.ConsistentHash;
+
+public class RoutingCacheTest {
+
+    @Test
+    public void testHitsUntilTopologyChanges() {
+        DynamicHashingTree tree = new DynamicHashingTree(ConsistentHash.initXxHash64Hashing());
+        tree.enableRoutingCache(1024);
+        tree.addLeaf("D1-T1-S1");
+        tree.addLeaf("D1-T2-S1");
+
+        TreeNode leaf = tree.findLeafNode("tenant-1");
+        Assert.assertSame(leaf, tree.findLeafNode("tenant-1"));
+        RoutingCache cache = tree.getRoutingCache();
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+
+        long version = tree.getVersion();
+        tree.removeLeaf(leaf.getPath().substring(0, leaf.getPath().length() - 1));
+        Assert.assertEquals(version + 1, tree.getVersion());
+        Assert.assertNotSame(leaf, tree.findLeafNode("tenant-1"));
+        Assert.assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testClockKeepsReferencedEntries() {
+        RoutingCache cache = new RoutingCache(RoutingCache.WAYS);
+        Assert.assertEquals(RoutingCache.WAYS, cache.capacity());
+        TreeNode leaf = new TreeNode("S1");
+        for (int key = 0; key < RoutingCache.WAYS; key++) {
+            cache.put("key" + key, leaf, 0);
+        }
+        Assert.assertSame(leaf, cache.get("key0", 0));
+        Assert.assertNull(cache.get("key0", 1));
+
+        cache.put("key" + RoutingCache.WAYS, leaf, 0);
+        Assert.assertSame(leaf, cache.get("key0", 0));
+        Assert.assertSame(leaf, cache.get("key" + RoutingCache.WAYS, 0));
+        Assert.assertNull(cache.get("key1", 0));
+    }
+}
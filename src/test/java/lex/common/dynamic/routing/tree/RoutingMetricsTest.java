@@ -0,0 +1,93 @@
+package lex.common.dynamic.routing.tree;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import lex.common.consistent.hashing.ConsistentHash;
+
+public class RoutingMetricsTest {
+
+    @Test
+    public void testHistogramQuantiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        histogram.record(-5);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(1001, snapshot.getCount());
+        Assert.assertEquals(1000, snapshot.getMax());
+        Assert.assertEquals(500, snapshot.getValueAt(0.5), 500 * 0.125);
+        Assert.assertEquals(990, snapshot.getValueAt(0.99), 990 * 0.125);
+        Assert.assertEquals(1000, snapshot.getValueAt(1.0));
+        Assert.assertEquals(0, snapshot.getValueAt(0.0));
+
+        for (long value : new long[] { 7, 8, 15, 16, 1000, 1L << 40, Long.MAX_VALUE }) {
+            int bucket = LatencyHistogram.bucket(value);
+            Assert.assertTrue(value <= LatencyHistogram.upperBound(bucket));
+            Assert.assertTrue(bucket == 0 || value > LatencyHistogram.upperBound(bucket - 1));
+        }
+
+        histogram.reset();
+        Assert.assertEquals(0, histogram.snapshot().getCount());
+    }
+
+    @Test
+    public void testTreeCountsLookupsAndChanges() {
+        DynamicHashingTree tree = new DynamicHashingTree(ConsistentHash.initMd5Hashing());
+        RoutingMetrics metrics = tree.enableMetrics();
+        Assert.assertSame(metrics, tree.enableMetrics());
+        tree.addLeaf("D1-T1");
+        tree.addLeaves(Arrays.asList("D1-T2", "D2-T1"));
+        tree.removeLeaf("D2-T1");
+
+        for (int key = 0; key < 1000; key++) {
+            TreeNode leaf = tree.findLeafNode("key" + key);
+            metrics.recordChoice(leaf, key % 4 != 0);
+        }
+
+        RoutingMetricsSnapshot snapshot = metrics.snapshot();
+        Assert.assertEquals(3, snapshot.getTopologyChanges());
+        Assert.assertEquals(1000, snapshot.getLookupLatency().getCount());
+        long hits = 0;
+        for (Map.Entry<String, Long> entry : snapshot.getLeafHits().entrySet()) {
+            Assert.assertTrue(entry.getKey().startsWith("D1-"));
+            hits += entry.getValue();
+            Assert.assertEquals(entry.getValue().longValue(), snapshot.getMasterHits().get(entry.getKey())
+                    + snapshot.getSlaveHits().get(entry.getKey()));
+        }
+        Assert.assertEquals(1000, hits);
+
+        metrics.reset();
+        Assert.assertTrue(metrics.snapshot().getLeafHits().isEmpty());
+    }
+
+    @Test
+    public void testJmxRegistration() throws Exception {
+        DynamicHashingTree tree = new DynamicHashingTree(ConsistentHash.initMd5Hashing());
+        RoutingMetrics metrics = tree.enableMetrics();
+        tree.addLeaf("D1-T1");
+        tree.findLeaf("key");
+
+        ObjectName name = metrics.register("test");
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            Assert.assertEquals(1L, server.getAttribute(name, "LookupCount"));
+            Assert.assertEquals(1L, server.getAttribute(name, "TopologyChanges"));
+            Assert.assertNotNull(server.getAttribute(name, "LeafHits"));
+            server.invoke(name, "reset", null, null);
+            Assert.assertEquals(0L, server.getAttribute(name, "LookupCount"));
+        } finally {
+            metrics.unregister();
+        }
+        Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+}
@@ -0,0 +1,82 @@
+package lex.common.dynamic.routing.tree;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import lex.common.consistent.hashing.ConsistentHash;
+import lex.common.consistent.hashing.HashingAlgorithm;
+import lex.common.constant.TreeConstant;
+
+public class TopologyChangesetTest {
+    private final String[] leaves = { "D1-T1-S1", "D1-T1-S2", "D1-T2-S1", "D2-T1-S1", "D2-T2-S1", "D2-T2-S2" };
+    private final HashingAlgorithm algorithm = ConsistentHash.initXxHash64Hashing();
+
+    @Test
+    public void testCommitPublishesOnceAndDiffsExactly() {
+        for (HashingAlgorithm algorithm : new HashingAlgorithm[] { ConsistentHash.initXxHash64Hashing(),
+                ConsistentHash.initMd5Hashing() }) {
+            assertDiffsExactly(algorithm);
+        }
+    }
+
+    private void assertDiffsExactly(HashingAlgorithm algorithm) {
+        DynamicHashingTree before = buildTree(algorithm, LookupMode.PER_LEVEL_HASH);
+        DynamicHashingTree sequential = buildTree(algorithm, LookupMode.PER_LEVEL_HASH);
+        DynamicHashingTree tree = buildTree(algorithm, LookupMode.PER_LEVEL_HASH);
+
+        long version = tree.getVersion();
+        TopologyDiff diff = tree.newChangeset().removeLeaf("D1-T2-S1").addLeaf("D3-T1-S1").addLeaf("D2-T2-S3")
+                .removeLeaf("D2-T1").commit();
+        Assert.assertEquals(version + 1, tree.getVersion());
+        sequential.removeLeaf("D1-T2-S1");
+        sequential.addLeaf("D3-T1-S1");
+        sequential.addLeaf("D2-T2-S3");
+        sequential.removeLeaf("D2-T1");
+
+        Assert.assertFalse(diff.isEmpty());
+        int moved = 0;
+        for (int key = 0; key < 20000; key++) {
+            String value = "key" + key;
+            Assert.assertEquals(sequential.findLeaf(value), tree.findLeaf(value));
+
+            MovedRange range = diff.find(algorithm.hashAsLong(value));
+            if (before.findLeaf(value).equals(tree.findLeaf(value))) {
+                Assert.assertNull(range);
+            } else {
+                Assert.assertEquals(before.findLeaf(value), range.getSource());
+                Assert.assertEquals(tree.findLeaf(value), range.getTarget());
+                moved++;
+            }
+        }
+        Assert.assertTrue(moved > 0);
+        Assert.assertEquals(moved / 20000.0, diff.movedFraction(), 0.01);
+    }
+
+    @Test
+    public void testDiffOfFirstLeaves() {
+        DynamicHashingTree tree = new DynamicHashingTree(algorithm);
+        TopologyDiff diff = tree.newChangeset().addLeaf("D1-T1-S1").commit();
+        Assert.assertEquals(1, diff.getRanges().size());
+        Assert.assertEquals("", diff.getRanges().get(0).getSource());
+        Assert.assertEquals(1.0, diff.movedFraction(), 1e-9);
+
+        DynamicHashingTree md5Tree = new DynamicHashingTree(ConsistentHash.initMd5Hashing());
+        Assert.assertEquals(1.0, md5Tree.newChangeset().addLeaf("D1-T1-S1").commit().movedFraction(), 1e-9);
+    }
+
+    @Test
+    public void testNoDiffWithoutRingRanges() {
+        DynamicHashingTree tree = buildTree(algorithm, LookupMode.SINGLE_HASH);
+        Assert.assertNull(tree.newChangeset().addLeaf("D3-T1-S1").commit());
+        Assert.assertEquals(leaves.length + 1, tree.leaves().size());
+    }
+
+    private DynamicHashingTree buildTree(HashingAlgorithm algorithm, LookupMode lookupMode) {
+        DynamicHashingTree tree = new DynamicHashingTree(algorithm, TreeConstant.DEFAULT_PATH_SEPARATOR, 13,
+                lookupMode);
+        for (String leaf : leaves) {
+            tree.addLeaf(leaf);
+        }
+        return tree;
+    }
+}
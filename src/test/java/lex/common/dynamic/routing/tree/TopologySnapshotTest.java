@@ -0,0 +1,105 @@
+package lex.common.dynamic.routing.tree;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import lex.common.consistent.hashing.ConsistentHash;
+import lex.common.consistent.hashing.HashingAlgorithm;
+import lex.common.constant.TreeConstant;
+
+public class TopologySnapshotTest {
+    private final String[] leaves = { "D1-T1-S1", "D1-T1-S2", "D1-T2-S1", "D2-T1-S1", "D2-T2-S1", "D2-T2-S2" };
+    private final HashingAlgorithm algorithm = ConsistentHash.initXxHash64Hashing();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFlatTopologyRoutesLikeTheTree() {
+        for (LookupMode lookupMode : LookupMode.values()) {
+            DynamicHashingTree tree = buildTree(lookupMode);
+            FlatTopology topology = new FlatTopology(TopologySnapshot.encode(tree, ByteBuffer::allocateDirect),
+                    algorithm);
+            Assert.assertEquals(1 + 2 + 4 + 6, topology.nodeCount());
+            for (int key = 0; key < 10000; key++) {
+                Assert.assertEquals(tree.findLeaf("key" + key), topology.findLeaf("key" + key));
+            }
+        }
+
+        DynamicHashingTree empty = new DynamicHashingTree(algorithm);
+        Assert.assertEquals("", new FlatTopology(TopologySnapshot.encode(empty, ByteBuffer::allocate), algorithm)
+                .findLeaf("key"));
+    }
+
+    @Test
+    public void testMappedSnapshotRestoresTheTree() throws Exception {
+        DynamicHashingTree tree = buildTree(LookupMode.PER_LEVEL_HASH);
+        Path file = folder.getRoot().toPath().resolve("topology.bin");
+        TopologySnapshot.write(tree, file);
+
+        FlatTopology topology = TopologySnapshot.map(file, algorithm);
+        DynamicHashingTree restored = new DynamicHashingTree(algorithm, TreeConstant.DEFAULT_PATH_SEPARATOR, 13,
+                LookupMode.PER_LEVEL_HASH);
+        TopologySnapshot.restore(topology, restored);
+        Assert.assertEquals(leaves.length, restored.leaves().size());
+
+        tree.addLeaf("D1-T1-S3");
+        restored.addLeaf("D1-T1-S3");
+        for (int key = 0; key < 10000; key++) {
+            Assert.assertEquals(tree.findLeaf("key" + key), restored.findLeaf("key" + key));
+            Assert.assertFalse(topology.findLeaf("key" + key).isEmpty());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRestoreRejectsOtherReplications() {
+        FlatTopology topology = new FlatTopology(
+                TopologySnapshot.encode(buildTree(LookupMode.PER_LEVEL_HASH), ByteBuffer::allocate), algorithm);
+        TopologySnapshot.restore(topology, new DynamicHashingTree(algorithm, 67));
+    }
+
+    @Test
+    public void testRejectsOtherHashingAlgorithms() throws Exception {
+        DynamicHashingTree tree = buildTree(LookupMode.PER_LEVEL_HASH);
+        Path file = folder.getRoot().toPath().resolve("topology.bin");
+        TopologySnapshot.write(tree, file);
+        HashingAlgorithm md5 = ConsistentHash.initMd5Hashing();
+        Assert.assertNotEquals(TopologySnapshot.algorithmId(algorithm), TopologySnapshot.algorithmId(md5));
+
+        try {
+            TopologySnapshot.map(file, md5);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected, positions were hashed with xxHash64
+        }
+        try {
+            TopologySnapshot.restore(TopologySnapshot.map(file, algorithm), new DynamicHashingTree(md5,
+                    TreeConstant.DEFAULT_PATH_SEPARATOR, 13, LookupMode.PER_LEVEL_HASH));
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected, the tree would hash new nodes with MD5
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEncodeRejectsOtherEngines() {
+        DynamicHashingTree tree = new DynamicHashingTree(algorithm);
+        tree.setHashingEngine(1, HashingEngine.JUMP);
+        tree.addLeaf("D1-T1-S1");
+        TopologySnapshot.encode(tree, ByteBuffer::allocate);
+    }
+
+    private DynamicHashingTree buildTree(LookupMode lookupMode) {
+        DynamicHashingTree tree = new DynamicHashingTree(algorithm, TreeConstant.DEFAULT_PATH_SEPARATOR, 13,
+                lookupMode);
+        for (String leaf : leaves) {
+            tree.addLeaf(leaf);
+        }
+        return tree;
+    }
+}
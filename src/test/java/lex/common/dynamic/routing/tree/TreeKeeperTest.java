@@ -90,7 +90,7 @@ public class TreeKeeperTest {
         String value = "a value to test removing leaf";
         StringBuilder sb = new StringBuilder();
         TreeKeeper.findLeaf(root, value, sb, algorithm);
-        TreeKeeper.removeLeaf(root, TreeKeeper.splitKey(sb.toString()), algorithm, numberOfReplications);
+        TreeKeeper.removeLeaf(root, TreeKeeper.splitKey(sb.toString()));
         
         Assert.assertFalse(TreeKeeper.verifyLeaf(TreeKeeper.splitKey(sb.toString()), root));
         List<String> keys6 = new ArrayList<>();
@@ -107,7 +107,7 @@ public class TreeKeeperTest {
         String value = "a value to test removing leaf";
         StringBuilder sb = new StringBuilder();
         TreeKeeper.findLeaf(root, value, sb, algorithm);
-        TreeKeeper.removeLeaf(root, TreeKeeper.splitKey(sb.toString()), algorithm, numberOfReplications);
+        TreeKeeper.removeLeaf(root, TreeKeeper.splitKey(sb.toString()));
         Assert.assertFalse(TreeKeeper.verifyLeaf(TreeKeeper.splitKey(sb.toString()), root));
     }
 